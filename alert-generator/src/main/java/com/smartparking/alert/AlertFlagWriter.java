@@ -0,0 +1,92 @@
+package com.smartparking.alert;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind of the {@code alerted} column, the only part of {@code parking_sessions} this
+ * service writes. Flags are collected in memory ({@link SessionView} is already up to date) and
+ * written with one batched UPDATE per flush. Each row is addressed by id and start time, the
+ * partition key of {@code parking_sessions}, so an update only probes the month its session started in.
+ */
+@Component
+public class AlertFlagWriter {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(AlertFlagWriter.class);
+
+    // The view keeps start times in milliseconds; rows written before the controller did may carry microseconds
+    private static final String FLAG_SQL = "UPDATE parking_sessions SET alerted = true"
+            + " WHERE id = ? AND start_time >= ? AND start_time < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    // Session id -> start time (epoch millis)
+    private final Map<UUID, Long> pending = new ConcurrentHashMap<>();
+    private final DistributionSummary batchSize;
+
+    public AlertFlagWriter(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = DistributionSummary.builder("alert.flags.batch.size")
+                .description("Number of alerted flags written per flush")
+                .register(meterRegistry);
+        Gauge.builder("alert.flags.pending", pending, Map::size)
+                .description("Alerted flags not yet written to parking_sessions")
+                .register(meterRegistry);
+    }
+
+    public void markAlerted(UUID sessionId, long startTime) {
+        pending.put(sessionId, startTime);
+    }
+
+    @Scheduled(fixedDelayString = "${alert.flag-flush-interval-ms:1000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<UUID, Long>> flags = new ArrayList<>(pending.size());
+        Iterator<Map.Entry<UUID, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Long> flag = it.next();
+            flags.add(Map.entry(flag.getKey(), flag.getValue()));
+            it.remove();
+        }
+        List<Object[]> batch = new ArrayList<>(flags.size());
+        for (Map.Entry<UUID, Long> flag : flags) {
+            batch.add(new Object[]{flag.getKey(), timestamp(flag.getValue()), timestamp(flag.getValue() + 1)});
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(FLAG_SQL, batch);
+        } catch (Exception e) {
+            // Re-queue so the next flush retries; the view already suppresses repeated alerts
+            flags.forEach(flag -> pending.putIfAbsent(flag.getKey(), flag.getValue()));
+            logger.error(">>> Failed to write {} alerted flags", batch.size(), e);
+            return;
+        }
+        batchSize.record(batch.size());
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    private static Timestamp timestamp(long epochMillis) {
+        return Timestamp.valueOf(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()));
+    }
+}
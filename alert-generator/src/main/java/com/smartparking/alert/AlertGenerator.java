@@ -1,13 +1,20 @@
 package com.smartparking.alert;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartparking.logging.HotPathLog;
+import com.smartparking.logging.HotPathLogs;
 import com.smartparking.model.AlertEvent;
+import com.smartparking.model.SessionUpdateEvent;
+import com.smartparking.tracing.TraceContext;
+import jakarta.annotation.PostConstruct;
+import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
+import java.util.UUID;
 
 @Component
 public class AlertGenerator {
@@ -15,67 +22,113 @@ public class AlertGenerator {
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(AlertGenerator.class);
 
     private final ParkingSessionRepository sessionRepository;
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final AlertScheduler alertScheduler;
+    private final SessionView sessionView;
+    private final AlertFlagWriter alertFlagWriter;
+    // One line per alert, thinned out per spot
+    private final HotPathLog alertLog;
 
     public AlertGenerator(ParkingSessionRepository sessionRepository, 
-                          KafkaTemplate<String, String> kafkaTemplate, 
-                          ObjectMapper objectMapper) {
+                          KafkaTemplate<String, Object> kafkaTemplate,
+                          AlertScheduler alertScheduler,
+                          SessionView sessionView,
+                          AlertFlagWriter alertFlagWriter,
+                          HotPathLogs hotPathLogs) {
         this.sessionRepository = sessionRepository;
         this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
+        this.alertScheduler = alertScheduler;
+        this.sessionView = sessionView;
+        this.alertFlagWriter = alertFlagWriter;
+        this.alertLog = hotPathLogs.create("alerts", logger);
     }
 
-    // Run every 10 seconds for debugging
-    @Scheduled(fixedRate = 10000)
-    public void checkUnpaidSessions() {
-        logger.info(">>> Checking for sessions...");
-        List<ParkingSession> allSessions = sessionRepository.findAll(); // Check ALL sessions
-        logger.info(">>> Found {} total sessions.", allSessions.size());
-        LocalDateTime now = LocalDateTime.now();
+    // Seed the session view and arm the deadlines of open sessions; the only read of the table, before the listener starts
+    @PostConstruct
+    void bootstrap() {
+        long version = System.currentTimeMillis();
+        List<ParkingSession> openSessions = sessionRepository.findByEndTimeIsNull();
+        for (ParkingSession session : openSessions) {
+            SessionView.OpenSession open = new SessionView.OpenSession(session.getId(), session.getSensorId(),
+                    session.getStatus(), toEpochMillis(session.getStartTime()), toEpochMillis(session.getPaidUntil()),
+                    session.isAlerted(), version);
+            sessionView.seed(open);
+            arm(open);
+        }
+        logger.info(">>> Session view bootstrapped with {} open sessions ({} armed).", openSessions.size(), alertScheduler.size());
+    }
 
-        for (ParkingSession session : allSessions) {
-            
-            if ("UNPAID".equals(session.getStatus())) {
-                 if (!session.isAlerted() && session.getStartTime().isBefore(now.minusMinutes(1))) {
-                    logger.info(">>> UNPAID Alert: Session {}", session.getId());
-                    sendAlert(session, "UNPAID_OVERSTAY", "Vehicle in spot " + session.getSensorId() + " unpaid for > 1 minutes.");
-                    session.setAlerted(true);
-                    sessionRepository.save(session);
-                }
+    // Keep the view and the deadline index current as the controller creates, pays, expires and terminates sessions.
+    // Failures go to the retry chain; a redelivered update older than the view's state is ignored by the view
+    @KafkaListener(topics = {"session.updates", KafkaRetryConfig.REDELIVERY_TOPIC}, groupId = "alert-generator-group")
+    public void handleSessionUpdate(SessionUpdateEvent update) {
+        UUID sessionId = UUID.fromString(update.getSessionId());
+        SessionView.OpenSession session = sessionView.apply(sessionId, update);
+        if (session == null) {
+            alertScheduler.cancel(sessionId);
+        } else {
+            arm(session);
+        }
+    }
+
+    private void arm(SessionView.OpenSession session) {
+        if (session.alerted()) {
+            alertScheduler.cancel(session.id());
+        } else {
+            alertScheduler.arm(session.id(), session.status(), session.startTime(), session.paidUntil(), this::raiseAlert);
+        }
+    }
+
+    // Called by the scheduler at the deadline; the view is re-checked since the session may have changed meanwhile
+    void raiseAlert(UUID sessionId, String type) {
+        long now = System.currentTimeMillis();
+
+        if ("UNPAID_OVERSTAY".equals(type)) {
+            SessionView.OpenSession session = sessionView.markAlerted(sessionId, s -> "UNPAID".equals(s.status()));
+            if (session == null) {
+                return;
             }
-            
-            else if ("PAID".equals(session.getStatus())) {
-                if (session.getPaidUntil() != null && now.isAfter(session.getPaidUntil())) {
-                    if (!session.isAlerted()) {
-                        logger.info(">>> EXPIRED Alert: Session {}", session.getId());
-                        sendAlert(session, "PAID_EXPIRED", "Vehicle in spot " + session.getSensorId() + " expired at " + session.getPaidUntil());
-                        
-                        session.setAlerted(true);
-                        session.setStatus("UNPAID"); // Reset status to UNPAID
-                        sessionRepository.save(session);
-                    }
-                }
+            sendAlert(sessionId, session.sensorId(), "UNPAID_OVERSTAY", "Vehicle in spot " + session.sensorId() + " unpaid for > 1 minutes.");
+            alertFlagWriter.markAlerted(sessionId, session.startTime());
+        }
+
+        else if ("PAID_EXPIRED".equals(type)) {
+            SessionView.OpenSession session = sessionView.markAlerted(sessionId,
+                    s -> "PAID".equals(s.status()) && s.paidUntil() != null && now >= s.paidUntil());
+            if (session == null) {
+                return;
             }
+            sendAlert(sessionId, session.sensorId(), "PAID_EXPIRED", "Vehicle in spot " + session.sensorId() + " expired at " + toLocalDateTime(session.paidUntil()));
+            // The controller reverts the session to UNPAID when it consumes the alert
+            alertFlagWriter.markAlerted(sessionId, session.startTime());
         }
     }
 
-    private void sendAlert(ParkingSession session, String type, String message) {
+    private void sendAlert(UUID sessionId, String sensorId, String type, String message) {
         try {
             AlertEvent alert = new AlertEvent(
                     type,
-                    session.getSensorId(),
+                    sensorId,
                     message,
                     System.currentTimeMillis()
             );
 
-            String json = objectMapper.writeValueAsString(alert);
-            kafkaTemplate.send("alert.incident", session.getSensorId(), json);
+            // The alert is the origin of the alert -> notification stage
+            TraceContext trace = TraceContext.start(alert.getTimestamp());
+            kafkaTemplate.send(trace.toRecord("alert.incident", sensorId, alert));
             
-            logger.info(">>> Alert Sent: {}", alert.getMessage());
+            alertLog.info(sensorId, ">>> Alert Sent: {} (session {}, trace {})", alert.getMessage(), sessionId, trace.traceId());
             
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    private static Long toEpochMillis(LocalDateTime time) {
+        return time == null ? null : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
 }
@@ -0,0 +1,117 @@
+package com.smartparking.alert;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory deadline index: the next alert instant of every open, not yet alerted session.
+ *
+ * Each entry is a delayed task on a {@link ScheduledThreadPoolExecutor} (a deadline heap), so an
+ * alert fires at its instant instead of on the next poll, and the cost of keeping the index
+ * depends on the number of open sessions rather than the size of the session history.
+ */
+@Component
+public class AlertScheduler {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(AlertScheduler.class);
+
+    private record PendingAlert(UUID sessionId, String type, long deadline, ScheduledFuture<?> task) {
+    }
+
+    /**
+     * Invoked on the scheduler thread when a deadline is reached.
+     */
+    public interface AlertHandler {
+        void onDeadline(UUID sessionId, String type);
+    }
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<UUID, PendingAlert> pending = new ConcurrentHashMap<>();
+    private final long unpaidGraceMillis;
+
+    public AlertScheduler(@Value("${alert.unpaid-grace-ms:60000}") long unpaidGraceMillis,
+                          MeterRegistry meterRegistry) {
+        this.unpaidGraceMillis = unpaidGraceMillis;
+        this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "alert-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Cancelled deadlines are removed from the heap right away instead of when they would fire
+        this.executor.setRemoveOnCancelPolicy(true);
+
+        Gauge.builder("alert.scheduler.pending", pending, Map::size)
+                .description("Open sessions with an armed alert deadline")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Re-arms the deadline of a session for its current state, replacing any previous one.
+     * UNPAID sessions alert {@code alert.unpaid-grace-ms} after they started, PAID sessions when
+     * their paid time runs out; any other state (e.g. TERMINATED) clears the deadline.
+     */
+    public void arm(UUID sessionId, String status, Long startTime, Long paidUntil, AlertHandler handler) {
+        if ("UNPAID".equals(status) && startTime != null) {
+            schedule(sessionId, "UNPAID_OVERSTAY", startTime + unpaidGraceMillis, handler);
+        } else if ("PAID".equals(status) && paidUntil != null) {
+            schedule(sessionId, "PAID_EXPIRED", paidUntil, handler);
+        } else {
+            cancel(sessionId);
+        }
+    }
+
+    public synchronized void cancel(UUID sessionId) {
+        PendingAlert previous = pending.remove(sessionId);
+        if (previous != null) {
+            previous.task().cancel(false);
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    private synchronized void schedule(UUID sessionId, String type, long deadline, AlertHandler handler) {
+        PendingAlert previous = pending.get(sessionId);
+        if (previous != null) {
+            if (previous.type().equals(type) && previous.deadline() == deadline) {
+                return;
+            }
+            previous.task().cancel(false);
+        }
+        long delay = Math.max(0, deadline - System.currentTimeMillis());
+        ScheduledFuture<?> task = executor.schedule(() -> fire(sessionId, type, deadline, handler), delay, TimeUnit.MILLISECONDS);
+        pending.put(sessionId, new PendingAlert(sessionId, type, deadline, task));
+    }
+
+    private void fire(UUID sessionId, String type, long deadline, AlertHandler handler) {
+        synchronized (this) {
+            // Only fire if this is still the armed deadline (not replaced in the meantime)
+            PendingAlert current = pending.get(sessionId);
+            if (current == null || !current.type().equals(type) || current.deadline() != deadline) {
+                return;
+            }
+            pending.remove(sessionId);
+        }
+        try {
+            handler.onDeadline(sessionId, type);
+        } catch (Exception e) {
+            logger.error(">>> Failed to raise {} for session {}", type, sessionId, e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,27 @@
+package com.smartparking.alert;
+
+import com.smartparking.kafka.RetryBackOff;
+import com.smartparking.kafka.RetryChain;
+import com.smartparking.kafka.RetryConfiguration;
+import com.smartparking.kafka.RetryRouter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Session updates the generator fails to apply are retried on the side (see {@link RetryRouter}), so
+ * {@code session.updates} keeps flowing; the listener consumes the chain's redelivery topic next to it.
+ * The rest of the wiring is shared ({@link RetryConfiguration}).
+ */
+@Configuration
+@Import(RetryConfiguration.class)
+public class KafkaRetryConfig {
+
+    public static final String CHAIN = "alert-generator";
+    public static final String REDELIVERY_TOPIC = CHAIN + ".redelivery";
+
+    @Bean
+    public RetryChain alertRetryChain(RetryBackOff retryBackOff) {
+        return retryBackOff.chain(CHAIN, "alert-generator-group");
+    }
+}
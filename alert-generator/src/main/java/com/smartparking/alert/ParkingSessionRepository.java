@@ -15,4 +15,7 @@ public interface ParkingSessionRepository extends JpaRepository<ParkingSession,
     Optional<ParkingSession> findBySensorIdAndEndTimeIsNull(String sensorId);
     
     List<ParkingSession> findByStatus(String status);
+
+    // Open sessions, used once at startup to bootstrap the session view
+    List<ParkingSession> findByEndTimeIsNull();
 }
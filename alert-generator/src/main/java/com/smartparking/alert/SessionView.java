@@ -0,0 +1,85 @@
+package com.smartparking.alert;
+
+import com.smartparking.model.SessionUpdateEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Local materialized view of the open parking sessions, maintained from {@code session.updates}.
+ *
+ * The view is seeded once from {@code parking_sessions} at startup; after that it changes only
+ * through the controller's session updates and the alerts raised here, so alert evaluation never
+ * reads the table. Every entry carries the time of the state it reflects (the update timestamp, or
+ * the bootstrap time for seeded entries) and older updates are ignored, so updates replayed from
+ * before the bootstrap can't roll a session back.
+ */
+@Component
+public class SessionView {
+
+    public record OpenSession(UUID id, String sensorId, String status, Long startTime, Long paidUntil,
+                              boolean alerted, long version) {
+
+        OpenSession withAlerted() {
+            return new OpenSession(id, sensorId, status, startTime, paidUntil, true, version);
+        }
+    }
+
+    private final Map<UUID, OpenSession> sessions = new ConcurrentHashMap<>();
+
+    public SessionView(MeterRegistry meterRegistry) {
+        Gauge.builder("alert.view.sessions", sessions, Map::size)
+                .description("Open sessions in the materialized session view")
+                .register(meterRegistry);
+    }
+
+    public void seed(OpenSession session) {
+        sessions.put(session.id(), session);
+    }
+
+    /**
+     * Applies a session update and returns the resulting state, or {@code null} once the session is
+     * closed (any status other than UNPAID/PAID). The alerted flag is carried over: it is owned here.
+     */
+    public OpenSession apply(UUID sessionId, SessionUpdateEvent update) {
+        return sessions.compute(sessionId, (id, current) -> {
+            if (current != null && update.getTimestamp() < current.version()) {
+                return current;
+            }
+            if (!"UNPAID".equals(update.getStatus()) && !"PAID".equals(update.getStatus())) {
+                return null;
+            }
+            // Older producers don't send startTime; the first update is published when the session is created
+            Long startTime = update.getStartTime() != null ? update.getStartTime()
+                    : current != null ? current.startTime() : Long.valueOf(update.getTimestamp());
+            return new OpenSession(id, update.getParkingSpot(), update.getStatus(), startTime, update.getPaidUntil(),
+                    current != null && current.alerted(), update.getTimestamp());
+        });
+    }
+
+    /**
+     * Atomically flags a session as alerted if it is open, not alerted yet and matches the condition.
+     *
+     * @return the session as it was when the alert was claimed, or {@code null} if no alert is due
+     */
+    public OpenSession markAlerted(UUID sessionId, Predicate<OpenSession> condition) {
+        OpenSession[] claimed = new OpenSession[1];
+        sessions.computeIfPresent(sessionId, (id, session) -> {
+            if (session.alerted() || !condition.test(session)) {
+                return session;
+            }
+            claimed[0] = session;
+            return session.withAlerted();
+        });
+        return claimed[0];
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,91 @@
+package com.smartparking.benchmarks;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Counts what a benchmark sends to the database through its connections: statements executed, and
+ * round trips (the executions plus commits, rollbacks and parameter metadata lookups). The driver
+ * may batch or pipeline below this level, so these are the round trips the code asks for.
+ */
+final class CountingDataSource extends DelegatingDataSource {
+
+    private long statements;
+    private long roundTrips;
+
+    CountingDataSource(DataSource target) {
+        super(target);
+    }
+
+    long statements() {
+        return statements;
+    }
+
+    long roundTrips() {
+        return roundTrips;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connection(super.getConnection(username, password));
+    }
+
+    private Connection connection(Connection target) {
+        return proxy(Connection.class, target, (proxy, method, args) -> {
+            if (method.getName().equals("commit") || method.getName().equals("rollback")) {
+                roundTrips++;
+            }
+            Object result = invoke(target, method, args);
+            if (result instanceof CallableStatement statement) {
+                return statement(CallableStatement.class, statement);
+            }
+            if (result instanceof PreparedStatement statement) {
+                return statement(PreparedStatement.class, statement);
+            }
+            if (result instanceof Statement statement) {
+                return statement(Statement.class, statement);
+            }
+            return result;
+        });
+    }
+
+    private <S extends Statement> S statement(Class<S> type, S target) {
+        return proxy(type, target, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                statements++;
+                roundTrips++;
+            } else if (name.equals("getParameterMetaData")) {
+                roundTrips++;
+            }
+            return invoke(target, method, args);
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(CountingDataSource.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.smartparking.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartparking.backend.controller.DashboardController;
+import com.smartparking.backend.dashboard.SseBroadcastHub;
+import com.smartparking.backend.occupancy.OccupancyIndex;
+import com.smartparking.backend.rollup.SessionRollups;
+import com.smartparking.model.SessionUpdateEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DashboardController.sendEvent fan-out to {@code emitters} connected dashboards.
+ *
+ * Each operation publishes one session update and waits until every emitter has been handed the
+ * frame, so the score covers serialization, enqueueing and delivery on the hub's virtual threads.
+ * The subscribers are {@link SseBroadcastHub.Sink}s that count the frames and discard them instead
+ * of writing to a socket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DashboardFanOutBenchmark {
+
+    @Param({"1", "10", "100"})
+    int emitters;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private SseBroadcastHub hub;
+    private DashboardController dashboardController;
+    private SessionUpdateEvent update;
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        hub = new SseBroadcastHub(new ObjectMapper(), meterRegistry, 256, SseBroadcastHub.OverflowPolicy.DROP_OLDEST);
+        dashboardController = new DashboardController(hub, new OccupancyIndex(Stubs.sessionRepository(), meterRegistry, new String[0]),
+                new SessionRollups(meterRegistry, 1440, 168, 90));
+        SseBroadcastHub.Sink discarding = new SseBroadcastHub.Sink() {
+            @Override
+            public void send(Set<ResponseBodyEmitter.DataWithMediaType> frame) {
+                delivered.incrementAndGet();
+            }
+
+            @Override
+            public void complete() {
+            }
+        };
+        for (int i = 0; i < emitters; i++) {
+            hub.subscribe(discarding);
+        }
+        long now = System.currentTimeMillis();
+        update = new SessionUpdateEvent(UUID.randomUUID().toString(), "PAID", "AA-00-BB", "S-12345",
+                new BigDecimal("2.50"), now, now - 60_000, now + 1_440_000);
+    }
+
+    @Benchmark
+    public void sendEvent() {
+        dashboardController.sendEvent("sessionUpdate", update);
+        expected += emitters;
+        while (delivered.get() < expected) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.smartparking.benchmarks;
+
+import com.smartparking.codec.EventDeserializer;
+import com.smartparking.codec.EventSerializer;
+import com.smartparking.codec.WireFormat;
+import com.smartparking.model.AlertEvent;
+import com.smartparking.model.PaymentEvent;
+import com.smartparking.model.SensorEvent;
+import com.smartparking.model.SessionUpdateEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka value encode/decode of every common-dto event, in both wire formats, through the same
+ * serializer and deserializer the services are configured with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventCodecBenchmark {
+
+    @Param({"SensorEvent", "PaymentEvent", "SessionUpdateEvent", "AlertEvent"})
+    String event;
+
+    @Param({"json", "bin1"})
+    String format;
+
+    private String topic;
+    private Object value;
+    private byte[] encoded;
+    private Headers headers;
+    private EventSerializer serializer;
+    private EventDeserializer deserializer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long now = System.currentTimeMillis();
+        switch (event) {
+            case "SensorEvent" -> {
+                topic = "parking-events";
+                value = new SensorEvent("S-12345", now);
+            }
+            case "PaymentEvent" -> {
+                topic = "payment-events";
+                value = new PaymentEvent("AA-00-BB", "S-12345", new BigDecimal("2.50"), now);
+            }
+            case "SessionUpdateEvent" -> {
+                topic = "session.updates";
+                value = new SessionUpdateEvent(UUID.randomUUID().toString(), "PAID", "AA-00-BB", "S-12345",
+                        new BigDecimal("2.50"), now, now - 60_000, now + 1_440_000);
+            }
+            case "AlertEvent" -> {
+                topic = "alert.incident";
+                value = new AlertEvent("PAID_EXPIRED", "S-12345", "Paid time expired for spot S-12345", now);
+            }
+            default -> throw new IllegalArgumentException(event);
+        }
+
+        serializer = new EventSerializer();
+        serializer.configure(Map.of(EventSerializer.FORMAT_CONFIG, format), false);
+        deserializer = new EventDeserializer();
+        deserializer.configure(Map.of(), false);
+
+        headers = new RecordHeaders();
+        encoded = serializer.serialize(topic, headers, value);
+        if (WireFormat.fromConfig(format) != serializer.formatFor(topic)) {
+            throw new IllegalStateException("Serializer not configured for " + format);
+        }
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return serializer.serialize(topic, new RecordHeaders(), value);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return deserializer.deserialize(topic, headers, encoded);
+    }
+}
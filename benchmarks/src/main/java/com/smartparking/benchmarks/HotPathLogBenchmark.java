@@ -0,0 +1,127 @@
+package com.smartparking.benchmarks;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.smartparking.logging.HotPathLog;
+import com.smartparking.logging.HotPathLogs;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A per-event log line ("Filter Passed" for one of {@code sensors} sensors, round-robin) written the
+ * old way ({@code System.out.println} with string concatenation, or a plain INFO call) and through
+ * {@link HotPathLog} with the service defaults (one line per sensor per 10 s).
+ *
+ * Lines go to the null device with one write per line, like an unbuffered console; a real terminal
+ * or container log driver only makes the unthrottled variants slower. {@code appender=async} puts
+ * logback's AsyncAppender (never blocking, as in the services) in front of it: a full queue drops
+ * INFO lines, so its score is the cost seen by the caller, not the number of lines written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotPathLogBenchmark {
+
+    private static final String NULL_DEVICE = System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+
+    @Param({"1000", "100000"})
+    int sensors;
+
+    @Param({"sync", "async"})
+    String appender;
+
+    private String[] sensorIds;
+    private int next;
+    private PrintStream console;
+    private ch.qos.logback.classic.Logger logger;
+    private HotPathLog hotPath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws FileNotFoundException {
+        sensorIds = new String[sensors];
+        for (int i = 0; i < sensors; i++) {
+            sensorIds[i] = "S-" + i;
+        }
+        console = new PrintStream(new FileOutputStream(NULL_DEVICE), true);
+
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5level %pid --- [%thread] %logger{36} : %msg%n");
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> output = new OutputStreamAppender<>();
+        output.setContext(context);
+        output.setEncoder(encoder);
+        output.setOutputStream(new FileOutputStream(NULL_DEVICE));
+        output.start();
+
+        logger = context.getLogger("benchmark.hotpath." + appender);
+        logger.setAdditive(false);
+        logger.setLevel(ch.qos.logback.classic.Level.INFO);
+        if (appender.equals("async")) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.setNeverBlock(true);
+            async.addAppender(output);
+            async.start();
+            logger.addAppender(async);
+        } else {
+            logger.addAppender(output);
+        }
+        hotPath = new HotPathLogs(new SimpleMeterRegistry(), 10_000, 1.0, 60_000, 4096).create("benchmark", logger);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        logger.detachAndStopAllAppenders();
+        console.close();
+    }
+
+    private String nextSensor() {
+        String sensorId = sensorIds[next];
+        next = next + 1 == sensorIds.length ? 0 : next + 1;
+        return sensorId;
+    }
+
+    // What SensorEventFilter did before; not affected by the appender
+    @Benchmark
+    public void println() {
+        console.println(">>> Filter Passed: Sensor " + nextSensor() + " active for > 30s. Emitted to sensor.events");
+    }
+
+    @Benchmark
+    public void loggerInfo() {
+        logger.info(">>> Filter Passed: Sensor {} active for > 30s. Emitted to sensor.events", nextSensor());
+    }
+
+    @Benchmark
+    public void hotPathLog() {
+        String sensorId = nextSensor();
+        hotPath.info(sensorId, ">>> Filter Passed: Sensor {} active for > 30s. Emitted to sensor.events", sensorId);
+    }
+}
@@ -0,0 +1,170 @@
+package com.smartparking.benchmarks;
+
+import com.smartparking.backend.controller.ParkingController;
+import com.smartparking.backend.model.ParkingSession;
+import com.smartparking.backend.repository.ParkingSessionRepository;
+import com.smartparking.backend.store.ActiveSessionStore;
+import com.smartparking.backend.store.PaymentJoinBuffer;
+import com.smartparking.backend.store.PendingSessionStore;
+import com.smartparking.backend.time.EventTimeClock;
+import com.smartparking.kafka.KeyOrderedDispatcher;
+import com.smartparking.logging.HotPathLogs;
+import com.smartparking.model.PaymentEvent;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * One poll of 500 payments, each for a different spot, through the three {@code parking.consumer.mode}
+ * listeners of the ParkingController against a real Postgres: {@code record} (one listener call per
+ * record), {@code batch} and {@code virtual-threads} (the spots of the poll on virtual threads, at most
+ * {@code maxConcurrentKeys} at a time). Every payment is one guarded UPDATE, so the first two are bound
+ * by sequential round trips and the third by the connection pool ({@code poolSize}).
+ *
+ * Needs a database with the parking-controller schema, like {@link SessionTransitionBenchmark}:
+ * {@code java -jar benchmarks.jar ListenerMode -p jdbcUrl=jdbc:postgresql://host:5432/smart_parking}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListenerModeBenchmark {
+
+    private static final int POLL = 500;
+    private static final int PARTITIONS = 12;
+
+    @Param("jdbc:postgresql://localhost:5432/smart_parking")
+    String jdbcUrl;
+
+    @Param("admin")
+    String user;
+
+    @Param("password")
+    String password;
+
+    @Param("10")
+    int poolSize;
+
+    @Param({"10", "32"})
+    int maxConcurrentKeys;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private KeyOrderedDispatcher dispatcher;
+    private ParkingController controller;
+    private String spotPrefix;
+    private List<Object> payments;
+    private List<String> topics;
+    private List<Integer> partitions;
+    private List<ConsumerRecord<String, Object>> records;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(jdbcUrl);
+        dataSource.setUsername(user);
+        dataSource.setPassword(password);
+        dataSource.setMaximumPoolSize(poolSize);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        // The store finds open sessions in memory and writes transitions to Postgres
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ParkingSessionRepository repository = Stubs.sessionRepository();
+        spotPrefix = "BENCH-" + UUID.randomUUID() + "-";
+        LocalDateTime start = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(POLL);
+        payments = new ArrayList<>(POLL);
+        topics = Collections.nCopies(POLL, "payment-events");
+        partitions = new ArrayList<>(POLL);
+        records = new ArrayList<>(POLL);
+        for (int i = 0; i < POLL; i++) {
+            String spot = spotPrefix + i;
+            ParkingSession session = new ParkingSession();
+            session.setId(UUID.randomUUID());
+            session.setSensorId(spot);
+            session.setStartTime(start);
+            session.setLastEventTime(start);
+            session.setStatus("UNPAID");
+            repository.save(session);
+            rows.add(new Object[]{session.getId(), spot, Timestamp.valueOf(start), Timestamp.valueOf(start)});
+
+            PaymentEvent payment = new PaymentEvent("AA-00-" + i, spot, new BigDecimal("2.50"), System.currentTimeMillis());
+            int partition = i % PARTITIONS;
+            payments.add(payment);
+            partitions.add(partition);
+            records.add(new ConsumerRecord<>("payment-events", partition, i, spot, payment));
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO parking_sessions (id, sensor_id, start_time, status, alerted, last_event_time)"
+                + " VALUES (?, ?, ?, 'UNPAID', false, ?)", rows);
+
+        ActiveSessionStore store = new ActiveSessionStore(repository, jdbcTemplate, meterRegistry, 30_000, 1_000);
+        store.loadPartitions(IntStream.range(0, PARTITIONS).boxed().collect(Collectors.toSet()), PARTITIONS);
+        PendingSessionStore pending = new PendingSessionStore(Stubs.kafkaTemplate(), new DefaultKafkaConsumerFactory<>(Map.of()),
+                meterRegistry, "parking-controller.pending-changelog", Files.createTempDirectory("listener-bench"), 3_600_000);
+        dispatcher = new KeyOrderedDispatcher("benchmark", maxConcurrentKeys, meterRegistry);
+        controller = new ParkingController(store, pending, new PaymentJoinBuffer(Stubs.kafkaTemplate(),
+                new DefaultKafkaConsumerFactory<>(Map.of()), meterRegistry, "parking-controller.join-changelog", 120_000, 100_000),
+                Stubs.kafkaTemplate(), dispatcher,
+                new EventTimeClock("controller", "controller-group", "parking-events", false, 5_000, meterRegistry), new HotPathLogs(meterRegistry, 10_000, 1.0, 60_000, 4096), meterRegistry);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM parking_sessions WHERE sensor_id LIKE ?", spotPrefix + "%");
+        dispatcher.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POLL)
+    public void record() {
+        for (int i = 0; i < POLL; i++) {
+            controller.handleEvent(payments.get(i), "payment-events", partitions.get(i), null, null);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POLL)
+    public void batch() {
+        controller.handleEvents(payments, topics, partitions, null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POLL)
+    public void virtualThreads() {
+        controller.handleRecords(records);
+    }
+}
@@ -0,0 +1,96 @@
+package com.smartparking.benchmarks;
+
+import com.smartparking.backend.occupancy.OccupancyIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Free-spot queries of the {@link OccupancyIndex} at 1M spots, spread over {@code zones} zones with
+ * a random {@code occupancy} fraction of them occupied.
+ *
+ * {@code freeCount} and {@code freeSpots} (one page of 100) are what the REST endpoints answer;
+ * {@code occupyAndRelease} is the cost of the two session updates of a car coming and going.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OccupancyIndexBenchmark {
+
+    private static final int SPOTS = 1_000_000;
+
+    @Param({"1", "100"})
+    int zones;
+
+    @Param({"0.5", "0.99"})
+    double occupancy;
+
+    private OccupancyIndex index;
+    private String[] zoneNames;
+    private String[] spots;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new OccupancyIndex(Stubs.sessionRepository(), new SimpleMeterRegistry(), new String[0]);
+        zoneNames = new String[zones];
+        int perZone = SPOTS / zones;
+        for (int z = 0; z < zones; z++) {
+            zoneNames[z] = "Z" + z;
+            index.registerRange("Z" + z + "-0..Z" + z + "-" + (perZone - 1));
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        spots = new String[4096];
+        for (int i = 0; i < spots.length; i++) {
+            spots[i] = "Z" + random.nextInt(zones) + "-" + random.nextInt(perZone);
+        }
+        for (int z = 0; z < zones; z++) {
+            for (int n = 0; n < perZone; n++) {
+                if (random.nextDouble() < occupancy) {
+                    index.occupy("Z" + z + "-" + n);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Optional<OccupancyIndex.ZoneOccupancy> freeCount() {
+        return index.zone(zoneNames[nextIndex() % zones]);
+    }
+
+    @Benchmark
+    public Optional<List<String>> freeSpots() {
+        return index.freeSpots(zoneNames[nextIndex() % zones], null, 100);
+    }
+
+    @Benchmark
+    public void occupyAndRelease() {
+        String spot = spots[nextIndex() % spots.length];
+        index.occupy(spot);
+        index.release(spot);
+    }
+
+    private int nextIndex() {
+        next = next + 1 == Integer.MAX_VALUE ? 0 : next + 1;
+        return next;
+    }
+}
@@ -0,0 +1,125 @@
+package com.smartparking.benchmarks;
+
+import com.smartparking.backend.controller.ParkingController;
+import com.smartparking.backend.model.ParkingSession;
+import com.smartparking.backend.repository.ParkingSessionRepository;
+import com.smartparking.backend.store.ActiveSessionStore;
+import com.smartparking.backend.store.PaymentJoinBuffer;
+import com.smartparking.backend.store.PendingSessionStore;
+import com.smartparking.backend.time.EventTimeClock;
+import com.smartparking.kafka.KeyOrderedDispatcher;
+import com.smartparking.logging.HotPathLogs;
+import com.smartparking.model.PaymentEvent;
+import com.smartparking.model.SensorEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParkingController handlers against an in-memory repository: heartbeats for sensors with an open
+ * session (the steady state) and payments, which write through and publish a session update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParkingControllerBenchmark {
+
+    @Param({"1000", "100000"})
+    int openSessions;
+
+    private ParkingController controller;
+    private SensorEvent[] heartbeats;
+    private PaymentEvent[] payments;
+    private List<SensorEvent> batch;
+    private List<String> batchTopics;
+    private List<Integer> batchPartitions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ParkingSessionRepository repository = Stubs.sessionRepository();
+        LocalDateTime start = LocalDateTime.now();
+        heartbeats = new SensorEvent[openSessions];
+        payments = new PaymentEvent[openSessions];
+        for (int i = 0; i < openSessions; i++) {
+            String sensorId = "S-" + i;
+            ParkingSession session = new ParkingSession();
+            session.setSensorId(sensorId);
+            session.setStartTime(start);
+            session.setLastEventTime(start);
+            session.setStatus("UNPAID");
+            repository.save(session);
+            heartbeats[i] = new SensorEvent(sensorId, System.currentTimeMillis());
+            payments[i] = new PaymentEvent("AA-00-" + i, sensorId, new BigDecimal("2.50"), System.currentTimeMillis());
+        }
+        batch = new ArrayList<>(500);
+        for (int i = 0; i < 500; i++) {
+            batch.add(heartbeats[i % openSessions]);
+        }
+        batchTopics = Collections.nCopies(batch.size(), "parking-events");
+        batchPartitions = Collections.nCopies(batch.size(), 0);
+
+        // Everything on partition 0; the changelog is written to the stub template and never replayed
+        KafkaTemplate<String, Object> kafkaTemplate = Stubs.kafkaTemplate();
+        ActiveSessionStore store = new ActiveSessionStore(repository, Stubs.jdbcTemplate(repository), meterRegistry, 30_000, 1_000);
+        PendingSessionStore pending = new PendingSessionStore(kafkaTemplate, new DefaultKafkaConsumerFactory<>(Map.of()),
+                meterRegistry, "parking-controller.pending-changelog", Files.createTempDirectory("controller-bench"), 3_600_000);
+        controller = new ParkingController(store, pending, new PaymentJoinBuffer(kafkaTemplate, new DefaultKafkaConsumerFactory<>(Map.of()),
+                meterRegistry, "parking-controller.join-changelog", 120_000, 100_000), kafkaTemplate,
+                new KeyOrderedDispatcher("controller", 32, meterRegistry),
+                new EventTimeClock("controller", "controller-group", "parking-events", false, 5_000, meterRegistry), new HotPathLogs(meterRegistry, 10_000, 1.0, 60_000, 4096),
+                meterRegistry);
+
+        // Warm the store the way its @PostConstruct does
+        for (SensorEvent heartbeat : heartbeats) {
+            controller.handleSensorEvent(heartbeat, "parking-events", 0, null, null);
+        }
+    }
+
+    @Benchmark
+    public void handleSensorEvent() {
+        controller.handleSensorEvent(heartbeats[next], "parking-events", 0, null, null);
+        next = next + 1 == heartbeats.length ? 0 : next + 1;
+    }
+
+    // One max-poll-records batch of 500 heartbeats
+    @Benchmark
+    @OperationsPerInvocation(500)
+    public void handleSensorEvents() {
+        controller.handleSensorEvents(batch, batchTopics, batchPartitions, null);
+    }
+
+    @Benchmark
+    public void handlePaymentEvent() {
+        controller.handlePaymentEvent(payments[next], 0, null, null);
+        next = next + 1 == payments.length ? 0 : next + 1;
+    }
+}
@@ -0,0 +1,90 @@
+package com.smartparking.benchmarks;
+
+import com.smartparking.backend.filter.DetectionStateStore;
+import com.smartparking.backend.filter.SensorEventFilter;
+import com.smartparking.backend.time.EventTimeClock;
+import com.smartparking.logging.HotPathLogs;
+import com.smartparking.model.SensorEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Noise filter on the parking-events hot path: one heartbeat per call, spread round-robin over
+ * {@code sensors} distinct sensors (so the detection state holds that many entries).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SensorEventFilterBenchmark {
+
+    @Param({"1000", "100000"})
+    int sensors;
+
+    private SensorEventFilter filter;
+    private SensorEvent[] events;
+    private List<SensorEvent> batch;
+    private List<String> batchTopics;
+    private List<Integer> batchPartitions;
+    private List<Long> batchOffsets;
+    private int next;
+    private long offset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Snapshots are only written by the scheduler, which is not running here
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EventTimeClock clock = new EventTimeClock("filter", "filter-group", "parking-events", false, 5_000, meterRegistry);
+        filter = new SensorEventFilter(Stubs.kafkaTemplate(), new DetectionStateStore(60_000, 1_000_000,
+                Files.createTempDirectory("filter-bench"), 3_600_000, clock, meterRegistry),
+                clock, new HotPathLogs(meterRegistry, 10_000, 1.0, 60_000, 4096));
+        events = new SensorEvent[sensors];
+        for (int i = 0; i < sensors; i++) {
+            events[i] = new SensorEvent("S-" + i, System.currentTimeMillis());
+        }
+        batch = new ArrayList<>(500);
+        for (int i = 0; i < 500; i++) {
+            batch.add(events[i % sensors]);
+        }
+        batchTopics = Collections.nCopies(batch.size(), "parking-events");
+        batchPartitions = Collections.nCopies(batch.size(), 0);
+        batchOffsets = new ArrayList<>(batch.size());
+        for (long i = 0; i < batch.size(); i++) {
+            batchOffsets.add(i);
+        }
+    }
+
+    @Benchmark
+    public void filterNoise() {
+        filter.filterNoise(events[next], "parking-events", 0, offset++);
+        next = next + 1 == events.length ? 0 : next + 1;
+    }
+
+    // One max-poll-records batch of 500 heartbeats
+    @Benchmark
+    @OperationsPerInvocation(500)
+    public void filterNoiseBatch() {
+        filter.filterNoiseBatch(batch, batchTopics, batchPartitions, batchOffsets);
+    }
+}
@@ -0,0 +1,163 @@
+package com.smartparking.benchmarks;
+
+import com.smartparking.backend.model.ParkingSession;
+import com.smartparking.backend.store.ActiveSessionStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A payment transition against a real Postgres, one event per operation.
+ *
+ * {@code readModifyWrite} replays the statements of the former path, where the session was
+ * loaded ({@code findById}), then loaded again by {@code save()} (the merge of a detached entity)
+ * and written back as a full-row UPDATE in {@code save()}'s transaction. {@code guardedUpdate} is
+ * {@link ActiveSessionStore#markPaid}. Besides the time, each reports the statements and round
+ * trips it sent ({@link DatabaseCalls}), counted by a {@link CountingDataSource} around the connection.
+ *
+ * Needs a database with the parking-controller schema (e.g. the docker-compose one, the default):
+ * {@code java -jar benchmarks.jar SessionTransition -p jdbcUrl=jdbc:postgresql://host:5432/smart_parking}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionTransitionBenchmark {
+
+    private static final String SELECT_SQL = "SELECT id, sensor_id, plate, start_time, end_time, status, amount, alerted,"
+            + " paid_until, last_event_time FROM parking_sessions WHERE id = ?";
+    private static final String FULL_UPDATE_SQL = "UPDATE parking_sessions SET sensor_id = ?, plate = ?, start_time = ?,"
+            + " end_time = ?, status = ?, amount = ?, alerted = ?, paid_until = ?, last_event_time = ? WHERE id = ?";
+
+    // Typed, so binding it does not cost a parameter metadata round trip
+    private static final SqlParameterValue NULL_TIMESTAMP = new SqlParameterValue(Types.TIMESTAMP, null);
+
+    private static final RowMapper<ParkingSession> ROW_MAPPER = (rs, rowNum) -> new ParkingSession(
+            rs.getObject("id", UUID.class), rs.getString("sensor_id"), rs.getString("plate"),
+            rs.getObject("start_time", LocalDateTime.class), rs.getObject("end_time", LocalDateTime.class),
+            rs.getString("status"), rs.getBigDecimal("amount"), rs.getBoolean("alerted"),
+            rs.getObject("paid_until", LocalDateTime.class), rs.getObject("last_event_time", LocalDateTime.class), null);
+
+    @Param("jdbc:postgresql://localhost:5432/smart_parking")
+    String jdbcUrl;
+
+    @Param("admin")
+    String user;
+
+    @Param("password")
+    String password;
+
+    private SingleConnectionDataSource dataSource;
+    private CountingDataSource counting;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private ActiveSessionStore store;
+    private UUID sessionId;
+    private String sensorId;
+    private final BigDecimal amount = new BigDecimal("2.50");
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource(jdbcUrl, user, password, true);
+        counting = new CountingDataSource(dataSource);
+        jdbcTemplate = new JdbcTemplate(counting);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(counting));
+        store = new ActiveSessionStore(Stubs.sessionRepository(), jdbcTemplate, new SimpleMeterRegistry(), 30_000, 1_000);
+
+        sessionId = UUID.randomUUID();
+        sensorId = "BENCH-" + sessionId;
+        LocalDateTime now = LocalDateTime.now();
+        jdbcTemplate.update("INSERT INTO parking_sessions (id, sensor_id, start_time, status, alerted, last_event_time)"
+                + " VALUES (?, ?, ?, 'UNPAID', false, ?)", sessionId, sensorId, Timestamp.valueOf(now), Timestamp.valueOf(now));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM parking_sessions WHERE id = ?", sessionId);
+        dataSource.destroy();
+    }
+
+    /**
+     * What the database was sent, summed over the measurement iterations by JMH: divide by
+     * {@code payments} for the per-operation figures (e.g. {@code readModifyWrite:roundTrips}).
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class DatabaseCalls {
+
+        // Reset by JMH before each iteration
+        public long payments;
+
+        private CountingDataSource counting;
+        private long statementsBefore;
+        private long roundTripsBefore;
+
+        @Setup(Level.Iteration)
+        public void start(SessionTransitionBenchmark benchmark) {
+            counting = benchmark.counting;
+            statementsBefore = counting.statements();
+            roundTripsBefore = counting.roundTrips();
+        }
+
+        public long statements() {
+            return counting.statements() - statementsBefore;
+        }
+
+        public long roundTrips() {
+            return counting.roundTrips() - roundTripsBefore;
+        }
+    }
+
+    @Benchmark
+    public ParkingSession readModifyWrite(DatabaseCalls calls) {
+        calls.payments++;
+        ParkingSession session = jdbcTemplate.queryForObject(SELECT_SQL, ROW_MAPPER, sessionId);
+        session.setPlate("AA-00-00");
+        session.setAmount(amount);
+        session.setStatus("PAID");
+        session.setPaidUntil(session.getStartTime().plusMinutes(25));
+
+        // save(): merge and flush in its own transaction
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForObject(SELECT_SQL, ROW_MAPPER, sessionId);
+            jdbcTemplate.update(FULL_UPDATE_SQL, session.getSensorId(), session.getPlate(), Timestamp.valueOf(session.getStartTime()),
+                    NULL_TIMESTAMP, session.getStatus(), session.getAmount(), session.isAlerted(), Timestamp.valueOf(session.getPaidUntil()),
+                    Timestamp.valueOf(session.getLastEventTime()), session.getId());
+            return session;
+        });
+    }
+
+    @Benchmark
+    public Optional<ParkingSession> guardedUpdate(DatabaseCalls calls) {
+        calls.payments++;
+        return store.markPaid(sensorId, "AA-00-00", amount, 25L);
+    }
+}
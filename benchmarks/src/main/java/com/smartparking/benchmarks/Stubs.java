@@ -0,0 +1,132 @@
+package com.smartparking.benchmarks;
+
+import com.smartparking.backend.model.ParkingSession;
+import com.smartparking.backend.repository.ParkingSessionRepository;
+import com.smartparking.codec.EventSerializer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory stand-ins for the infrastructure the hot paths talk to.
+ */
+final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * A KafkaTemplate that serializes every record with the real {@link EventSerializer}
+     * (so encoding cost stays in the measurement) and acknowledges it immediately.
+     */
+    static KafkaTemplate<String, Object> kafkaTemplate() {
+        EventSerializer serializer = new EventSerializer();
+        serializer.configure(Map.of(), false);
+        return new KafkaTemplate<>(() -> {
+            throw new UnsupportedOperationException("Benchmark template never creates a producer");
+        }) {
+            @Override
+            public CompletableFuture<SendResult<String, Object>> send(String topic, String key, Object data) {
+                serializer.serialize(topic, new RecordHeaders(), data);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public CompletableFuture<SendResult<String, Object>> send(ProducerRecord<String, Object> record) {
+                serializer.serialize(record.topic(), record.headers(), record.value());
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+    }
+
+    /**
+     * A ParkingSessionRepository backed by a map, implementing the queries the active session store uses.
+     */
+    static ParkingSessionRepository sessionRepository() {
+        Map<UUID, ParkingSession> rows = new ConcurrentHashMap<>();
+        return (ParkingSessionRepository) Proxy.newProxyInstance(
+                ParkingSessionRepository.class.getClassLoader(),
+                new Class<?>[]{ParkingSessionRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "save" -> save(rows, (ParkingSession) args[0]);
+                    case "saveAll" -> {
+                        List<ParkingSession> saved = new ArrayList<>();
+                        for (Object session : (Iterable<?>) args[0]) {
+                            saved.add(save(rows, (ParkingSession) session));
+                        }
+                        yield saved;
+                    }
+                    case "findById" -> Optional.ofNullable(rows.get((UUID) args[0])).map(Stubs::copy);
+                    case "findBySensorIdAndEndTimeIsNull" -> rows.values().stream()
+                            .filter(s -> s.getEndTime() == null && s.getSensorId().equals(args[0]))
+                            .findFirst().map(Stubs::copy);
+                    case "findBySensorIdInAndEndTimeIsNull" -> rows.values().stream()
+                            .filter(s -> s.getEndTime() == null && ((Collection<?>) args[0]).contains(s.getSensorId()))
+                            .map(Stubs::copy).toList();
+                    case "findByEndTimeIsNull" -> rows.values().stream()
+                            .filter(s -> s.getEndTime() == null)
+                            .map(Stubs::copy).toList();
+                    case "toString" -> "InMemoryParkingSessionRepository";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * A JdbcTemplate that applies the payment transition of the active session store
+     * ({@code UPDATE ... SET status = 'PAID' ... RETURNING}) to an in-memory repository.
+     */
+    static JdbcTemplate jdbcTemplate(ParkingSessionRepository repository) {
+        return new JdbcTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+                if (!sql.startsWith("UPDATE parking_sessions SET status = 'PAID'")) {
+                    throw new UnsupportedOperationException(sql);
+                }
+                // args: plate, amount, [minutes paid,] sensorId
+                Optional<ParkingSession> open = repository.findBySensorIdAndEndTimeIsNull((String) args[args.length - 1]);
+                if (open.isEmpty()) {
+                    return List.of();
+                }
+                ParkingSession session = open.get();
+                session.setStatus("PAID");
+                session.setPlate((String) args[0]);
+                session.setAmount((BigDecimal) args[1]);
+                if (args.length == 4) {
+                    session.setPaidUntil(session.getStartTime().plusMinutes((Integer) args[2]));
+                }
+                return (List<T>) List.of(repository.save(session));
+            }
+        };
+    }
+
+    // Returns a detached copy, like a JPA repository outside of a transaction
+    private static ParkingSession save(Map<UUID, ParkingSession> rows, ParkingSession session) {
+        if (session.getId() == null) {
+            session.setId(UUID.randomUUID());
+        }
+        rows.put(session.getId(), copy(session));
+        return copy(session);
+    }
+
+    private static ParkingSession copy(ParkingSession s) {
+        return new ParkingSession(s.getId(), s.getSensorId(), s.getPlate(), s.getStartTime(), s.getEndTime(),
+                s.getStatus(), s.getAmount(), s.isAlerted(), s.getPaidUntil(), s.getLastEventTime(), s.getSensorHash());
+    }
+}
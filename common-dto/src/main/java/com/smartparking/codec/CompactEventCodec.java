@@ -0,0 +1,322 @@
+package com.smartparking.codec;
+
+import com.smartparking.model.AlertEvent;
+import com.smartparking.model.PaymentEvent;
+import com.smartparking.model.SensorEvent;
+import com.smartparking.model.SessionUpdateEvent;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Compact binary layout of the event DTOs ({@link WireFormat#BINARY_V1}).
+ *
+ * <pre>
+ * byte     version (1)
+ * byte     type tag (1 = SensorEvent, 2 = PaymentEvent, 3 = SessionUpdateEvent, 4 = AlertEvent)
+ * byte     presence bitmap of the nullable fields, in declaration order
+ * ...      fields in declaration order:
+ *            long        zig-zag varint
+ *            String      varint byte length + UTF-8
+ *            BigDecimal  zig-zag varint scale + varint length + two's complement unscaled value
+ *            sessionId   16 raw bytes when it is a UUID, otherwise a String (bit 7 of the bitmap)
+ * </pre>
+ *
+ * New fields may only be appended; a decoder ignores trailing bytes it does not know. The bitmap is
+ * one byte: a new nullable field needs a free bit, a non-null one needs none. SensorEvent has 7 bits
+ * left, PaymentEvent and AlertEvent 5, and SessionUpdateEvent none (bits 0-6 are its nullable fields,
+ * bit 7 marks a UUID session id). A new nullable field of SessionUpdateEvent therefore needs VERSION 2
+ * with a wider bitmap, which version 1 decoders reject, so its consumers must be upgraded first.
+ */
+public final class CompactEventCodec {
+
+    public static final byte VERSION = 1;
+
+    static final byte SENSOR_EVENT = 1;
+    static final byte PAYMENT_EVENT = 2;
+    static final byte SESSION_UPDATE_EVENT = 3;
+    static final byte ALERT_EVENT = 4;
+
+    private static final int UUID_SESSION_ID = 1 << 7;
+
+    private CompactEventCodec() {
+    }
+
+    public static byte[] encode(Object event) {
+        Writer out = new Writer();
+        out.writeByte(VERSION);
+        if (event instanceof SensorEvent e) {
+            out.writeByte(SENSOR_EVENT);
+            out.writeByte(presence(e.getSensorId()));
+            out.writeString(e.getSensorId());
+            out.writeLong(e.getTime());
+        } else if (event instanceof PaymentEvent e) {
+            out.writeByte(PAYMENT_EVENT);
+            out.writeByte(presence(e.getPlate(), e.getParkingSpot(), e.getAmount()));
+            out.writeString(e.getPlate());
+            out.writeString(e.getParkingSpot());
+            out.writeDecimal(e.getAmount());
+            out.writeLong(e.getTimestamp());
+        } else if (event instanceof SessionUpdateEvent e) {
+            out.writeByte(SESSION_UPDATE_EVENT);
+            UUID uuid = parseUuid(e.getSessionId());
+            out.writeByte(presence(e.getSessionId(), e.getStatus(), e.getPlate(), e.getParkingSpot(), e.getAmount(),
+                    e.getStartTime(), e.getPaidUntil()) | (uuid != null ? UUID_SESSION_ID : 0));
+            if (uuid != null) {
+                out.writeUuid(uuid);
+            } else {
+                out.writeString(e.getSessionId());
+            }
+            out.writeString(e.getStatus());
+            out.writeString(e.getPlate());
+            out.writeString(e.getParkingSpot());
+            out.writeDecimal(e.getAmount());
+            out.writeLong(e.getTimestamp());
+            if (e.getStartTime() != null) {
+                out.writeLong(e.getStartTime());
+            }
+            if (e.getPaidUntil() != null) {
+                out.writeLong(e.getPaidUntil());
+            }
+        } else if (event instanceof AlertEvent e) {
+            out.writeByte(ALERT_EVENT);
+            out.writeByte(presence(e.getType(), e.getSpot(), e.getMessage()));
+            out.writeString(e.getType());
+            out.writeString(e.getSpot());
+            out.writeString(e.getMessage());
+            out.writeLong(e.getTimestamp());
+        } else {
+            throw new IllegalArgumentException("No binary layout for " + (event == null ? "null" : event.getClass().getName()));
+        }
+        return out.toByteArray();
+    }
+
+    public static Object decode(byte[] data) {
+        Reader in = new Reader(data);
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary event version: " + version);
+        }
+        byte type = in.readByte();
+        int presence = in.readByte() & 0xFF;
+        switch (type) {
+            case SENSOR_EVENT: {
+                SensorEvent e = new SensorEvent();
+                e.setSensorId(has(presence, 0) ? in.readString() : null);
+                e.setTime(in.readLong());
+                return e;
+            }
+            case PAYMENT_EVENT: {
+                PaymentEvent e = new PaymentEvent();
+                e.setPlate(has(presence, 0) ? in.readString() : null);
+                e.setParkingSpot(has(presence, 1) ? in.readString() : null);
+                e.setAmount(has(presence, 2) ? in.readDecimal() : null);
+                e.setTimestamp(in.readLong());
+                return e;
+            }
+            case SESSION_UPDATE_EVENT: {
+                SessionUpdateEvent e = new SessionUpdateEvent();
+                if (has(presence, 0)) {
+                    e.setSessionId((presence & UUID_SESSION_ID) != 0 ? in.readUuid().toString() : in.readString());
+                }
+                e.setStatus(has(presence, 1) ? in.readString() : null);
+                e.setPlate(has(presence, 2) ? in.readString() : null);
+                e.setParkingSpot(has(presence, 3) ? in.readString() : null);
+                e.setAmount(has(presence, 4) ? in.readDecimal() : null);
+                e.setTimestamp(in.readLong());
+                e.setStartTime(has(presence, 5) ? in.readLong() : null);
+                e.setPaidUntil(has(presence, 6) ? in.readLong() : null);
+                return e;
+            }
+            case ALERT_EVENT: {
+                AlertEvent e = new AlertEvent();
+                e.setType(has(presence, 0) ? in.readString() : null);
+                e.setSpot(has(presence, 1) ? in.readString() : null);
+                e.setMessage(has(presence, 2) ? in.readString() : null);
+                e.setTimestamp(in.readLong());
+                return e;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown binary event type: " + type);
+        }
+    }
+
+    private static int presence(Object... fields) {
+        int bits = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                bits |= 1 << i;
+            }
+        }
+        return bits;
+    }
+
+    private static boolean has(int presence, int field) {
+        return (presence & (1 << field)) != 0;
+    }
+
+    private static UUID parseUuid(String value) {
+        // Only canonical 36-char UUIDs round-trip through the 16-byte form
+        if (value == null || value.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(value);
+            return uuid.toString().equals(value) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static final class Writer {
+        private byte[] buf = new byte[64];
+        private int pos;
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                return;
+            }
+            // Fast path for ASCII, which covers sensor ids, plates and statuses
+            int length = value.length();
+            boolean ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                ascii = value.charAt(i) < 0x80;
+            }
+            if (ascii) {
+                writeVarint(length);
+                ensure(length);
+                for (int i = 0; i < length; i++) {
+                    buf[pos++] = (byte) value.charAt(i);
+                }
+            } else {
+                writeBytes(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void writeDecimal(BigDecimal value) {
+            if (value == null) {
+                return;
+            }
+            writeLong(value.scale());
+            writeBytes(value.unscaledValue().toByteArray());
+        }
+
+        void writeUuid(UUID value) {
+            writeFixed64(value.getMostSignificantBits());
+            writeFixed64(value.getLeastSignificantBits());
+        }
+
+        private void writeFixed64(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte readByte() {
+            if (pos >= buf.length) {
+                throw new IllegalArgumentException("Truncated binary event");
+            }
+            return buf[pos++];
+        }
+
+        long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readLong() {
+            long raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        String readString() {
+            int length = readLength();
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        BigDecimal readDecimal() {
+            int scale = (int) readLong();
+            int length = readLength();
+            BigInteger unscaled = new BigInteger(buf, pos, length);
+            pos += length;
+            return new BigDecimal(unscaled, scale);
+        }
+
+        UUID readUuid() {
+            return new UUID(readFixed64(), readFixed64());
+        }
+
+        private long readFixed64() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        private int readLength() {
+            long length = readVarint();
+            if (length < 0 || length > buf.length - pos) {
+                throw new IllegalArgumentException("Truncated binary event");
+            }
+            return (int) length;
+        }
+    }
+}
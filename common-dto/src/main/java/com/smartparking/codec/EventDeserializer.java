@@ -0,0 +1,89 @@
+package com.smartparking.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartparking.model.AlertEvent;
+import com.smartparking.model.PaymentEvent;
+import com.smartparking.model.SensorEvent;
+import com.smartparking.model.SessionUpdateEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Kafka value deserializer for the event DTOs, accepting both wire formats.
+ *
+ * The format of a record comes from its {@link WireFormat#HEADER} header (no header = JSON).
+ * Binary records carry their own type tag; JSON records are bound to the DTO class registered for
+ * the topic. The built-in topics are pre-registered and more can be added with
+ * {@code smartparking.wire-format.types.<topic>=<class name>}. Records moved to another topic
+ * (retries, dead letters) name the topic they were first written to in {@link #SOURCE_TOPIC_HEADER},
+ * which then picks the class.
+ */
+public class EventDeserializer implements Deserializer<Object> {
+
+    public static final String TYPES_CONFIG = "smartparking.wire-format.types";
+    /** Topic whose DTO class a record carries, when it differs from the topic it is read from. */
+    public static final String SOURCE_TOPIC_HEADER = "sp-source-topic";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final Map<String, Class<?>> topicTypes = new HashMap<>(Map.of(
+            "parking-events", SensorEvent.class,
+            "sensor.events", SensorEvent.class,
+            "payment-events", PaymentEvent.class,
+            "session.updates", SessionUpdateEvent.class,
+            "alert.incident", AlertEvent.class
+    ));
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        String prefix = TYPES_CONFIG + ".";
+        configs.forEach((key, value) -> {
+            if (key.startsWith(prefix) && value != null) {
+                try {
+                    topicTypes.put(key.substring(prefix.length()), Class.forName(value.toString()));
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalArgumentException("Unknown event type for " + key + ": " + value, e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return decode(topic, WireFormat.JSON, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        Header header = headers.lastHeader(WireFormat.HEADER);
+        Header source = headers.lastHeader(SOURCE_TOPIC_HEADER);
+        return decode(source == null ? topic : new String(source.value(), StandardCharsets.UTF_8),
+                WireFormat.fromHeader(header == null ? null : header.value()), data);
+    }
+
+    private Object decode(String topic, WireFormat format, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (format == WireFormat.BINARY_V1) {
+                return CompactEventCodec.decode(data);
+            }
+            Class<?> type = topicTypes.get(topic);
+            if (type == null) {
+                throw new SerializationException("No event type registered for topic " + topic);
+            }
+            return objectMapper.readValue(data, type);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SerializationException("Can't deserialize " + format + " record from " + topic, e);
+        }
+    }
+}
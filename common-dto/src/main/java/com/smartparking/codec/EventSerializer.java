@@ -0,0 +1,78 @@
+package com.smartparking.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Kafka value serializer for the event DTOs.
+ *
+ * The format is chosen per topic: {@code smartparking.wire-format.<topic>} overrides the default
+ * {@code smartparking.wire-format} ({@code json} unless configured). Every record is tagged with
+ * the {@link WireFormat#HEADER} header so that {@link EventDeserializer} can read either format.
+ * Plain {@code String} values are passed through as UTF-8 JSON.
+ */
+public class EventSerializer implements Serializer<Object> {
+
+    public static final String FORMAT_CONFIG = "smartparking.wire-format";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, WireFormat> topicFormats = new HashMap<>();
+    private WireFormat defaultFormat = WireFormat.JSON;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object defaultValue = configs.get(FORMAT_CONFIG);
+        if (defaultValue != null) {
+            defaultFormat = WireFormat.fromConfig(defaultValue.toString());
+        }
+        String prefix = FORMAT_CONFIG + ".";
+        configs.forEach((key, value) -> {
+            if (key.startsWith(prefix) && value != null) {
+                topicFormats.put(key.substring(prefix.length()), WireFormat.fromConfig(value.toString()));
+            }
+        });
+    }
+
+    public WireFormat formatFor(String topic) {
+        return topicFormats.getOrDefault(topic, defaultFormat);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return encode(data, data instanceof String ? WireFormat.JSON : formatFor(topic));
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        if (data == null) {
+            return null;
+        }
+        WireFormat format = data instanceof String ? WireFormat.JSON : formatFor(topic);
+        headers.remove(WireFormat.HEADER);
+        headers.add(WireFormat.HEADER, format.headerBytes());
+        return encode(data, format);
+    }
+
+    private byte[] encode(Object data, WireFormat format) {
+        if (data == null) {
+            return null;
+        }
+        if (data instanceof String json) {
+            return json.getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            return format == WireFormat.BINARY_V1
+                    ? CompactEventCodec.encode(data)
+                    : objectMapper.writeValueAsBytes(data);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            throw new SerializationException("Can't serialize " + data.getClass().getSimpleName() + " as " + format, e);
+        }
+    }
+}
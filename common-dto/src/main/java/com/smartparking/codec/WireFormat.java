@@ -0,0 +1,58 @@
+package com.smartparking.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodings an event value can have on a topic. The encoding of each record is announced in the
+ * {@link #HEADER} record header, so producers and consumers of both formats can share a topic.
+ * Records without the header are JSON (the format used before the header existed).
+ */
+public enum WireFormat {
+
+    JSON("json"),
+    BINARY_V1("bin1");
+
+    public static final String HEADER = "sp-wire-format";
+
+    private final String headerValue;
+    private final byte[] headerBytes;
+
+    WireFormat(String headerValue) {
+        this.headerValue = headerValue;
+        this.headerBytes = headerValue.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public String headerValue() {
+        return headerValue;
+    }
+
+    byte[] headerBytes() {
+        return headerBytes;
+    }
+
+    /**
+     * Parses a configuration value: {@code json}, {@code binary} or a header value such as {@code bin1}.
+     */
+    public static WireFormat fromConfig(String value) {
+        if (value == null || value.isBlank() || value.equalsIgnoreCase("json")) {
+            return JSON;
+        }
+        if (value.equalsIgnoreCase("binary") || value.equalsIgnoreCase(BINARY_V1.headerValue)) {
+            return BINARY_V1;
+        }
+        throw new IllegalArgumentException("Unknown wire format: " + value);
+    }
+
+    static WireFormat fromHeader(byte[] value) {
+        if (value == null) {
+            return JSON;
+        }
+        String header = new String(value, StandardCharsets.US_ASCII);
+        for (WireFormat format : values()) {
+            if (format.headerValue.equals(header)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported wire format header: " + header);
+    }
+}
@@ -0,0 +1,41 @@
+package com.smartparking.kafka;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Sends dead-lettered records back to their listener once the cause is fixed, e.g.
+ * {@code POST /api/dead-letters/parking-controller/replay?limit=500}. Declared by {@link RetryConfiguration}.
+ */
+@RestController
+@RequestMapping("/api/dead-letters")
+public class DeadLetterController {
+
+    private final List<RetryChain> chains;
+    private final DeadLetterReplayer replayer;
+
+    public DeadLetterController(List<RetryChain> chains, DeadLetterReplayer replayer) {
+        this.chains = chains;
+        this.replayer = replayer;
+    }
+
+    /**
+     * Replays up to {@code limit} records of the dead-letter topic of one of the service's chains.
+     */
+    @PostMapping("/{chain}/replay")
+    public ResponseEntity<DeadLetterReplayer.Result> replay(@PathVariable String chain,
+                                                           @RequestParam(defaultValue = "100") int limit) throws Exception {
+        Optional<RetryChain> match = chains.stream().filter(c -> c.name().equals(chain)).findFirst();
+        if (match.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(replayer.replay(match.get(), limit));
+    }
+}
@@ -0,0 +1,139 @@
+package com.smartparking.kafka;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.support.SendResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends dead-lettered records of a {@link RetryChain} back to its listener once the cause is fixed.
+ *
+ * Records are read from {@code <chain>.dlt} with the group {@code <chain>-dlt-replay}, whose committed
+ * offsets mark how far replays got, and written to the chain's redelivery topic with their retry
+ * and {@code kafka_dlt-*} headers removed, so each one starts over with a full set of retries.
+ */
+public class DeadLetterReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterReplayer.class);
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final long MAX_REPLAY_MILLIS = 30_000;
+
+    /**
+     * Outcome of a replay: records sent back and records still left in the dead-letter topic.
+     */
+    public record Result(String chain, int replayed, long remaining) {
+    }
+
+    private final ConsumerFactory<String, byte[]> consumerFactory;
+    private final KafkaOperations<String, byte[]> rawTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> replayed = new ConcurrentHashMap<>();
+
+    public DeadLetterReplayer(ConsumerFactory<String, byte[]> consumerFactory, KafkaOperations<String, byte[]> rawTemplate,
+                              MeterRegistry meterRegistry) {
+        this.consumerFactory = consumerFactory;
+        this.rawTemplate = rawTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Replays up to {@code limit} dead-lettered records of the chain, oldest first per partition.
+     */
+    public synchronized Result replay(RetryChain chain, int limit) throws InterruptedException, ExecutionException, TimeoutException {
+        String topic = chain.deadLetterTopic();
+        try (Consumer<String, byte[]> consumer = consumerFactory.createConsumer(chain.name() + "-dlt-replay", null)) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            consumer.partitionsFor(topic).forEach(info -> partitions.add(new TopicPartition(topic, info.partition())));
+            consumer.assign(partitions);
+            Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(partitions));
+            for (TopicPartition partition : partitions) {
+                OffsetAndMetadata offset = committed.get(partition);
+                if (offset != null) {
+                    consumer.seek(partition, offset.offset());
+                } else {
+                    consumer.seekToBeginning(List.of(partition));
+                }
+            }
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+
+            List<CompletableFuture<SendResult<String, byte[]>>> sends = new ArrayList<>();
+            Map<TopicPartition, OffsetAndMetadata> next = new HashMap<>();
+            long deadline = System.currentTimeMillis() + MAX_REPLAY_MILLIS;
+            while (sends.size() < limit && !caughtUp(consumer, endOffsets) && System.currentTimeMillis() < deadline) {
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(POLL_TIMEOUT)) {
+                    if (sends.size() == limit) {
+                        // The rest of the poll is not committed and is read again by the next replay
+                        break;
+                    }
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    sends.add(rawTemplate.send(new ProducerRecord<>(chain.redeliveryTopic(), record.partition(), record.key(),
+                            record.value(), withoutRetryHeaders(record.headers()))));
+                    next.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                }
+            }
+            for (CompletableFuture<SendResult<String, byte[]>> send : sends) {
+                send.get(MAX_REPLAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            if (!next.isEmpty()) {
+                consumer.commitSync(next);
+            }
+
+            long remaining = 0;
+            for (TopicPartition partition : partitions) {
+                OffsetAndMetadata done = next.getOrDefault(partition, committed.get(partition));
+                long position = done != null ? done.offset() : consumer.beginningOffsets(List.of(partition)).get(partition);
+                remaining += Math.max(0, endOffsets.get(partition) - position);
+            }
+            replayed.computeIfAbsent(chain.name(), name -> Counter.builder("kafka.dlt.replayed")
+                    .tag("chain", name)
+                    .description("Dead-lettered records sent back to their listener")
+                    .register(meterRegistry)).increment(sends.size());
+            logger.info(">>> Replayed {} dead-lettered records of {} ({} left)", sends.size(), chain.name(), remaining);
+            return new Result(chain.name(), sends.size(), remaining);
+        }
+    }
+
+    private static boolean caughtUp(Consumer<?, ?> consumer, Map<TopicPartition, Long> endOffsets) {
+        for (Map.Entry<TopicPartition, Long> end : endOffsets.entrySet()) {
+            if (consumer.position(end.getKey()) < end.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Headers withoutRetryHeaders(Headers original) {
+        Headers headers = new RecordHeaders();
+        for (Header header : original) {
+            if (!header.key().equals(RetryChain.ATTEMPT_HEADER) && !header.key().equals(RetryChain.DUE_HEADER)
+                    && !header.key().startsWith("kafka_dlt-")) {
+                headers.add(header);
+            }
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,49 @@
+package com.smartparking.kafka;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.core.convert.ConversionException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.messaging.converter.MessageConversionException;
+
+import java.util.List;
+
+/**
+ * Tells failures caused by the record itself from failures of the infrastructure it was handled with.
+ *
+ * A POISON record (undecodable, missing fields, rejected by a constraint) fails the same way every
+ * time and goes straight to the dead-letter topic. Anything else (a Postgres or broker hiccup, a
+ * timeout) is TRANSIENT and is retried later. The whole cause chain is examined, since listener
+ * failures arrive wrapped in a {@code ListenerExecutionFailedException}.
+ */
+public final class FailureClassifier {
+
+    public enum Failure {
+        POISON, TRANSIENT
+    }
+
+    private static final List<Class<? extends Throwable>> POISON_TYPES = List.of(
+            DeserializationException.class,
+            MessageConversionException.class,
+            ConversionException.class,
+            JsonProcessingException.class,
+            ClassCastException.class,
+            IllegalArgumentException.class,
+            NullPointerException.class,
+            ArithmeticException.class,
+            DataIntegrityViolationException.class);
+
+    private FailureClassifier() {
+    }
+
+    public static Failure classify(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            for (Class<? extends Throwable> type : POISON_TYPES) {
+                if (type.isInstance(cause)) {
+                    return Failure.POISON;
+                }
+            }
+        }
+        return Failure.TRANSIENT;
+    }
+}
@@ -0,0 +1,109 @@
+package com.smartparking.kafka;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Runs the records of a poll on virtual threads, so a batch listener whose handler blocks on the
+ * database has many round trips in flight instead of one.
+ *
+ * Records are split into lanes by key (records without a key by partition). A lane runs its
+ * records one after the other, in poll order, on one virtual thread; lanes run concurrently, at most
+ * {@code maxConcurrentKeys} at a time per {@link #dispatch} call. Each consumer of a container dispatches
+ * its own polls, so the limit is per consumer and the consumers sharing a dispatcher never wait on each
+ * other. {@link #dispatch} returns once every lane is done, so the container commits the poll's offsets
+ * only after all of it was processed.
+ *
+ * A lane stops at its first failure (the later records of that key must not overtake it) and
+ * {@link #dispatch} then throws a {@link BatchListenerFailedException} for the earliest failed
+ * record: the records before it are committed, it goes to the error handler, and the rest of
+ * the poll is redelivered. Records of other keys after it that had already succeeded are
+ * processed again, so handlers must tolerate duplicates (at-least-once, as everywhere else).
+ */
+public class KeyOrderedDispatcher implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final int maxConcurrentKeys;
+    private final DistributionSummary lanesPerPoll;
+
+    public KeyOrderedDispatcher(String name, int maxConcurrentKeys, MeterRegistry meterRegistry) {
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+        this.maxConcurrentKeys = maxConcurrentKeys;
+        this.lanesPerPoll = DistributionSummary.builder("kafka.listener.lanes")
+                .tag("listener", name)
+                .description("Keys of a poll processed concurrently on virtual threads")
+                .register(meterRegistry);
+    }
+
+    public <K, V> void dispatch(List<ConsumerRecord<K, V>> records, Consumer<ConsumerRecord<K, V>> handler) {
+        Map<Object, List<Integer>> lanes = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<K, V> record = records.get(i);
+            Object lane = record.key() != null ? record.key() : record.partition();
+            lanes.computeIfAbsent(lane, k -> new ArrayList<>()).add(i);
+        }
+        lanesPerPoll.record(lanes.size());
+
+        // Lanes of this poll in flight
+        Semaphore permits = new Semaphore(maxConcurrentKeys);
+        // Failed record index -> cause, for the earliest failure
+        ConcurrentSkipListMap<Integer, RuntimeException> failures = new ConcurrentSkipListMap<>();
+        List<Future<?>> running = new ArrayList<>(lanes.size());
+        try {
+            for (List<Integer> lane : lanes.values()) {
+                permits.acquire();
+                running.add(executor.submit(() -> {
+                    try {
+                        for (int index : lane) {
+                            try {
+                                handler.accept(records.get(index));
+                            } catch (RuntimeException e) {
+                                failures.put(index, e);
+                                return;
+                            }
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<?> lane : running) {
+                lane.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running.forEach(lane -> lane.cancel(true));
+            throw new KafkaException("Interrupted while dispatching a poll of " + records.size() + " records", e);
+        } catch (ExecutionException e) {
+            // Lanes catch their handler's exceptions; only an Error gets here
+            throw new KafkaException("Lane failed", e.getCause());
+        }
+
+        if (!failures.isEmpty()) {
+            Map.Entry<Integer, RuntimeException> first = failures.firstEntry();
+            ConsumerRecord<K, V> record = records.get(first.getKey());
+            throw new BatchListenerFailedException("Failed to handle " + record.topic() + "-" + record.partition() + "@"
+                    + record.offset(), first.getValue(), first.getKey());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,15 @@
+package com.smartparking.kafka;
+
+/**
+ * Back-off of a service's retry chains ({@code smartparking.retry.*}), declared by {@link RetryConfiguration}:
+ * {@code initialDelayMillis * multiplier^attempt}, capped at {@code maxDelayMillis}, for {@code maxRetries} attempts.
+ */
+public record RetryBackOff(long initialDelayMillis, double multiplier, long maxDelayMillis, int maxRetries) {
+
+    /**
+     * The chain of the listener of the given consumer group.
+     */
+    public RetryChain chain(String name, String group) {
+        return new RetryChain(name, group, initialDelayMillis, multiplier, maxDelayMillis, maxRetries);
+    }
+}
@@ -0,0 +1,102 @@
+package com.smartparking.kafka;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The retry topics of one listener (one consumer group).
+ *
+ * A failed record is published to {@code <name>.retry-<delay>} for its attempt, with exponential
+ * back-off between attempts; records of one such topic all wait the same delay, so they become due
+ * in the order they were written. Once due they are written to {@code <name>.redelivery}, which the
+ * listener consumes next to its input topics, so a retried record comes back to the same listener
+ * (and the same partition number) and to no other consumer group. Poison records and records out
+ * of attempts end up in {@code <name>.dlt}.
+ *
+ * All of these topics need the partition count of the listener's input topics: records keep their
+ * partition number on every hop.
+ */
+public final class RetryChain {
+
+    /** Retries done so far, ASCII decimal. */
+    public static final String ATTEMPT_HEADER = "sp-retry-attempt";
+    /** Epoch millis at which a record in a retry topic may be redelivered, ASCII decimal. */
+    public static final String DUE_HEADER = "sp-retry-due";
+
+    private final String name;
+    private final String group;
+    private final long[] delays;
+
+    /**
+     * @param group consumer group of the listener whose failures the chain takes
+     */
+    public RetryChain(String name, String group, long initialDelayMillis, double multiplier, long maxDelayMillis, int maxRetries) {
+        this.name = name;
+        this.group = group;
+        this.delays = new long[maxRetries];
+        double delay = initialDelayMillis;
+        for (int i = 0; i < maxRetries; i++) {
+            delays[i] = Math.min((long) delay, maxDelayMillis);
+            delay *= multiplier;
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String group() {
+        return group;
+    }
+
+    public int maxRetries() {
+        return delays.length;
+    }
+
+    public long delayMillis(int attempt) {
+        return delays[attempt];
+    }
+
+    /**
+     * The retry topic of the given attempt (0 = first retry); capped delays share a topic.
+     */
+    public String retryTopic(int attempt) {
+        return name + ".retry-" + delays[attempt];
+    }
+
+    public List<String> retryTopics() {
+        Set<String> topics = new LinkedHashSet<>();
+        for (int i = 0; i < delays.length; i++) {
+            topics.add(retryTopic(i));
+        }
+        return new ArrayList<>(topics);
+    }
+
+    public String redeliveryTopic() {
+        return name + ".redelivery";
+    }
+
+    public String deadLetterTopic() {
+        return name + ".dlt";
+    }
+
+    public static int attempt(Headers headers) {
+        Header header = headers.lastHeader(ATTEMPT_HEADER);
+        return header == null ? 0 : Integer.parseInt(new String(header.value(), StandardCharsets.US_ASCII));
+    }
+
+    public static long due(Headers headers) {
+        Header header = headers.lastHeader(DUE_HEADER);
+        return header == null ? 0 : Long.parseLong(new String(header.value(), StandardCharsets.US_ASCII));
+    }
+
+    static byte[] ascii(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,135 @@
+package com.smartparking.kafka;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.CommonErrorHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The retry wiring of a service, imported by the configuration that declares its {@link RetryChain}s
+ * (built with the {@link RetryBackOff} bean, one per listener): the {@link RetryRouter} error handler,
+ * the {@link RetryForwarder}, the {@link DeadLetterReplayer} behind {@link DeadLetterController}, and the
+ * chains' topics with {@code smartparking.topics.partitions} partitions, since records keep their
+ * partition number on every hop.
+ */
+@Configuration
+public class RetryConfiguration {
+
+    @Value("${smartparking.topics.partitions:12}")
+    private int partitions;
+
+    // Moves records between topics without decoding them. Not a bean: Boot's KafkaTemplate and
+    // ProducerFactory back off as soon as one is declared
+    private final DefaultKafkaProducerFactory<String, byte[]> rawProducerFactory;
+    private final KafkaTemplate<String, byte[]> rawTemplate;
+
+    public RetryConfiguration(KafkaProperties kafkaProperties) {
+        Map<String, Object> props = kafkaProperties.buildProducerProperties(null);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        this.rawProducerFactory = new DefaultKafkaProducerFactory<>(props);
+        this.rawTemplate = new KafkaTemplate<>(rawProducerFactory);
+    }
+
+    @Bean
+    public RetryBackOff retryBackOff(@Value("${smartparking.retry.initial-delay-ms:1000}") long initialDelayMillis,
+                                     @Value("${smartparking.retry.multiplier:2.0}") double multiplier,
+                                     @Value("${smartparking.retry.max-delay-ms:60000}") long maxDelayMillis,
+                                     @Value("${smartparking.retry.max-retries:5}") int maxRetries) {
+        return new RetryBackOff(initialDelayMillis, multiplier, maxDelayMillis, maxRetries);
+    }
+
+    /**
+     * Boot's default consumer factory, declared here because {@link #rawConsumerFactory} (and any other
+     * consumer factory of the service) would otherwise replace it. Used by every {@code @KafkaListener}
+     * container factory.
+     */
+    @Bean
+    public ConsumerFactory<Object, Object> kafkaConsumerFactory(KafkaProperties kafkaProperties) {
+        return new DefaultKafkaConsumerFactory<>(kafkaProperties.buildConsumerProperties(null));
+    }
+
+    /**
+     * Undecoded consumers for the retry and dead-letter topics, which are only moved between topics.
+     * They start from the earliest offset so that nothing written before a group first joined is missed.
+     */
+    @Bean
+    public ConsumerFactory<String, byte[]> rawConsumerFactory(KafkaProperties kafkaProperties) {
+        Map<String, Object> props = kafkaProperties.buildConsumerProperties(null);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer());
+    }
+
+    /**
+     * Picked up by Boot's container factory configurer, so every listener container of the service uses it.
+     */
+    @Bean
+    public CommonErrorHandler retryingErrorHandler(KafkaTemplate<?, ?> kafkaTemplate, List<RetryChain> chains,
+                                                   MeterRegistry meterRegistry) {
+        Map<String, RetryChain> chainsByGroup = new HashMap<>();
+        for (RetryChain chain : chains) {
+            chainsByGroup.put(chain.group(), chain);
+        }
+        return new RetryRouter(chainsByGroup, meterRegistry).errorHandler(kafkaTemplate, rawTemplate);
+    }
+
+    @Bean
+    public RetryForwarder retryForwarder(List<RetryChain> chains, ConsumerFactory<String, byte[]> rawConsumerFactory,
+                                         MeterRegistry meterRegistry) {
+        return new RetryForwarder(chains, rawConsumerFactory, rawTemplate, meterRegistry);
+    }
+
+    @Bean
+    public DeadLetterReplayer deadLetterReplayer(ConsumerFactory<String, byte[]> rawConsumerFactory, MeterRegistry meterRegistry) {
+        return new DeadLetterReplayer(rawConsumerFactory, rawTemplate, meterRegistry);
+    }
+
+    @Bean
+    public DeadLetterController deadLetterController(List<RetryChain> chains, DeadLetterReplayer deadLetterReplayer) {
+        return new DeadLetterController(chains, deadLetterReplayer);
+    }
+
+    /**
+     * Retry, redelivery and dead-letter topics of every chain.
+     */
+    @Bean
+    public KafkaAdmin.NewTopics retryTopics(List<RetryChain> chains) {
+        List<NewTopic> topics = new ArrayList<>();
+        for (RetryChain chain : chains) {
+            List<String> names = new ArrayList<>(chain.retryTopics());
+            names.add(chain.redeliveryTopic());
+            names.add(chain.deadLetterTopic());
+            for (String name : names) {
+                topics.add(TopicBuilder.name(name).partitions(partitions).replicas(1).build());
+            }
+        }
+        return new KafkaAdmin.NewTopics(topics.toArray(NewTopic[]::new));
+    }
+
+    @PreDestroy
+    void closeRawProducer() {
+        rawProducerFactory.destroy();
+    }
+}
@@ -0,0 +1,99 @@
+package com.smartparking.kafka;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Moves due records from the retry topics of {@link RetryChain}s to their redelivery topics.
+ *
+ * Each retry topic has its own consumer (group {@code <chain>-retry}), so a record waiting out a
+ * long delay never holds back a shorter one. All records of a retry topic have the same delay and
+ * become due in order, so the consumer simply waits for the head record; the listeners' input
+ * partitions are not involved. A record that can't be forwarded is retried until the broker takes it.
+ */
+public class RetryForwarder implements SmartLifecycle {
+
+    private static final long SEND_TIMEOUT_MILLIS = 30_000;
+
+    private final List<ConcurrentMessageListenerContainer<String, byte[]>> containers = new ArrayList<>();
+    private final KafkaOperations<String, byte[]> rawTemplate;
+    private volatile boolean running;
+
+    public RetryForwarder(List<RetryChain> chains, ConsumerFactory<String, byte[]> consumerFactory,
+                          KafkaOperations<String, byte[]> rawTemplate, MeterRegistry meterRegistry) {
+        this.rawTemplate = rawTemplate;
+        for (RetryChain chain : chains) {
+            Counter forwarded = Counter.builder("kafka.retry.forwarded")
+                    .tag("chain", chain.name())
+                    .description("Retried records handed back to their listener")
+                    .register(meterRegistry);
+            for (String topic : chain.retryTopics()) {
+                ContainerProperties properties = new ContainerProperties(topic);
+                properties.setGroupId(chain.name() + "-retry");
+                properties.setMessageListener((MessageListener<String, byte[]>) record -> {
+                    forward(record, chain.redeliveryTopic());
+                    forwarded.increment();
+                });
+                ConcurrentMessageListenerContainer<String, byte[]> container =
+                        new ConcurrentMessageListenerContainer<>(consumerFactory, properties);
+                container.setBeanName(topic + "-forwarder");
+                container.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(1000, FixedBackOff.UNLIMITED_ATTEMPTS)));
+                containers.add(container);
+            }
+        }
+    }
+
+    private void forward(ConsumerRecord<String, byte[]> record, String redeliveryTopic) {
+        long wait = RetryChain.due(record.headers()) - System.currentTimeMillis();
+        try {
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+            Headers headers = new RecordHeaders(record.headers().toArray());
+            headers.remove(RetryChain.DUE_HEADER);
+            rawTemplate.send(new ProducerRecord<>(redeliveryTopic, record.partition(), record.key(), record.value(), headers))
+                    .get(SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while forwarding " + record.topic() + "-" + record.partition() + "@" + record.offset(), e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new KafkaException("Can't forward " + record.topic() + "-" + record.partition() + "@" + record.offset(), e);
+        }
+    }
+
+    @Override
+    public void start() {
+        containers.forEach(ConcurrentMessageListenerContainer::start);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        containers.forEach(ConcurrentMessageListenerContainer::stop);
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,129 @@
+package com.smartparking.kafka;
+
+import com.smartparking.codec.EventDeserializer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.KafkaUtils;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Container error handler of a service: routes every failed record to its listener's
+ * {@link RetryChain} instead of retrying it in place, so the partition it came from keeps flowing.
+ *
+ * The chain is picked by the consumer group of the failing listener. A transient failure goes to the
+ * retry topic of the record's next attempt; a poison record (see {@link FailureClassifier}) or one
+ * out of attempts goes to the dead-letter topic. Records keep their key, partition number and
+ * headers; the dead-letter record also carries Spring's {@code kafka_dlt-*} headers (original
+ * topic, partition, offset of the first failure and the last exception). The first hop also records
+ * the input topic in {@link EventDeserializer#SOURCE_TOPIC_HEADER}, since a redelivery topic mixes
+ * the records of all the listener's topics. Records that failed to deserialize are published with
+ * their original bytes.
+ *
+ * Failures of listeners without a chain are only logged.
+ */
+public class RetryRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryRouter.class);
+
+    private record Route(RetryChain chain, String topic, int attempt, long due, FailureClassifier.Failure failure) {
+    }
+
+    private final Map<String, RetryChain> chainsByGroup;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public RetryRouter(Map<String, RetryChain> chainsByGroup, MeterRegistry meterRegistry) {
+        this.chainsByGroup = chainsByGroup;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * The error handler for the service's listener container factories.
+     *
+     * @param template    the service's template, for records that were decoded
+     * @param rawTemplate a {@code byte[]} value template, for records that failed to decode
+     */
+    public DefaultErrorHandler errorHandler(KafkaOperations<?, ?> template, KafkaOperations<?, ?> rawTemplate) {
+        Map<Class<?>, KafkaOperations<?, ?>> templates = new LinkedHashMap<>();
+        templates.put(byte[].class, rawTemplate);
+        templates.put(Object.class, template);
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(templates, this::destination);
+        // The dead-letter record points at the first failure, not at the last redelivery
+        recoverer.setAppendOriginalHeaders(false);
+        recoverer.setHeadersFunction(this::retryHeaders);
+
+        // No in-place retries: the record is handed to its chain right away
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(recoverer, new FixedBackOff(0, 0));
+        errorHandler.setLogLevel(KafkaException.Level.DEBUG);
+        return errorHandler;
+    }
+
+    private TopicPartition destination(ConsumerRecord<?, ?> record, Exception exception) {
+        Route route = route(record, exception);
+        if (route == null) {
+            logger.error(">>> Record {}-{}@{} failed in group {} without a retry chain; skipped",
+                    record.topic(), record.partition(), record.offset(), KafkaUtils.getConsumerGroupId(), exception);
+            return null;
+        }
+        boolean deadLetter = route.topic().equals(route.chain().deadLetterTopic());
+        if (deadLetter) {
+            logger.warn(">>> Record {}-{}@{} dead-lettered to {} ({} after {} retries): {}", record.topic(), record.partition(),
+                    record.offset(), route.topic(), route.failure(), route.attempt(), exception.getMessage());
+        } else {
+            logger.info(">>> Record {}-{}@{} retried through {} ({})", record.topic(), record.partition(), record.offset(),
+                    route.topic(), exception.getMessage());
+        }
+        counter(route.chain().name(), deadLetter ? "dlt" : "retry", route.failure()).increment();
+        return new TopicPartition(route.topic(), record.partition());
+    }
+
+    private Headers retryHeaders(ConsumerRecord<?, ?> record, Exception exception) {
+        Headers headers = new RecordHeaders();
+        if (record.headers().lastHeader(EventDeserializer.SOURCE_TOPIC_HEADER) == null) {
+            headers.add(EventDeserializer.SOURCE_TOPIC_HEADER, record.topic().getBytes(StandardCharsets.UTF_8));
+        }
+        Route route = route(record, exception);
+        if (route != null && route.due() > 0) {
+            headers.add(RetryChain.ATTEMPT_HEADER, RetryChain.ascii(route.attempt() + 1));
+            headers.add(RetryChain.DUE_HEADER, RetryChain.ascii(route.due()));
+        }
+        return headers;
+    }
+
+    private Route route(ConsumerRecord<?, ?> record, Exception exception) {
+        RetryChain chain = chainsByGroup.get(KafkaUtils.getConsumerGroupId());
+        if (chain == null) {
+            return null;
+        }
+        FailureClassifier.Failure failure = FailureClassifier.classify(exception);
+        int attempt = RetryChain.attempt(record.headers());
+        if (failure == FailureClassifier.Failure.POISON || attempt >= chain.maxRetries()) {
+            return new Route(chain, chain.deadLetterTopic(), attempt, 0, failure);
+        }
+        return new Route(chain, chain.retryTopic(attempt), attempt, System.currentTimeMillis() + chain.delayMillis(attempt), failure);
+    }
+
+    private Counter counter(String chain, String destination, FailureClassifier.Failure failure) {
+        return counters.computeIfAbsent(chain + ":" + destination + ":" + failure, k -> Counter.builder("kafka.retry.routed")
+                .tag("chain", chain)
+                .tag("destination", destination)
+                .tag("failure", failure.name().toLowerCase())
+                .description("Failed records handed to a retry or dead-letter topic")
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,124 @@
+package com.smartparking.logging;
+
+import io.micrometer.core.instrument.Counter;
+import org.slf4j.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * INFO logging for per-event paths (a line per heartbeat, payment or alert), thinned out so that
+ * a busy fleet doesn't spend its CPU on console output.
+ *
+ * A line is written only if it passes probabilistic sampling ({@code sampleRate}) and the rate
+ * limit of its key (usually the sensor/spot) and format: at most one line of each kind per key every
+ * {@code minIntervalMillis}, so the lines of back-to-back transitions of a spot (confirmed, then paid)
+ * don't suppress each other. Keys are hashed into a fixed table of slots, so memory does not grow with
+ * the fleet; keys sharing a slot share its limit, which also caps the log at {@code slots} lines per
+ * interval. Dropped lines
+ * are counted and reported in a summary line at most every {@code summaryIntervalMillis}, written by
+ * the next call after the interval.
+ *
+ * A dropped line costs a clock read, a table lookup and a counter increment: the message is not
+ * formatted and, with the fixed-arity methods, nothing is allocated.
+ */
+public final class HotPathLog {
+
+    private final Logger logger;
+    private final String name;
+    private final long minIntervalMillis;
+    private final double sampleRate;
+    private final long summaryIntervalMillis;
+    // Earliest time the next line of the keys hashed to each slot may be written
+    private final AtomicLongArray nextAllowed;
+    private final int mask;
+    private final LongAdder suppressedSinceSummary = new LongAdder();
+    private final AtomicLong nextSummary;
+    private final Counter suppressed;
+
+    HotPathLog(Logger logger, String name, long minIntervalMillis, double sampleRate, long summaryIntervalMillis,
+               int slots, Counter suppressed) {
+        this.logger = logger;
+        this.name = name;
+        this.minIntervalMillis = minIntervalMillis;
+        this.sampleRate = sampleRate;
+        this.summaryIntervalMillis = summaryIntervalMillis;
+        int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.nextAllowed = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.nextSummary = new AtomicLong(System.currentTimeMillis() + summaryIntervalMillis);
+        this.suppressed = suppressed;
+    }
+
+    public void info(String key, String format, Object arg) {
+        if (admit(key, format)) {
+            logger.info(format, arg);
+        }
+    }
+
+    public void info(String key, String format, Object arg1, Object arg2) {
+        if (admit(key, format)) {
+            logger.info(format, arg1, arg2);
+        }
+    }
+
+    public void info(String key, String format, Object arg1, Object arg2, Object arg3) {
+        if (admit(key, format)) {
+            logger.info(format, arg1, arg2, arg3);
+        }
+    }
+
+    /**
+     * Whether a line for {@code key} would be written now; counts it as suppressed if not.
+     * For call sites whose arguments are expensive to compute; the key alone is rate limited.
+     */
+    public boolean admit(String key) {
+        return admit(key, null);
+    }
+
+    // line = the format of the line, null for admit(key)
+    private boolean admit(String key, String line) {
+        if (!logger.isInfoEnabled()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        summarize(now);
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            suppress();
+            return false;
+        }
+        if (minIntervalMillis > 0) {
+            int hash = line == null ? key.hashCode() : 31 * key.hashCode() + line.hashCode();
+            int slot = spread(hash) & mask;
+            long allowedAt = nextAllowed.get(slot);
+            if (now < allowedAt || !nextAllowed.compareAndSet(slot, allowedAt, now + minIntervalMillis)) {
+                suppress();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void suppress() {
+        suppressedSinceSummary.increment();
+        suppressed.increment();
+    }
+
+    private void summarize(long now) {
+        long due = nextSummary.get();
+        if (now < due || !nextSummary.compareAndSet(due, now + summaryIntervalMillis)) {
+            return;
+        }
+        long count = suppressedSinceSummary.sumThenReset();
+        if (count > 0) {
+            // The previous summary was due at due - summaryIntervalMillis
+            logger.info(">>> {}: {} lines suppressed in the last {} s", name, count, (now - due + summaryIntervalMillis) / 1000);
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
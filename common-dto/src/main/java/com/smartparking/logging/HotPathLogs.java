@@ -0,0 +1,45 @@
+package com.smartparking.logging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+
+/**
+ * Creates the {@link HotPathLog}s of a service with its shared settings
+ * ({@code smartparking.logging.hot-path.*}). Each log counts its dropped lines in
+ * {@code log.hotpath.suppressed{log=<name>}}.
+ */
+public class HotPathLogs {
+
+    private final MeterRegistry meterRegistry;
+    private final long minIntervalMillis;
+    private final double sampleRate;
+    private final long summaryIntervalMillis;
+    private final int slots;
+
+    /**
+     * @param minIntervalMillis     per key, minimum time between two lines (0 = no per-key limit)
+     * @param sampleRate            fraction of lines kept before the per-key limit applies (1.0 = all)
+     * @param summaryIntervalMillis minimum time between two summaries of suppressed lines
+     * @param slots                 size of the per-key table, rounded up to a power of two
+     */
+    public HotPathLogs(MeterRegistry meterRegistry, long minIntervalMillis, double sampleRate,
+                       long summaryIntervalMillis, int slots) {
+        this.meterRegistry = meterRegistry;
+        this.minIntervalMillis = minIntervalMillis;
+        this.sampleRate = sampleRate;
+        this.summaryIntervalMillis = summaryIntervalMillis;
+        this.slots = slots;
+    }
+
+    /**
+     * A log writing to {@code logger}; {@code name} identifies it in summaries and metrics.
+     */
+    public HotPathLog create(String name, Logger logger) {
+        Counter suppressed = Counter.builder("log.hotpath.suppressed")
+                .tag("log", name)
+                .description("Hot-path log lines dropped by sampling or the per-key rate limit")
+                .register(meterRegistry);
+        return new HotPathLog(logger, name, minIntervalMillis, sampleRate, summaryIntervalMillis, slots, suppressed);
+    }
+}
@@ -0,0 +1,28 @@
+package com.smartparking.logging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * The {@link HotPathLogs} of every service, with the shared settings of the per-event log lines:
+ * {@code smartparking.logging.hot-path.min-interval-ms} (10 s per key and kind of line), {@code sample-rate}
+ * (1.0 = keep all), {@code summary-interval-ms} (60 s) and {@code key-slots} (4096). The console itself is
+ * written asynchronously by the appender of {@code com/smartparking/logging/async-console-appender.xml},
+ * included by each service's logback-spring.xml.
+ */
+@AutoConfiguration
+public class HotPathLogsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public HotPathLogs hotPathLogs(MeterRegistry meterRegistry,
+                                   @Value("${smartparking.logging.hot-path.min-interval-ms:10000}") long minIntervalMillis,
+                                   @Value("${smartparking.logging.hot-path.sample-rate:1.0}") double sampleRate,
+                                   @Value("${smartparking.logging.hot-path.summary-interval-ms:60000}") long summaryIntervalMillis,
+                                   @Value("${smartparking.logging.hot-path.key-slots:4096}") int keySlots) {
+        return new HotPathLogs(meterRegistry, minIntervalMillis, sampleRate, summaryIntervalMillis, keySlots);
+    }
+}
@@ -10,6 +10,8 @@ public class SessionUpdateEvent {
     private String parkingSpot;
     private BigDecimal amount;
     private long timestamp;
+    private Long startTime; // epoch millis
+    private Long paidUntil; // epoch millis, null unless PAID
 
     public SessionUpdateEvent() {
     }
@@ -24,6 +26,13 @@ public class SessionUpdateEvent {
         this.timestamp = timestamp;
     }
 
+    public SessionUpdateEvent(String sessionId, String status, String plate, String parkingSpot, BigDecimal amount,
+            long timestamp, Long startTime, Long paidUntil) {
+        this(sessionId, status, plate, parkingSpot, amount, timestamp);
+        this.startTime = startTime;
+        this.paidUntil = paidUntil;
+    }
+
     public String getSessionId() {
         return sessionId;
     }
@@ -71,4 +80,20 @@ public class SessionUpdateEvent {
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
+
+    public Long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Long startTime) {
+        this.startTime = startTime;
+    }
+
+    public Long getPaidUntil() {
+        return paidUntil;
+    }
+
+    public void setPaidUntil(Long paidUntil) {
+        this.paidUntil = paidUntil;
+    }
 }
@@ -0,0 +1,99 @@
+package com.smartparking.tracing;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Where an event entered the pipeline: the wall-clock time it originated (epoch millis) and a trace id
+ * that follows it, and the records derived from it, from service to service.
+ *
+ * Both travel as Kafka record headers ({@link #ORIGIN_TIME_HEADER}, {@link #TRACE_ID_HEADER}), in
+ * ASCII so they stay readable with any Kafka tool. Each stage measures its latency as
+ * {@code now - originTime}; clocks of different hosts are assumed to be NTP-synchronized.
+ */
+public record TraceContext(long originTime, String traceId) {
+
+    public static final String ORIGIN_TIME_HEADER = "sp-origin-ts";
+    public static final String TRACE_ID_HEADER = "sp-trace-id";
+
+    /**
+     * A new trace for an event originating at {@code originTime}.
+     */
+    public static TraceContext start(long originTime) {
+        return new TraceContext(originTime, newTraceId());
+    }
+
+    /**
+     * Reads the trace of a consumed record. Records from producers that don't trace start a new trace
+     * at {@code fallbackOriginTime} (usually the timestamp carried in the event itself).
+     */
+    public static TraceContext from(byte[] originTimeHeader, byte[] traceIdHeader, long fallbackOriginTime) {
+        long originTime = fallbackOriginTime;
+        if (originTimeHeader != null) {
+            try {
+                originTime = Long.parseLong(new String(originTimeHeader, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                // Keep the fallback
+            }
+        }
+        String traceId = traceIdHeader != null ? new String(traceIdHeader, StandardCharsets.US_ASCII) : newTraceId();
+        return new TraceContext(originTime, traceId);
+    }
+
+    /**
+     * Same as {@link #from(byte[], byte[], long)} for the converted headers of a batch listener record.
+     */
+    public static TraceContext from(Map<String, ?> headers, long fallbackOriginTime) {
+        if (headers == null) {
+            return start(fallbackOriginTime);
+        }
+        return from(bytes(headers.get(ORIGIN_TIME_HEADER)), bytes(headers.get(TRACE_ID_HEADER)), fallbackOriginTime);
+    }
+
+    public long elapsedMillis(long now) {
+        // Clamped: a skewed clock must not produce negative latencies
+        return Math.max(0, now - originTime);
+    }
+
+    public void writeTo(Headers headers) {
+        headers.remove(ORIGIN_TIME_HEADER);
+        headers.remove(TRACE_ID_HEADER);
+        headers.add(ORIGIN_TIME_HEADER, Long.toString(originTime).getBytes(StandardCharsets.US_ASCII));
+        headers.add(TRACE_ID_HEADER, traceId.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * A record for {@code KafkaTemplate.send(ProducerRecord)} carrying this trace.
+     */
+    public <V> ProducerRecord<String, V> toRecord(String topic, String key, V value) {
+        ProducerRecord<String, V> record = new ProducerRecord<>(topic, key, value);
+        writeTo(record.headers());
+        return record;
+    }
+
+    private static byte[] bytes(Object value) {
+        if (value instanceof byte[] raw) {
+            return raw;
+        }
+        return value instanceof String text ? text.getBytes(StandardCharsets.US_ASCII) : null;
+    }
+
+    // 128 random bits as 32 hex digits, the W3C trace-id shape; not cryptographically random
+    private static String newTraceId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] hex = new char[32];
+        long high = random.nextLong();
+        long low = random.nextLong();
+        for (int i = 15; i >= 0; i--) {
+            hex[i] = Character.forDigit((int) (high & 0xF), 16);
+            hex[i + 16] = Character.forDigit((int) (low & 0xF), 16);
+            high >>>= 4;
+            low >>>= 4;
+        }
+        return new String(hex);
+    }
+}
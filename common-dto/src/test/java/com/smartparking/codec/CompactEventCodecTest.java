@@ -0,0 +1,136 @@
+package com.smartparking.codec;
+
+import com.smartparking.model.AlertEvent;
+import com.smartparking.model.PaymentEvent;
+import com.smartparking.model.SensorEvent;
+import com.smartparking.model.SessionUpdateEvent;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompactEventCodecTest {
+
+    @Test
+    void sensorEvent() {
+        assertRoundTrip(new SensorEvent("A17", 1_792_000_000_000L));
+        assertRoundTrip(new SensorEvent(null, 0));
+        assertRoundTrip(new SensorEvent("S-4711", Long.MIN_VALUE));
+        assertRoundTrip(new SensorEvent("S-4711", Long.MAX_VALUE));
+    }
+
+    @Test
+    void paymentEventWithNullFields() {
+        assertRoundTrip(new PaymentEvent("AA-00-00", "A1", new BigDecimal("2.50"), 1_792_000_000_000L));
+        assertRoundTrip(new PaymentEvent(null, null, null, 0));
+        assertRoundTrip(new PaymentEvent("AA-00-00", null, new BigDecimal("0.10"), -1));
+    }
+
+    @Test
+    void amountsKeepTheirScale() {
+        BigDecimal[] amounts = {
+                BigDecimal.ZERO,
+                new BigDecimal("0.00"),
+                new BigDecimal("-12.75"),
+                // Negative scale: 5 x 10^3
+                new BigDecimal(BigInteger.valueOf(5), -3),
+                new BigDecimal(BigInteger.valueOf(-7), -1_000),
+                // Large scale
+                new BigDecimal(BigInteger.ONE, 40),
+                new BigDecimal(BigInteger.valueOf(-1), Integer.MAX_VALUE),
+                new BigDecimal(BigInteger.ONE, Integer.MIN_VALUE),
+                // Unscaled values beyond a long
+                new BigDecimal("123456789012345678901234567890.123456789"),
+                new BigDecimal("-98765432109876543210987654321"),
+        };
+        for (BigDecimal amount : amounts) {
+            PaymentEvent decoded = (PaymentEvent) roundTrip(new PaymentEvent("AA-00-00", "A1", amount, 1));
+            assertThat(decoded.getAmount()).isEqualTo(amount);
+            assertThat(decoded.getAmount().scale()).isEqualTo(amount.scale());
+        }
+    }
+
+    @Test
+    void sessionUpdateEventWithUuidId() {
+        SessionUpdateEvent event = new SessionUpdateEvent(UUID.randomUUID().toString(), "PAID", "AA-00-00", "A1",
+                new BigDecimal("2.50"), 1_792_000_000_000L, 1_791_999_000_000L, 1_792_001_500_000L);
+        assertRoundTrip(event);
+
+        SessionUpdateEvent asString = new SessionUpdateEvent("not-a-uuid", "PAID", "AA-00-00", "A1",
+                new BigDecimal("2.50"), 1_792_000_000_000L, 1_791_999_000_000L, 1_792_001_500_000L);
+        // 16 raw bytes where the other id takes a length byte and its 10 characters
+        assertThat(CompactEventCodec.encode(event)).hasSize(CompactEventCodec.encode(asString).length - 11 + 16);
+    }
+
+    @Test
+    void sessionUpdateEventWithOtherIds() {
+        String[] ids = {
+                "legacy-42",
+                "",
+                // UUID-shaped but not in the canonical form UUID.toString() gives back
+                UUID.randomUUID().toString().toUpperCase(),
+                "1-2-3-4-5",
+                "123e4567-e89b-12d3-a456-42661417400g",
+        };
+        for (String id : ids) {
+            assertRoundTrip(new SessionUpdateEvent(id, "UNPAID", null, "A1", null, 1_792_000_000_000L, 1_791_999_000_000L, null));
+        }
+    }
+
+    @Test
+    void sessionUpdateEventWithNullFields() {
+        assertRoundTrip(new SessionUpdateEvent(null, null, null, null, null, 0, null, null));
+        assertRoundTrip(new SessionUpdateEvent(UUID.randomUUID().toString(), "TERMINATED", null, "A1", null, 1, null, null));
+        assertRoundTrip(new SessionUpdateEvent("legacy-42", null, "AA-00-00", null, new BigDecimal("1.0"), -5, 0L, 0L));
+    }
+
+    @Test
+    void alertEvent() {
+        assertRoundTrip(new AlertEvent("OVERSTAY", "A1", "Lugar A1 excedeu o tempo pago às 14h", 1_792_000_000_000L));
+        assertRoundTrip(new AlertEvent(null, null, null, 0));
+        assertRoundTrip(new AlertEvent("UNPAID", "B-05", "", Long.MIN_VALUE));
+    }
+
+    @Test
+    void ignoresTrailingBytes() {
+        SensorEvent event = new SensorEvent("A17", 1_792_000_000_000L);
+        byte[] data = CompactEventCodec.encode(event);
+        byte[] extended = Arrays.copyOf(data, data.length + 3);
+
+        assertThat(CompactEventCodec.decode(extended)).usingRecursiveComparison().isEqualTo(event);
+    }
+
+    @Test
+    void rejectsTruncatedData() {
+        byte[] data = CompactEventCodec.encode(new PaymentEvent("AA-00-00", "A1", new BigDecimal("2.50"), 1_792_000_000_000L));
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThatThrownBy(() -> CompactEventCodec.decode(truncated)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void rejectsUnknownVersionAndType() {
+        byte[] data = CompactEventCodec.encode(new SensorEvent("A17", 1));
+        byte[] version = data.clone();
+        version[0] = 2;
+        byte[] type = data.clone();
+        type[1] = 9;
+
+        assertThatThrownBy(() -> CompactEventCodec.decode(version)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CompactEventCodec.decode(type)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Object roundTrip(Object event) {
+        return CompactEventCodec.decode(CompactEventCodec.encode(event));
+    }
+
+    private static void assertRoundTrip(Object event) {
+        assertThat(roundTrip(event)).usingRecursiveComparison().isEqualTo(event);
+    }
+}
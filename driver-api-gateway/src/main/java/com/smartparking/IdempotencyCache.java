@@ -0,0 +1,92 @@
+package com.smartparking;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Bounded map from client idempotency key to the outcome of the payment first sent with it.
+ *
+ * Entries are kept in access order and the least recently used one is evicted once
+ * {@code payments.idempotency.max-entries} is reached; entries older than
+ * {@code payments.idempotency.ttl-ms} are ignored. The cached value is the send future itself, so a
+ * retry that arrives while the original is still in flight waits for the same acknowledgement.
+ * Failed sends are forgotten, so they can be retried.
+ */
+@Component
+public class IdempotencyCache {
+
+    private record Entry(CompletableFuture<PaymentAck> outcome, long createdAt) {
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+
+    public IdempotencyCache(@Value("${payments.idempotency.max-entries:100000}") int maxEntries,
+                            @Value("${payments.idempotency.ttl-ms:86400000}") long ttlMillis,
+                            MeterRegistry meterRegistry) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > IdempotencyCache.this.maxEntries;
+            }
+        };
+        Gauge.builder("payments.idempotency.keys", this, IdempotencyCache::size)
+                .description("Idempotency keys held by the gateway")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the outcome cached for the key, or runs {@code send} and caches its outcome.
+     *
+     * @return the outcome and whether it was already cached
+     */
+    public Result computeIfAbsent(String key, Supplier<CompletableFuture<PaymentAck>> send) {
+        CompletableFuture<PaymentAck> outcome;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Entry existing = entries.get(key);
+            if (existing != null && now - existing.createdAt() < ttlMillis) {
+                return new Result(existing.outcome(), true);
+            }
+            outcome = new CompletableFuture<>();
+            entries.put(key, new Entry(outcome, now));
+        }
+
+        // Sent outside the lock; a concurrent retry already sees the pending future
+        send.get().whenComplete((ack, ex) -> {
+            if (ex != null || !"ACCEPTED".equals(ack.status())) {
+                forget(key, outcome);
+            }
+            if (ex != null) {
+                outcome.completeExceptionally(ex);
+            } else {
+                outcome.complete(ack);
+            }
+        });
+        return new Result(outcome, false);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized void forget(String key, CompletableFuture<PaymentAck> outcome) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.outcome() == outcome) {
+            entries.remove(key);
+        }
+    }
+
+    public record Result(CompletableFuture<PaymentAck> outcome, boolean duplicate) {
+    }
+}
@@ -1,6 +1,7 @@
 package com.smartparking;
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
@@ -8,11 +9,15 @@ import org.springframework.kafka.config.TopicBuilder;
 @Configuration
 public class KafkaTopicConfig {
 
+    // Must match the other input topics of the parking-controller (keyed by spot, co-partitioned)
+    @Value("${smartparking.topics.partitions:12}")
+    private int partitions;
+
     @Bean
     public NewTopic paymentReceivedTopic() {
         return TopicBuilder.name("payment-events")
-                .partitions(1)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package com.smartparking;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one payment: ACCEPTED once Kafka acknowledged it, DUPLICATE for a repeated
+ * idempotency key (with the original record's position), REJECTED if it was invalid and never
+ * sent, FAILED if the broker did not acknowledge it in time.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PaymentAck(Integer index, String idempotencyKey, String status, Integer partition, Long offset,
+                         String traceId, String error) {
+
+    public static PaymentAck accepted(String idempotencyKey, int partition, long offset, String traceId) {
+        return new PaymentAck(null, idempotencyKey, "ACCEPTED", partition, offset, traceId, null);
+    }
+
+    public static PaymentAck rejected(String idempotencyKey, String error) {
+        return new PaymentAck(null, idempotencyKey, "REJECTED", null, null, null, error);
+    }
+
+    public static PaymentAck failed(String idempotencyKey, String error) {
+        return new PaymentAck(null, idempotencyKey, "FAILED", null, null, null, error);
+    }
+
+    public PaymentAck asDuplicate() {
+        return new PaymentAck(index, idempotencyKey, "DUPLICATE", partition, offset, traceId, null);
+    }
+
+    public PaymentAck withIndex(int index) {
+        return new PaymentAck(index, idempotencyKey, status, partition, offset, traceId, error);
+    }
+}
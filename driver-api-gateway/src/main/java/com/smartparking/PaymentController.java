@@ -1,17 +1,29 @@
 package com.smartparking;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.smartparking.model.PaymentEvent;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.smartparking.logging.HotPathLog;
+import com.smartparking.logging.HotPathLogs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/payments")
@@ -19,40 +31,99 @@ public class PaymentController {
 
     private static final Logger logger = LoggerFactory.getLogger(PaymentController.class);
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    // One line per payment, thinned out per spot
+    private final HotPathLog paymentLog;
+
+    private final PaymentPublisher paymentPublisher;
     private final ObjectMapper objectMapper;
+    private final ObjectReader paymentReader;
+
+    // How long a request waits for the broker to acknowledge its payments
+    @Value("${payments.ack-timeout-ms:10000}")
+    private long ackTimeoutMillis;
 
-    @Value("${kafka.topics.payment:payment-events}")
-    private String paymentTopic;
+    @Value("${payments.bulk.max-items:10000}")
+    private int maxBulkItems;
 
-    public PaymentController(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper) {
-        this.kafkaTemplate = kafkaTemplate;
+    public PaymentController(PaymentPublisher paymentPublisher, ObjectMapper objectMapper, HotPathLogs hotPathLogs) {
+        this.paymentPublisher = paymentPublisher;
+        this.paymentLog = hotPathLogs.create("payments", logger);
         this.objectMapper = objectMapper;
+        this.paymentReader = objectMapper.readerFor(PaymentPublisher.PaymentRequest.class);
     }
 
     @PostMapping("/pay")
     public ResponseEntity<String> processPayment(
             @RequestParam String plate,
             @RequestParam String parkingSpot,
-            @RequestParam BigDecimal amount) {
+            @RequestParam BigDecimal amount,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
 
-        logger.info("Received payment request for plate: {} at spot: {}", plate, parkingSpot);
+        PaymentAck ack = await(paymentPublisher.publish(new PaymentPublisher.PaymentRequest(idempotencyKey, plate, parkingSpot, amount)),
+                System.currentTimeMillis() + ackTimeoutMillis);
 
-        PaymentEvent event = new PaymentEvent(plate, parkingSpot, amount, System.currentTimeMillis());
-
-        try {
-            String jsonMessage = objectMapper.writeValueAsString(event);
-
-            kafkaTemplate.send(paymentTopic, event.getPlate(), jsonMessage);
+        return switch (ack.status()) {
+            case "ACCEPTED", "DUPLICATE" -> {
+                if (paymentLog.admit(parkingSpot)) {
+                    logger.info("Payment event acknowledged by Kafka: plate={} spot={} amount={} status={} trace={}",
+                            plate, parkingSpot, amount, ack.status(), ack.traceId());
+                }
+                yield ResponseEntity.ok("Payment processed for plate " + plate + " at spot " + parkingSpot);
+            }
+            case "REJECTED" -> ResponseEntity.badRequest().body(ack.error());
+            default -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("Error processing payment request");
+        };
+    }
 
-            logger.info("Payment event sent to Kafka: {}", jsonMessage);
+    /**
+     * Bulk ingestion for kiosks and aggregators: a JSON array or NDJSON stream of
+     * {@code {"idempotencyKey", "plate", "parkingSpot", "amount"}} objects.
+     *
+     * The body is parsed item by item and each payment is sent as soon as it is read, so the body is
+     * never held in memory and the producer batches the records. The response is one NDJSON ack per
+     * item, in request order, written once Kafka has acknowledged (or refused) each payment.
+     * A malformed item ends the request: it is acked as REJECTED and the rest of the body is ignored.
+     */
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> processBulk(InputStream body) throws IOException {
+        List<CompletableFuture<PaymentAck>> acks = new ArrayList<>();
+        try (MappingIterator<PaymentPublisher.PaymentRequest> items = paymentReader.readValues(body)) {
+            while (items.hasNextValue()) {
+                if (acks.size() == maxBulkItems) {
+                    acks.add(CompletableFuture.completedFuture(
+                            PaymentAck.rejected(null, "More than " + maxBulkItems + " payments in one request")));
+                    break;
+                }
+                acks.add(paymentPublisher.publish(items.nextValue()));
+            }
+        } catch (JsonProcessingException e) {
+            acks.add(CompletableFuture.completedFuture(PaymentAck.rejected(null, "Malformed payment: " + e.getOriginalMessage())));
+        }
+        logger.info("Received bulk payment request with {} items", acks.size());
 
-            return ResponseEntity.ok("Payment processed for plate " + plate + " at spot " + parkingSpot);
+        long deadline = System.currentTimeMillis() + ackTimeoutMillis;
+        StreamingResponseBody response = out -> {
+            for (int i = 0; i < acks.size(); i++) {
+                out.write(objectMapper.writeValueAsBytes(await(acks.get(i), deadline).withIndex(i)));
+                out.write('\n');
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(response);
+    }
 
-        } catch (JsonProcessingException e) {
-            logger.error("Error serializing payment event", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Error processing payment request");
+    private PaymentAck await(CompletableFuture<PaymentAck> ack, long deadline) {
+        try {
+            return ack.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return PaymentAck.failed(null, "Not acknowledged within " + ackTimeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            return PaymentAck.failed(null, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return PaymentAck.failed(null, "Interrupted");
         }
     }
-}
\ No newline at end of file
+}
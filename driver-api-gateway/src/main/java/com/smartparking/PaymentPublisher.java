@@ -0,0 +1,110 @@
+package com.smartparking;
+
+import com.smartparking.model.PaymentEvent;
+import com.smartparking.tracing.TraceContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.KafkaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Validates payments, deduplicates them by idempotency key and publishes them to Kafka.
+ *
+ * Every payment resolves to a {@link PaymentAck} once the broker acknowledged (or refused) the
+ * record; sends are asynchronous, so a bulk request keeps the producer's batches full.
+ */
+@Component
+public class PaymentPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentPublisher.class);
+
+    /**
+     * One payment as posted by a client; {@code idempotencyKey} is optional.
+     */
+    public record PaymentRequest(String idempotencyKey, String plate, String parkingSpot, BigDecimal amount) {
+    }
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final IdempotencyCache idempotencyCache;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> ackCounters = new ConcurrentHashMap<>();
+
+    @Value("${kafka.topics.payment:payment-events}")
+    private String paymentTopic;
+
+    public PaymentPublisher(KafkaTemplate<String, Object> kafkaTemplate, IdempotencyCache idempotencyCache,
+                            MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.idempotencyCache = idempotencyCache;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public CompletableFuture<PaymentAck> publish(PaymentRequest request) {
+        String key = request.idempotencyKey();
+        String error = validate(request);
+        CompletableFuture<PaymentAck> ack;
+        if (error != null) {
+            ack = CompletableFuture.completedFuture(PaymentAck.rejected(key, error));
+        } else if (key == null) {
+            ack = send(request);
+        } else {
+            IdempotencyCache.Result cached = idempotencyCache.computeIfAbsent(key, () -> send(request));
+            ack = cached.duplicate()
+                    ? cached.outcome().thenApply(original -> "ACCEPTED".equals(original.status()) ? original.asDuplicate() : original)
+                    : cached.outcome();
+        }
+        return ack.whenComplete((result, ex) -> count(result != null ? result.status() : "FAILED"));
+    }
+
+    private CompletableFuture<PaymentAck> send(PaymentRequest request) {
+        String key = request.idempotencyKey();
+
+        // The payment stage latency (request -> session PAID) is measured from here
+        TraceContext trace = TraceContext.start(System.currentTimeMillis());
+        PaymentEvent event = new PaymentEvent(request.plate(), request.parkingSpot(), request.amount(), trace.originTime());
+        try {
+            // Keyed by spot: lands on the same partition as the spot's sensor heartbeats
+            return kafkaTemplate.send(trace.toRecord(paymentTopic, event.getParkingSpot(), event)).handle((result, ex) -> {
+                if (ex != null) {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    logger.error("Payment not acknowledged: spot={} trace={}", request.parkingSpot(), trace.traceId(), cause);
+                    return PaymentAck.failed(key, cause.getMessage());
+                }
+                return PaymentAck.accepted(key, result.getRecordMetadata().partition(), result.getRecordMetadata().offset(), trace.traceId());
+            });
+        } catch (KafkaException e) {
+            logger.error("Error serializing payment event", e);
+            return CompletableFuture.completedFuture(PaymentAck.failed(key, e.getMessage()));
+        }
+    }
+
+    private static String validate(PaymentRequest request) {
+        if (request.plate() == null || request.plate().isBlank()) {
+            return "plate is required";
+        }
+        if (request.parkingSpot() == null || request.parkingSpot().isBlank()) {
+            return "parkingSpot is required";
+        }
+        if (request.amount() == null || request.amount().signum() < 0) {
+            return "amount must be a non-negative number";
+        }
+        return null;
+    }
+
+    private void count(String status) {
+        ackCounters.computeIfAbsent(status, s -> Counter.builder("payments.acks")
+                .tag("status", s)
+                .description("Payments by outcome")
+                .register(meterRegistry)).increment();
+    }
+}
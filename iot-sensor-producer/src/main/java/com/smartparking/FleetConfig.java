@@ -0,0 +1,48 @@
+package com.smartparking;
+
+/**
+ * Parameters of a fleet simulation run. Any field left out of the request body gets its default.
+ *
+ * @param sensors             number of simulated sensors
+ * @param spotPrefix          spot ids are {@code spotPrefix + (spotStart + i)}
+ * @param spotStart           first spot number
+ * @param heartbeatIntervalMs interval between heartbeats of an occupied spot, a multiple of {@link FleetSimulator#TICK_MS}
+ * @param meanVacantSeconds   mean time a spot stays free before the next car arrives
+ * @param meanStaySeconds     mean time a car stays parked
+ * @param distribution        EXPONENTIAL (Poisson arrivals), UNIFORM (0..2x mean) or FIXED
+ * @param initialOccupancy    fraction of spots occupied when the run starts
+ */
+public record FleetConfig(
+        Integer sensors,
+        String spotPrefix,
+        Integer spotStart,
+        Long heartbeatIntervalMs,
+        Double meanVacantSeconds,
+        Double meanStaySeconds,
+        Distribution distribution,
+        Double initialOccupancy
+) {
+
+    public enum Distribution { EXPONENTIAL, UNIFORM, FIXED }
+
+    public FleetConfig {
+        sensors = sensors != null ? sensors : 100_000;
+        spotPrefix = spotPrefix != null ? spotPrefix : "S-";
+        spotStart = spotStart != null ? spotStart : 0;
+        heartbeatIntervalMs = heartbeatIntervalMs != null ? heartbeatIntervalMs : 1000L;
+        meanVacantSeconds = meanVacantSeconds != null ? meanVacantSeconds : 120.0;
+        meanStaySeconds = meanStaySeconds != null ? meanStaySeconds : 600.0;
+        distribution = distribution != null ? distribution : Distribution.EXPONENTIAL;
+        initialOccupancy = initialOccupancy != null ? initialOccupancy : 0.5;
+
+        if (sensors <= 0 || heartbeatIntervalMs <= 0 || meanVacantSeconds <= 0 || meanStaySeconds <= 0) {
+            throw new IllegalArgumentException("sensors, heartbeatIntervalMs and the means must be positive");
+        }
+        if (heartbeatIntervalMs % FleetSimulator.TICK_MS != 0) {
+            throw new IllegalArgumentException("heartbeatIntervalMs must be a multiple of " + FleetSimulator.TICK_MS + " ms");
+        }
+        if (initialOccupancy < 0 || initialOccupancy > 1) {
+            throw new IllegalArgumentException("initialOccupancy must be between 0 and 1");
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.smartparking;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/simulation/fleet")
+public class FleetSimulationController {
+
+    private final FleetSimulator fleetSimulator;
+
+    public FleetSimulationController(FleetSimulator fleetSimulator) {
+        this.fleetSimulator = fleetSimulator;
+    }
+
+    // Body is optional: every missing field falls back to the FleetConfig defaults (100k sensors at 1 Hz)
+    @PostMapping("/start")
+    public ResponseEntity<Map<String, Object>> start(@RequestBody(required = false) FleetConfig config) {
+        try {
+            fleetSimulator.start(config != null ? config : new FleetConfig(null, null, null, null, null, null, null, null));
+            return ResponseEntity.ok(fleetSimulator.status());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/stop")
+    public Map<String, Object> stop() {
+        fleetSimulator.stop();
+        return fleetSimulator.status();
+    }
+
+    @GetMapping("/status")
+    public Map<String, Object> status() {
+        return fleetSimulator.status();
+    }
+}
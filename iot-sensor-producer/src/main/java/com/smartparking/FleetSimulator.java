@@ -0,0 +1,246 @@
+package com.smartparking;
+
+import com.smartparking.model.SensorEvent;
+import com.smartparking.tracing.TraceContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives a large fleet of simulated sensors from a single tick loop.
+ *
+ * Sensors are spread over the ticks of one heartbeat interval (sensor i belongs to slot
+ * {@code i % slots}), so each tick only visits its share of the fleet. Per-sensor state lives in
+ * primitive arrays: whether the spot is occupied and when it next changes. Occupied spots send a
+ * heartbeat on their slot; sends are asynchronous and their acknowledgements feed the ack latency timer.
+ * The heartbeat interval is a whole number of ticks ({@link #TICK_MS}). The status reports the
+ * counts of the running run, or of the last one once it is stopped.
+ */
+@Component
+public class FleetSimulator {
+
+    private static final Logger logger = LoggerFactory.getLogger(FleetSimulator.class);
+
+    public static final long TICK_MS = 50;
+    private static final String TOPIC = "parking-events";
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final Timer ackLatency;
+    private final Counter sendFailures;
+
+    // The running run, or the last one after it was stopped
+    private volatile Run latest;
+
+    public FleetSimulator(KafkaTemplate<String, Object> kafkaTemplate, MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.ackLatency = Timer.builder("simulator.send.ack.latency")
+                .description("Time from send to broker acknowledgement of a simulated heartbeat")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.sendFailures = Counter.builder("simulator.send.failures").register(meterRegistry);
+        meterRegistry.gauge("simulator.send.rate", this, FleetSimulator::achievedRate);
+        meterRegistry.gauge("simulator.sensors.occupied", this, s -> {
+            Run run = s.running();
+            return run == null ? 0 : run.occupiedCount;
+        });
+    }
+
+    public synchronized void start(FleetConfig config) {
+        if (running() != null) {
+            throw new IllegalStateException("A fleet simulation is already running");
+        }
+        Run run = new Run(config);
+        latest = run;
+        run.thread.start();
+        logger.info(">>> Fleet simulation started: {} sensors, heartbeat every {} ms", config.sensors(), config.heartbeatIntervalMs());
+    }
+
+    /**
+     * Stops the running run and waits for its tick loop to end, so a following {@link #start} never
+     * runs next to it. Sends still in flight are counted in the stopped run.
+     */
+    public synchronized void stop() {
+        Run run = running();
+        if (run == null) {
+            return;
+        }
+        run.running = false;
+        run.thread.interrupt();
+        try {
+            run.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info(">>> Fleet simulation stopped after {} heartbeats", run.sent.sum());
+    }
+
+    public Map<String, Object> status() {
+        Run run = latest;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", run != null && run.running);
+        if (run != null) {
+            status.put("config", run.config);
+            status.put("occupied", run.occupiedCount);
+            status.put("targetRatePerSecond", run.occupiedCount * 1000.0 / run.config.heartbeatIntervalMs());
+            status.put("tickOverruns", run.tickOverruns);
+        }
+        status.put("achievedRatePerSecond", achievedRate());
+        status.put("sent", run == null ? 0 : run.sent.sum());
+        status.put("acked", run == null ? 0 : run.acked.sum());
+        status.put("failed", run == null ? 0 : run.failed.sum());
+
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (ValueAtPercentile p : ackLatency.takeSnapshot().percentileValues()) {
+            percentiles.put("p" + Math.round(p.percentile() * 100), p.value(TimeUnit.MILLISECONDS));
+        }
+        status.put("ackLatencyMs", percentiles);
+        return status;
+    }
+
+    private double achievedRate() {
+        Run run = running();
+        return run == null ? 0 : run.lastSecondRate;
+    }
+
+    private Run running() {
+        Run run = latest;
+        return run != null && run.running ? run : null;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        stop();
+    }
+
+    private final class Run implements Runnable {
+
+        final FleetConfig config;
+        final String[] spotIds;
+        final boolean[] occupied;
+        final long[] nextChangeAt;
+        final int slots;
+        final Thread thread;
+
+        final LongAdder sent = new LongAdder();
+        final LongAdder acked = new LongAdder();
+        final LongAdder failed = new LongAdder();
+
+        volatile boolean running = true;
+        volatile int occupiedCount;
+        volatile double lastSecondRate;
+        volatile long tickOverruns;
+
+        Run(FleetConfig config) {
+            this.config = config;
+            int n = config.sensors();
+            this.spotIds = new String[n];
+            this.occupied = new boolean[n];
+            this.nextChangeAt = new long[n];
+            // A whole number of ticks (FleetConfig checks it)
+            this.slots = (int) (config.heartbeatIntervalMs() / TICK_MS);
+
+            long now = System.currentTimeMillis();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int occupiedNow = 0;
+            for (int i = 0; i < n; i++) {
+                spotIds[i] = config.spotPrefix() + (config.spotStart() + i);
+                occupied[i] = random.nextDouble() < config.initialOccupancy();
+                nextChangeAt[i] = now + sampleMillis(occupied[i] ? config.meanStaySeconds() : config.meanVacantSeconds());
+                if (occupied[i]) {
+                    occupiedNow++;
+                }
+            }
+            this.occupiedCount = occupiedNow;
+            this.thread = new Thread(this, "fleet-simulator");
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long tick = 0;
+            long nextTickAt = System.currentTimeMillis();
+            long windowStart = nextTickAt;
+            long windowSent = sent.sum();
+
+            while (running) {
+                long now = System.currentTimeMillis();
+                int slot = (int) (tick % slots);
+                int occupiedNow = occupiedCount;
+                for (int i = slot; i < spotIds.length; i += slots) {
+                    if (now >= nextChangeAt[i]) {
+                        occupied[i] = !occupied[i];
+                        occupiedNow += occupied[i] ? 1 : -1;
+                        nextChangeAt[i] = now + sampleMillis(occupied[i] ? config.meanStaySeconds() : config.meanVacantSeconds());
+                    }
+                    if (occupied[i]) {
+                        send(spotIds[i], now);
+                    }
+                }
+                occupiedCount = occupiedNow;
+                tick++;
+
+                if (now - windowStart >= 1000) {
+                    long total = sent.sum();
+                    lastSecondRate = (total - windowSent) * 1000.0 / (now - windowStart);
+                    windowStart = now;
+                    windowSent = total;
+                }
+
+                nextTickAt += TICK_MS;
+                long sleep = nextTickAt - System.currentTimeMillis();
+                if (sleep > 0) {
+                    try {
+                        Thread.sleep(sleep);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                } else {
+                    // Could not visit the slot in time; the heartbeat rate falls below target
+                    tickOverruns++;
+                }
+            }
+        }
+
+        private void send(String spotId, long now) {
+            long startNanos = System.nanoTime();
+            sent.increment();
+            try {
+                kafkaTemplate.send(TraceContext.start(now).toRecord(TOPIC, spotId, new SensorEvent(spotId, now))).whenComplete((result, ex) -> {
+                    if (ex == null) {
+                        acked.increment();
+                        ackLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                    } else {
+                        failed.increment();
+                        sendFailures.increment();
+                    }
+                });
+            } catch (Exception e) {
+                failed.increment();
+                sendFailures.increment();
+            }
+        }
+
+        private long sampleMillis(double meanSeconds) {
+            double meanMillis = meanSeconds * 1000;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return switch (config.distribution()) {
+                case EXPONENTIAL -> (long) (-Math.log(1 - random.nextDouble()) * meanMillis);
+                case UNIFORM -> (long) (random.nextDouble() * 2 * meanMillis);
+                case FIXED -> (long) meanMillis;
+            };
+        }
+    }
+}
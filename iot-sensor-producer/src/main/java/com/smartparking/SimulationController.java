@@ -1,8 +1,7 @@
 package com.smartparking;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smartparking.model.SensorEvent;
+import com.smartparking.tracing.TraceContext;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.web.bind.annotation.*;
 
@@ -10,12 +9,10 @@ import org.springframework.web.bind.annotation.*;
 @RequestMapping("/api/simulation")
 public class SimulationController {
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
 
-    public SimulationController(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper) {
+    public SimulationController(KafkaTemplate<String, Object> kafkaTemplate) {
         this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
     }
 
     // Adicionámos @RequestParam para ler o "id" e "time" do curl
@@ -40,10 +37,8 @@ public class SimulationController {
 
                     SensorEvent evento = new SensorEvent(sensorId, valorSimulado);
 
-                    String jsonMessage = objectMapper.writeValueAsString(evento);
-
-                    // Envia para o Kafka
-                    kafkaTemplate.send("parking-events", evento.getSensorId(), jsonMessage);
+                    // Envia para o Kafka (formato definido em smartparking.wire-format), com a origem do trace nos headers
+                    kafkaTemplate.send(TraceContext.start(evento.getTime()).toRecord("parking-events", evento.getSensorId(), evento));
 
                     // Espera 1 segundo (1000 ms) antes de enviar o próximo
                     Thread.sleep(1000);
@@ -51,7 +46,7 @@ public class SimulationController {
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
-                } catch (JsonProcessingException e) {
+                } catch (Exception e) {
                     e.printStackTrace();
                 }
             }
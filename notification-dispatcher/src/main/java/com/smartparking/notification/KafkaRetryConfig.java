@@ -0,0 +1,27 @@
+package com.smartparking.notification;
+
+import com.smartparking.kafka.RetryBackOff;
+import com.smartparking.kafka.RetryChain;
+import com.smartparking.kafka.RetryConfiguration;
+import com.smartparking.kafka.RetryRouter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Alerts the dispatcher fails to take are retried on the side (see {@link RetryRouter}), so
+ * {@code alert.incident} keeps flowing; the listener consumes the chain's redelivery topic next to it.
+ * The rest of the wiring is shared ({@link RetryConfiguration}).
+ */
+@Configuration
+@Import(RetryConfiguration.class)
+public class KafkaRetryConfig {
+
+    public static final String CHAIN = "notification-dispatcher";
+    public static final String REDELIVERY_TOPIC = CHAIN + ".redelivery";
+
+    @Bean
+    public RetryChain notificationRetryChain(RetryBackOff retryBackOff) {
+        return retryBackOff.chain(CHAIN, "notification-group");
+    }
+}
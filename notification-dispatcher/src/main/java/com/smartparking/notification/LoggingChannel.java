@@ -0,0 +1,74 @@
+package com.smartparking.notification;
+
+import com.smartparking.logging.HotPathLog;
+import com.smartparking.logging.HotPathLogs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Local stand-in for a push channel: logs each notification, thinned out per spot like every
+ * per-event line. An artificial per-batch latency ({@code notification.channels.log.latency-ms})
+ * makes it behave like a remote service in load tests.
+ */
+@Component
+@ConditionalOnProperty(name = "notification.channels.log.enabled", havingValue = "true", matchIfMissing = true)
+public class LoggingChannel implements NotificationChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingChannel.class);
+
+    private final HotPathLog pushLog;
+
+    private final int batchSize;
+    private final double ratePerSecond;
+    private final int maxConcurrentSends;
+    private final long latencyMillis;
+
+    public LoggingChannel(@Value("${notification.channels.log.batch-size:50}") int batchSize,
+                          @Value("${notification.channels.log.rate-per-second:1000}") double ratePerSecond,
+                          @Value("${notification.channels.log.max-concurrent-sends:16}") int maxConcurrentSends,
+                          @Value("${notification.channels.log.latency-ms:0}") long latencyMillis,
+                          HotPathLogs hotPathLogs) {
+        this.pushLog = hotPathLogs.create("push-notifications", logger);
+        this.batchSize = batchSize;
+        this.ratePerSecond = ratePerSecond;
+        this.maxConcurrentSends = maxConcurrentSends;
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public String name() {
+        return "log";
+    }
+
+    @Override
+    public void send(List<Notification> batch) throws InterruptedException {
+        if (latencyMillis > 0) {
+            Thread.sleep(latencyMillis);
+        }
+        for (Notification notification : batch) {
+            // Simulate sending Push Notification
+            pushLog.info(notification.alert().getSpot(), ">>> [PUSH NOTIFICATION] To Fiscal App: {} (Spot: {}, trace {})",
+                    notification.alert().getMessage(), notification.alert().getSpot(), notification.trace().traceId());
+        }
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public double maxRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    @Override
+    public int maxConcurrentSends() {
+        return maxConcurrentSends;
+    }
+}
@@ -0,0 +1,10 @@
+package com.smartparking.notification;
+
+import com.smartparking.model.AlertEvent;
+import com.smartparking.tracing.TraceContext;
+
+/**
+ * One alert on its way to a channel; {@code acceptedAt} (epoch millis) starts the delivery latency.
+ */
+public record Notification(AlertEvent alert, TraceContext trace, long acceptedAt) {
+}
@@ -0,0 +1,33 @@
+package com.smartparking.notification;
+
+import java.util.List;
+
+/**
+ * A destination for notifications (push service, SMS gateway, ...). Every channel bean receives
+ * every notification that passes suppression.
+ *
+ * {@link #send} may block on network I/O: each call runs on its own virtual thread. The limits are
+ * enforced by the {@link NotificationPipeline}, not by the channel.
+ */
+public interface NotificationChannel {
+
+    String name();
+
+    /**
+     * Delivers a batch of up to {@link #maxBatchSize()} notifications; throwing fails the whole batch.
+     */
+    void send(List<Notification> batch) throws Exception;
+
+    default int maxBatchSize() {
+        return 1;
+    }
+
+    // Notifications per second, across all concurrent sends
+    default double maxRatePerSecond() {
+        return Double.POSITIVE_INFINITY;
+    }
+
+    default int maxConcurrentSends() {
+        return 16;
+    }
+}
@@ -1,29 +1,28 @@
 package com.smartparking.notification;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smartparking.model.AlertEvent;
+import com.smartparking.tracing.TraceContext;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
 @Component
 public class NotificationDispatcher {
 
-    private final ObjectMapper objectMapper;
+    private final NotificationPipeline pipeline;
 
-    public NotificationDispatcher(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+    public NotificationDispatcher(NotificationPipeline pipeline) {
+        this.pipeline = pipeline;
     }
 
-    @KafkaListener(topics = "alert.incident", groupId = "notification-group")
-    public void handleAlert(String message) {
-        try {
-            AlertEvent event = objectMapper.readValue(message, AlertEvent.class);
-            
-            // Simulate sending Push Notification
-            System.out.println(">>> [PUSH NOTIFICATION] To Fiscal App: " + event.getMessage() + " (Spot: " + event.getSpot() + ")");
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    // Only hands the alert to the pipeline; channels deliver on their own threads.
+    // Alerts that fail here are retried through the dispatcher's retry chain (see KafkaRetryConfig)
+    @KafkaListener(id = NotificationPipeline.LISTENER_ID, idIsGroup = false,
+            topics = {"alert.incident", KafkaRetryConfig.REDELIVERY_TOPIC}, groupId = "notification-group",
+            concurrency = "${notification.consumer.concurrency:1}")
+    public void handleAlert(AlertEvent event,
+                            @Header(name = TraceContext.ORIGIN_TIME_HEADER, required = false) byte[] originTime,
+                            @Header(name = TraceContext.TRACE_ID_HEADER, required = false) byte[] traceId) {
+        pipeline.submit(event, TraceContext.from(originTime, traceId, event.getTimestamp()));
     }
 }
@@ -2,8 +2,10 @@ package com.smartparking.notification;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class NotificationDispatcherApp {
     public static void main(String[] args) {
         SpringApplication.run(NotificationDispatcherApp.class, args);
@@ -0,0 +1,252 @@
+package com.smartparking.notification;
+
+import com.smartparking.model.AlertEvent;
+import com.smartparking.tracing.TraceContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans alerts out to every {@link NotificationChannel} without blocking the Kafka listener.
+ *
+ * An alert that passes the {@link SuppressionWindow} is queued once per channel; if no channel's queue
+ * has room for it, its suppression slot is given back, so a repeat is not suppressed. Each channel has
+ * a drainer that takes whatever is queued (up to the channel's batch size), waits for its rate
+ * limit and hands the batch to a virtual thread, with at most {@code maxConcurrentSends} batches in
+ * flight. When the notifications queued or being sent exceed {@code notification.backpressure.pause-above},
+ * the {@code alert.incident} listener container is paused; it resumes below {@code resume-below}.
+ */
+@Component
+public class NotificationPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationPipeline.class);
+
+    public static final String LISTENER_ID = "alert-notifications";
+
+    private final SuppressionWindow suppressionWindow;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final int pauseAbove;
+    private final int resumeBelow;
+    private final List<Lane> lanes = new ArrayList<>();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean paused;
+    private volatile boolean running = true;
+
+    // Alert produced by the alert-generator -> notification delivered
+    private final Timer alertToNotified;
+    private final Counter suppressed;
+    private final Counter pauses;
+
+    public NotificationPipeline(List<NotificationChannel> channels,
+                                SuppressionWindow suppressionWindow,
+                                KafkaListenerEndpointRegistry listenerRegistry,
+                                MeterRegistry meterRegistry,
+                                @Value("${notification.queue-capacity:10000}") int queueCapacity,
+                                @Value("${notification.backpressure.pause-above:1000}") int pauseAbove,
+                                @Value("${notification.backpressure.resume-below:500}") int resumeBelow) {
+        this.suppressionWindow = suppressionWindow;
+        this.listenerRegistry = listenerRegistry;
+        this.pauseAbove = pauseAbove;
+        this.resumeBelow = resumeBelow;
+
+        this.alertToNotified = Timer.builder("pipeline.stage.latency")
+                .tag("stage", "alert_to_notified")
+                .description("Time from the origin of an event to the end of a pipeline stage")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.suppressed = Counter.builder("notification.suppressed")
+                .description("Alerts suppressed as repeats of the same (spot, type) within the window")
+                .register(meterRegistry);
+        this.pauses = Counter.builder("notification.listener.pauses")
+                .description("Times the alert.incident listener was paused for backpressure")
+                .register(meterRegistry);
+        Gauge.builder("notification.inflight", inFlight, AtomicInteger::get)
+                .description("Notifications queued or being sent, over all channels")
+                .register(meterRegistry);
+        Gauge.builder("notification.listener.paused", this, p -> p.paused ? 1 : 0)
+                .register(meterRegistry);
+
+        for (NotificationChannel channel : channels) {
+            lanes.add(new Lane(channel, queueCapacity, meterRegistry));
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        for (Lane lane : lanes) {
+            Thread.ofVirtual().name("notification-" + lane.channel.name()).start(lane);
+        }
+        logger.info(">>> Notification pipeline started with channels {}", lanes.stream().map(l -> l.channel.name()).toList());
+    }
+
+    /**
+     * Queues an alert for every channel; returns immediately.
+     */
+    public void submit(AlertEvent alert, TraceContext trace) {
+        long now = System.currentTimeMillis();
+        if (!suppressionWindow.tryAcquire(alert.getSpot(), alert.getType(), now)) {
+            suppressed.increment();
+            return;
+        }
+        Notification notification = new Notification(alert, trace, now);
+        boolean queued = false;
+        for (Lane lane : lanes) {
+            queued |= lane.offer(notification);
+        }
+        if (!queued) {
+            // Kept when some channel took it, as that channel would otherwise get the repeat twice
+            suppressionWindow.release(alert.getSpot(), alert.getType(), now);
+        }
+        applyBackpressure();
+    }
+
+    private void applyBackpressure() {
+        int current = inFlight.get();
+        if (paused ? current < resumeBelow : current > pauseAbove) {
+            togglePause();
+        }
+    }
+
+    private synchronized void togglePause() {
+        int current = inFlight.get();
+        boolean pause = current > pauseAbove || (paused && current >= resumeBelow);
+        if (pause == paused) {
+            return;
+        }
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(LISTENER_ID);
+        if (container == null) {
+            return;
+        }
+        if (pause) {
+            container.pause();
+            pauses.increment();
+            logger.warn(">>> {} notifications in flight, pausing the alert listener", current);
+        } else {
+            container.resume();
+            logger.info(">>> {} notifications in flight, resuming the alert listener", current);
+        }
+        paused = pause;
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        running = false;
+        senders.shutdown();
+        senders.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private final class Lane implements Runnable {
+
+        final NotificationChannel channel;
+        final BlockingQueue<Notification> queue;
+        final Semaphore sendSlots;
+        final RateLimiter rateLimiter;
+
+        final Timer deliveryLatency;
+        final Counter delivered;
+        final Counter droppedQueueFull;
+        final Counter droppedFailed;
+
+        Lane(NotificationChannel channel, int queueCapacity, MeterRegistry meterRegistry) {
+            this.channel = channel;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.sendSlots = new Semaphore(channel.maxConcurrentSends());
+            this.rateLimiter = new RateLimiter(channel.maxRatePerSecond());
+
+            this.deliveryLatency = Timer.builder("notification.delivery.latency")
+                    .tag("channel", channel.name())
+                    .description("Time from accepting an alert to its delivery by the channel")
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+            this.delivered = Counter.builder("notification.delivered")
+                    .tag("channel", channel.name())
+                    .register(meterRegistry);
+            this.droppedQueueFull = Counter.builder("notification.dropped")
+                    .tag("channel", channel.name())
+                    .tag("reason", "queue_full")
+                    .register(meterRegistry);
+            this.droppedFailed = Counter.builder("notification.dropped")
+                    .tag("channel", channel.name())
+                    .tag("reason", "send_failed")
+                    .register(meterRegistry);
+        }
+
+        boolean offer(Notification notification) {
+            // Counted before it is visible to the drainer, so the count never goes negative
+            inFlight.incrementAndGet();
+            if (!queue.offer(notification)) {
+                inFlight.decrementAndGet();
+                droppedQueueFull.increment();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            int maxBatch = Math.max(1, channel.maxBatchSize());
+            while (running) {
+                try {
+                    Notification first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    List<Notification> batch = new ArrayList<>(Math.min(maxBatch, queue.size() + 1));
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatch - 1);
+
+                    rateLimiter.acquire(batch.size());
+                    sendSlots.acquire();
+                    senders.execute(() -> deliver(batch));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    // Executor shut down while stopping
+                    logger.warn(">>> Notification channel {} stopped with {} queued", channel.name(), queue.size(), e);
+                    return;
+                }
+            }
+        }
+
+        private void deliver(List<Notification> batch) {
+            try {
+                channel.send(batch);
+                long now = System.currentTimeMillis();
+                for (Notification notification : batch) {
+                    deliveryLatency.record(now - notification.acceptedAt(), TimeUnit.MILLISECONDS);
+                    alertToNotified.record(notification.trace().elapsedMillis(now), TimeUnit.MILLISECONDS);
+                }
+                delivered.increment(batch.size());
+            } catch (Exception e) {
+                droppedFailed.increment(batch.size());
+                logger.error(">>> Channel {} failed to deliver {} notifications", channel.name(), batch.size(), e);
+            } finally {
+                sendSlots.release();
+                inFlight.addAndGet(-batch.size());
+                applyBackpressure();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.smartparking.notification;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket holding up to one second of permits. Used by a single thread (a channel's drainer),
+ * so it is not thread-safe. A request larger than the bucket runs into debt and waits it off.
+ */
+final class RateLimiter {
+
+    private final double permitsPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    RateLimiter(double permitsPerSecond) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = permitsPerSecond;
+        this.tokens = permitsPerSecond;
+    }
+
+    void acquire(int permits) throws InterruptedException {
+        if (Double.isInfinite(capacity)) {
+            return;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        tokens -= permits;
+        if (tokens < 0) {
+            TimeUnit.NANOSECONDS.sleep((long) (-tokens / permitsPerNano));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.smartparking.notification;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets through at most one alert per (spot, type) within {@code notification.suppression-window-ms};
+ * repeats inside the window (re-raised or redelivered alerts) are suppressed.
+ */
+@Component
+public class SuppressionWindow {
+
+    private record Key(String spot, String type) {
+    }
+
+    private final long windowMillis;
+    private final Map<Key, Long> lastAccepted = new ConcurrentHashMap<>();
+
+    public SuppressionWindow(@Value("${notification.suppression-window-ms:60000}") long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public boolean tryAcquire(String spot, String type, long now) {
+        boolean[] accepted = new boolean[1];
+        lastAccepted.compute(new Key(spot, type), (key, last) -> {
+            if (last != null && now - last < windowMillis) {
+                return last;
+            }
+            accepted[0] = true;
+            return now;
+        });
+        return accepted[0];
+    }
+
+    /**
+     * Gives back the slot taken by {@link #tryAcquire} at {@code acquiredAt}, e.g. for an alert that could
+     * not be queued, so the next alert of that (spot, type) goes through. A slot taken again since is kept.
+     */
+    public void release(String spot, String type, long acquiredAt) {
+        lastAccepted.remove(new Key(spot, type), acquiredAt);
+    }
+
+    public int size() {
+        return lastAccepted.size();
+    }
+
+    // Keys whose window closed carry no information any more
+    @Scheduled(fixedDelayString = "${notification.suppression-window-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        lastAccepted.values().removeIf(last -> now - last >= windowMillis);
+    }
+}
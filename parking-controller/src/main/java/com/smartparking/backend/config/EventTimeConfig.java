@@ -0,0 +1,30 @@
+package com.smartparking.backend.config;
+
+import com.smartparking.backend.time.EventTimeClock;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The clocks of the noise filter and of the controller. Both read parking-events, but in their own
+ * consumer group, at their own pace, so each has its own watermarks.
+ */
+@Configuration
+public class EventTimeConfig {
+
+    @Value("${parking.event-time.enabled:false}")
+    private boolean eventTime;
+    @Value("${parking.event-time.allowed-lateness-ms:5000}")
+    private long allowedLatenessMillis;
+
+    @Bean
+    public EventTimeClock filterClock(MeterRegistry meterRegistry) {
+        return new EventTimeClock("filter", "filter-group", "parking-events", eventTime, allowedLatenessMillis, meterRegistry);
+    }
+
+    @Bean
+    public EventTimeClock controllerClock(MeterRegistry meterRegistry) {
+        return new EventTimeClock("controller", "controller-group", "parking-events", eventTime, allowedLatenessMillis, meterRegistry);
+    }
+}
@@ -0,0 +1,122 @@
+package com.smartparking.backend.config;
+
+import com.smartparking.backend.store.PartitionedStateRebalanceListener;
+import com.smartparking.kafka.KeyOrderedDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+
+import java.util.Map;
+
+@Configuration
+public class KafkaConsumerConfig {
+
+    /**
+     * Same settings as the default container factory, but hands a whole poll to the listener.
+     * Used by the batch variants of the parking-events listeners ({@code parking.consumer.mode=batch}).
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> kafkaConsumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory);
+        factory.setBatchListener(true);
+        return factory;
+    }
+
+    /**
+     * Factory of the controller's partitioned listener: per-partition state follows the assignment
+     * through {@link PartitionedStateRebalanceListener}. The listeners set their concurrency
+     * ({@code parking.consumer.concurrency}).
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> partitionedKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> kafkaConsumerFactory,
+            PartitionedStateRebalanceListener rebalanceListener) {
+        return partitionedFactory(configurer, kafkaConsumerFactory, rebalanceListener, false);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> partitionedBatchKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> kafkaConsumerFactory,
+            PartitionedStateRebalanceListener rebalanceListener) {
+        return partitionedFactory(configurer, kafkaConsumerFactory, rebalanceListener, true);
+    }
+
+    private static ConcurrentKafkaListenerContainerFactory<Object, Object> partitionedFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> kafkaConsumerFactory,
+            PartitionedStateRebalanceListener rebalanceListener,
+            boolean batch) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory);
+        factory.setBatchListener(batch);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+        return factory;
+    }
+
+    /**
+     * Spreads the records of a poll over virtual threads, per spot, in {@code parking.consumer.mode=virtual-threads}.
+     * Shared by the {@code parking.consumer.concurrency} consumers of the listener; each of them has at most
+     * {@code max-concurrent-keys} spots in flight, so a replica has up to concurrency x max-concurrent-keys.
+     * More than the database pool only makes them queue for a connection.
+     */
+    @Bean(destroyMethod = "close")
+    public KeyOrderedDispatcher controllerDispatcher(MeterRegistry meterRegistry,
+                                                     @Value("${parking.consumer.max-concurrent-keys:32}") int maxConcurrentKeys) {
+        return new KeyOrderedDispatcher("controller", maxConcurrentKeys, meterRegistry);
+    }
+
+    /**
+     * Plain String consumers for replaying the pending-session changelog. Partitions are assigned
+     * manually, so there is no group and nothing is committed.
+     */
+    @Bean
+    public ConsumerFactory<String, String> changelogConsumerFactory(KafkaProperties kafkaProperties) {
+        Map<String, Object> props = kafkaProperties.buildConsumerProperties(null);
+        props.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 5000);
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new StringDeserializer());
+    }
+
+    /**
+     * Consumers for replaying the held-payment changelog: decoded like the listeners' (the records are
+     * payments), assigned manually with nothing committed.
+     */
+    @Bean
+    public ConsumerFactory<String, Object> joinChangelogConsumerFactory(KafkaProperties kafkaProperties) {
+        Map<String, Object> props = kafkaProperties.buildConsumerProperties(null);
+        props.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 5000);
+        return new DefaultKafkaConsumerFactory<>(props);
+    }
+
+    /**
+     * Consumers of the catch-up replay ({@code POST /api/replay}): decoded like the listeners', assigned
+     * manually with nothing committed, and fetching in large polls since the replay only waits on Kafka.
+     */
+    @Bean
+    public ConsumerFactory<String, Object> replayConsumerFactory(KafkaProperties kafkaProperties,
+                                                                 @Value("${parking.replay.max-poll-records:5000}") int maxPollRecords) {
+        Map<String, Object> props = kafkaProperties.buildConsumerProperties(null);
+        props.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 1024 * 1024);
+        props.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, 8 * 1024 * 1024);
+        return new DefaultKafkaConsumerFactory<>(props);
+    }
+}
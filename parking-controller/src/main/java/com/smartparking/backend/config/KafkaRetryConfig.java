@@ -0,0 +1,34 @@
+package com.smartparking.backend.config;
+
+import com.smartparking.kafka.RetryBackOff;
+import com.smartparking.kafka.RetryChain;
+import com.smartparking.kafka.RetryConfiguration;
+import com.smartparking.kafka.RetryRouter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Failed records of the controller and filter listeners are retried on the side (see {@link RetryRouter}),
+ * so their input partitions keep flowing. Each listener has its own {@link RetryChain} and consumes the
+ * chain's redelivery topic next to its input topics; the rest of the wiring is shared ({@link RetryConfiguration}).
+ */
+@Configuration
+@Import(RetryConfiguration.class)
+public class KafkaRetryConfig {
+
+    public static final String CONTROLLER_CHAIN = "parking-controller";
+    public static final String CONTROLLER_REDELIVERY_TOPIC = CONTROLLER_CHAIN + ".redelivery";
+    public static final String FILTER_CHAIN = "parking-filter";
+    public static final String FILTER_REDELIVERY_TOPIC = FILTER_CHAIN + ".redelivery";
+
+    @Bean
+    public RetryChain controllerRetryChain(RetryBackOff retryBackOff) {
+        return retryBackOff.chain(CONTROLLER_CHAIN, "controller-group");
+    }
+
+    @Bean
+    public RetryChain filterRetryChain(RetryBackOff retryBackOff) {
+        return retryBackOff.chain(FILTER_CHAIN, "filter-group");
+    }
+}
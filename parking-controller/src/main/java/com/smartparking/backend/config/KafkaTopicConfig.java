@@ -0,0 +1,51 @@
+package com.smartparking.backend.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaAdmin;
+
+/**
+ * Topics consumed by the controller. They are keyed by sensorId/spot and must all have the same
+ * partition count, so partition N of each of them carries the same spots. The retry chains' topics are
+ * declared with the same count by {@link com.smartparking.kafka.RetryConfiguration}.
+ */
+@Configuration
+public class KafkaTopicConfig {
+
+    @Value("${smartparking.topics.partitions:12}")
+    private int partitions;
+
+    @Bean
+    public KafkaAdmin.NewTopics controllerTopics(
+            @Value("${parking.pending.changelog-topic:parking-controller.pending-changelog}") String changelogTopic,
+            @Value("${parking.join.changelog-topic:parking-controller.join-changelog}") String joinChangelogTopic) {
+        return new KafkaAdmin.NewTopics(
+                topic("parking-events"),
+                topic("payment-events"),
+                topic("alert.incident"),
+                topic("session.updates"),
+                // Latest first-seen time per pending sensor; rebuilt on partition assignment
+                TopicBuilder.name(changelogTopic)
+                        .partitions(partitions)
+                        .replicas(1)
+                        .config(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT)
+                        .build(),
+                // Latest held payment per spot; the last TTL of it is rebuilt on partition assignment
+                TopicBuilder.name(joinChangelogTopic)
+                        .partitions(partitions)
+                        .replicas(1)
+                        .config(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT)
+                        .build());
+    }
+
+    private NewTopic topic(String name) {
+        return TopicBuilder.name(name)
+                .partitions(partitions)
+                .replicas(1)
+                .build();
+    }
+}
@@ -1,41 +1,85 @@
 package com.smartparking.backend.controller;
 
+import com.smartparking.backend.dashboard.SseBroadcastHub;
+import com.smartparking.backend.occupancy.OccupancyIndex;
+import com.smartparking.backend.rollup.SessionRollups;
+import com.smartparking.model.AlertEvent;
+import com.smartparking.model.SessionUpdateEvent;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/dashboard")
-public class DashboardController {
+public class DashboardController implements ConsumerSeekAware {
 
-    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final SseBroadcastHub broadcastHub;
+    private final OccupancyIndex occupancyIndex;
+    private final SessionRollups rollups;
+
+    public DashboardController(SseBroadcastHub broadcastHub, OccupancyIndex occupancyIndex, SessionRollups rollups) {
+        this.broadcastHub = broadcastHub;
+        this.occupancyIndex = occupancyIndex;
+        this.rollups = rollups;
+    }
 
     @GetMapping("/stream")
     public SseEmitter streamEvents() {
         SseEmitter emitter = new SseEmitter(Long.MAX_VALUE);
-        emitters.add(emitter);
+        broadcastHub.subscribe(emitter);
+        return emitter;
+    }
 
-        emitter.onCompletion(() -> emitters.remove(emitter));
-        emitter.onTimeout(() -> emitters.remove(emitter));
-        emitter.onError((e) -> emitters.remove(emitter));
+    // Every replica has its own group, so each dashboard (and occupancy index and rollups) sees the events of all partitions, not only its own.
+    // The group has no retry chain: a failure is logged by the container's error handler and the record skipped
+    @KafkaListener(topics = {"session.updates", "alert.incident"}, groupId = "dashboard-${random.uuid}",
+            properties = "auto.offset.reset=latest")
+    public void onEvent(Object event,
+                        @Header(name = ParkingController.STATE_HEADER, required = false) byte[] restated) {
+        if (event instanceof SessionUpdateEvent update) {
+            boolean spotChanged = occupancyIndex.apply(update);
+            // A restated session (e.g. after a replay) is no new arrival, departure or payment
+            if (restated == null) {
+                rollups.apply(update, spotChanged, occupancyIndex.occupiedCount());
+            }
+            sendEvent("sessionUpdate", update);
+        } else if (event instanceof AlertEvent alert) {
+            sendEvent("alert", alert);
+        }
+    }
 
-        return emitter;
+    /**
+     * The listener starts at the head of session.updates, whose position is fixed by now: the occupancy
+     * index is seeded again from the database, so no update published before the assignment is lost.
+     * Runs on the consumer thread, before the first record of the assignment is handled.
+     */
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        if (assignments.keySet().stream().anyMatch(partition -> partition.topic().equals("session.updates"))) {
+            occupancyIndex.seed();
+        }
     }
 
+    // Called from Kafka listener threads: only enqueues, delivery happens on the hub's executor
     public void sendEvent(String type, Object data) {
-        List<SseEmitter> deadEmitters = new CopyOnWriteArrayList<>();
-        emitters.forEach(emitter -> {
-            try {
-                emitter.send(SseEmitter.event().name(type).data(data));
-            } catch (IOException e) {
-                deadEmitters.add(emitter);
-            }
-        });
-        emitters.removeAll(deadEmitters);
+        broadcastHub.publish(type, coalescingKey(type, data), data);
+    }
+
+    // Events about the same spot supersede each other when a subscriber falls behind
+    private static String coalescingKey(String type, Object data) {
+        if (data instanceof SessionUpdateEvent update) {
+            return type + ":" + update.getParkingSpot();
+        }
+        if (data instanceof AlertEvent alert) {
+            return type + ":" + alert.getSpot();
+        }
+        return null;
     }
 }
@@ -0,0 +1,55 @@
+package com.smartparking.backend.controller;
+
+import com.smartparking.backend.occupancy.OccupancyIndex;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Free-spot queries, answered from the in-memory {@link OccupancyIndex} without touching the database.
+ */
+@RestController
+@RequestMapping("/api/occupancy")
+public class OccupancyController {
+
+    private static final int MAX_LIMIT = 10_000;
+
+    private final OccupancyIndex occupancyIndex;
+
+    public OccupancyController(OccupancyIndex occupancyIndex) {
+        this.occupancyIndex = occupancyIndex;
+    }
+
+    @GetMapping("/zones")
+    public List<OccupancyIndex.ZoneOccupancy> zones() {
+        return occupancyIndex.zones();
+    }
+
+    @GetMapping("/zones/{zone}")
+    public ResponseEntity<OccupancyIndex.ZoneOccupancy> zone(@PathVariable String zone) {
+        return ResponseEntity.of(occupancyIndex.zone(zone));
+    }
+
+    /**
+     * Free spots of a zone, {@code limit} at a time; pass the last spot of a page as {@code after}
+     * to get the next one.
+     */
+    @GetMapping("/zones/{zone}/free")
+    public ResponseEntity<?> freeSpots(@PathVariable String zone,
+                                       @RequestParam(required = false) String after,
+                                       @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_LIMIT);
+        }
+        try {
+            return ResponseEntity.of(occupancyIndex.freeSpots(zone, after, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
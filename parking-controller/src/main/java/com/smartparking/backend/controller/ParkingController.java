@@ -1,141 +1,486 @@
 package com.smartparking.backend.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartparking.backend.config.KafkaRetryConfig;
 import com.smartparking.backend.model.ParkingSession;
-import com.smartparking.backend.repository.ParkingSessionRepository;
+import com.smartparking.backend.store.ActiveSessionStore;
+import com.smartparking.backend.store.PaymentJoinBuffer;
+import com.smartparking.backend.store.PendingSessionStore;
+import com.smartparking.backend.time.EventTimeClock;
+import com.smartparking.kafka.KeyOrderedDispatcher;
+import com.smartparking.logging.HotPathLog;
+import com.smartparking.logging.HotPathLogs;
 import com.smartparking.model.AlertEvent;
 import com.smartparking.model.PaymentEvent;
 import com.smartparking.model.SensorEvent;
 import com.smartparking.model.SessionUpdateEvent;
+import com.smartparking.tracing.TraceContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.AbstractConsumerSeekAware;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Component
-public class ParkingController {
+public class ParkingController extends AbstractConsumerSeekAware {
 
     private static final Logger logger = LoggerFactory.getLogger(ParkingController.class);
 
-    private final ParkingSessionRepository sessionRepository;
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
-    private final DashboardController dashboardController;
+    /**
+     * Set on session.updates records that restate a session rather than report a transition (see
+     * {@link #publishSessionState}); views apply them, counters of transitions skip them.
+     */
+    public static final String STATE_HEADER = "sp-session-state";
 
-    public ParkingController(ParkingSessionRepository sessionRepository, 
-                             KafkaTemplate<String, String> kafkaTemplate, 
-                             ObjectMapper objectMapper,
-                             DashboardController dashboardController) {
-        this.sessionRepository = sessionRepository;
+    private final ActiveSessionStore sessionStore;
+    // Sensors inside the 30 s confirmation window, per input partition
+    private final PendingSessionStore pendingSessions;
+    // Payments that arrived before their session was created
+    private final PaymentJoinBuffer earlyPayments;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    // Runs the records of a poll concurrently per spot (parking.consumer.mode=virtual-threads)
+    private final KeyOrderedDispatcher dispatcher;
+    // Time of the confirmation and inactivity windows: wall clock, or heartbeat times and watermarks
+    private final EventTimeClock clock;
+    // Per-event lines (heartbeats, sessions, payments), thinned out per spot and kind of line
+    private final HotPathLog eventLog;
+
+    // End-to-end latency from the origin of the triggering event (sp-origin-ts header)
+    private final Timer heartbeatToSessionCreated;
+    private final Timer paymentToSessionPaid;
+
+    public ParkingController(ActiveSessionStore sessionStore,
+                             PendingSessionStore pendingSessions,
+                             PaymentJoinBuffer earlyPayments,
+                             KafkaTemplate<String, Object> kafkaTemplate,
+                             KeyOrderedDispatcher dispatcher,
+                             @Qualifier("controllerClock") EventTimeClock clock,
+                             HotPathLogs hotPathLogs,
+                             MeterRegistry meterRegistry) {
+        this.sessionStore = sessionStore;
+        this.pendingSessions = pendingSessions;
+        this.earlyPayments = earlyPayments;
         this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
-        this.dashboardController = dashboardController;
+        this.dispatcher = dispatcher;
+        this.clock = clock;
+        this.eventLog = hotPathLogs.create("controller", logger);
+        this.heartbeatToSessionCreated = stageTimer(meterRegistry, "heartbeat_to_session_created");
+        this.paymentToSessionPaid = stageTimer(meterRegistry, "payment_to_session_paid");
     }
 
-    private final java.util.Map<String, LocalDateTime> pendingSessions = new java.util.concurrent.ConcurrentHashMap<>();
+    private static Timer stageTimer(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder("pipeline.stage.latency")
+                .tag("stage", stage)
+                .description("Time from the origin of an event to the end of a pipeline stage")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
-    @KafkaListener(topics = "parking-events", groupId = "controller-sensor-group")
-    public void handleSensorEvent(String message) {
-        try {
-            SensorEvent event = objectMapper.readValue(message, SensorEvent.class);
-            String sensorId = event.getSensorId();
-
-            // Check if there is already an active session
-            Optional<ParkingSession> existingSession = sessionRepository.findBySensorIdAndEndTimeIsNull(sensorId);
-
-            if (existingSession.isEmpty()) {
-                // Logic for 30-second delay
-                LocalDateTime now = LocalDateTime.now();
-                
-                if (!pendingSessions.containsKey(sensorId)) {
-                    pendingSessions.put(sensorId, now);
-                    logger.info(">>> Sensor {} active. Waiting 30s to confirm session...", sensorId);
-                } else {
-                    // We have seen it before
-                    LocalDateTime firstSeen = pendingSessions.get(sensorId);
-                    if (now.isAfter(firstSeen.plusSeconds(30))) {
-                        // It has been more than 30 seconds
-                        
-                        // Create new session
-                        ParkingSession session = new ParkingSession();
-                        session.setSensorId(sensorId);
-                        session.setStartTime(firstSeen); // Use the time we first saw it
-                        session.setLastEventTime(now); // Set initial last event time
-                        session.setStatus("UNPAID");
-                        
-                        sessionRepository.save(session);
-                        
-                        logger.info(">>> Session Created: {} for sensor {}", session.getId(), sensorId);
-                        
-                        // Publish update
-                        publishSessionUpdate(session);
-                        
-                        // Remove from pending so we don't create it again
-                        pendingSessions.remove(sensorId);
-                    }
+    /**
+     * Heartbeats, payments and alerts of a spot are all keyed by the spot and the three topics have the
+     * same partition count, so with range assignment one consumer owns partition N of all of them and
+     * sees everything about its spots. The per-partition state follows the assignment
+     * (see {@code PartitionedStateRebalanceListener}), which lets the controller run as several replicas.
+     * Failed records are retried through the controller's retry chain (see {@link KafkaRetryConfig}) and come
+     * back on its redelivery topic, whose partition N also belongs to this consumer.
+     *
+     * One of three listeners, picked with {@code parking.consumer.mode} (record, batch or virtual-threads).
+     * Each replica runs {@code parking.consumer.concurrency} consumers; replicas x concurrency beyond
+     * the partition count leaves consumers idle.
+     */
+    @KafkaListener(topics = {"parking-events", "payment-events", "alert.incident", KafkaRetryConfig.CONTROLLER_REDELIVERY_TOPIC},
+            groupId = "controller-group",
+            containerFactory = "partitionedKafkaListenerContainerFactory",
+            concurrency = "${parking.consumer.concurrency:1}",
+            properties = "partition.assignment.strategy=org.apache.kafka.clients.consumer.RangeAssignor",
+            autoStartup = "#{'${parking.consumer.mode:record}' == 'record'}")
+    public void handleEvent(Object event,
+                            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                            @Header(name = TraceContext.ORIGIN_TIME_HEADER, required = false) byte[] originTime,
+                            @Header(name = TraceContext.TRACE_ID_HEADER, required = false) byte[] traceId) {
+        if (event instanceof SensorEvent sensorEvent) {
+            handleSensorEvent(sensorEvent, topic, partition, originTime, traceId);
+        } else if (event instanceof PaymentEvent paymentEvent) {
+            handlePaymentEvent(paymentEvent, partition, originTime, traceId);
+        } else if (event instanceof AlertEvent alertEvent) {
+            handleAlertEvent(alertEvent, originTime, traceId);
+        }
+    }
+
+    /**
+     * Batch variant of {@link #handleEvent} ({@code parking.consumer.mode=batch}).
+     * The heartbeats of a poll go through {@link #handleSensorEvents}; payments and alerts follow in poll order.
+     * A failing record is retried on its own and the records after it are redelivered, so everything before
+     * it is handled first. An undecodable record (null) fails like one.
+     */
+    @KafkaListener(topics = {"parking-events", "payment-events", "alert.incident", KafkaRetryConfig.CONTROLLER_REDELIVERY_TOPIC},
+            groupId = "controller-group",
+            containerFactory = "partitionedBatchKafkaListenerContainerFactory",
+            concurrency = "${parking.consumer.concurrency:1}",
+            properties = "partition.assignment.strategy=org.apache.kafka.clients.consumer.RangeAssignor",
+            autoStartup = "#{'${parking.consumer.mode:record}' == 'batch'}")
+    public void handleEvents(List<Object> events,
+                             @Header(KafkaHeaders.RECEIVED_TOPIC) List<String> topics,
+                             @Header(KafkaHeaders.RECEIVED_PARTITION) List<Integer> partitions,
+                             @Header(name = KafkaHeaders.BATCH_CONVERTED_HEADERS, required = false) List<Map<String, Object>> headers) {
+        int undecodable = events.indexOf(null);
+        int end = undecodable < 0 ? events.size() : undecodable;
+
+        List<SensorEvent> sensorEvents = new ArrayList<>();
+        List<String> sensorTopics = new ArrayList<>();
+        List<Integer> sensorPartitions = new ArrayList<>();
+        List<Map<String, Object>> sensorHeaders = headers != null ? new ArrayList<>() : null;
+        // Position in the poll of each heartbeat
+        List<Integer> sensorPositions = new ArrayList<>();
+        for (int i = 0; i < end; i++) {
+            if (events.get(i) instanceof SensorEvent sensorEvent) {
+                sensorEvents.add(sensorEvent);
+                sensorTopics.add(topics.get(i));
+                sensorPartitions.add(partitions.get(i));
+                sensorPositions.add(i);
+                if (headers != null) {
+                    sensorHeaders.add(headers.get(i));
                 }
-            } else {
-                // Session already exists, update lastEventTime
-                ParkingSession session = existingSession.get();
-                session.setLastEventTime(LocalDateTime.now());
-                sessionRepository.save(session);
-                
-                // Ensure it's not in pending
-                pendingSessions.remove(sensorId);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+        }
+        if (!sensorEvents.isEmpty()) {
+            try {
+                handleSensorEvents(sensorEvents, sensorTopics, sensorPartitions, sensorHeaders);
+            } catch (BatchListenerFailedException e) {
+                // The payments and alerts before the failed heartbeat are committed with it
+                int failed = sensorPositions.get(e.getIndex());
+                handlePaymentsAndAlerts(events, partitions, headers, failed);
+                throw new BatchListenerFailedException(e.getMessage(), e.getCause(), failed);
+            }
+        }
+        handlePaymentsAndAlerts(events, partitions, headers, end);
+
+        if (undecodable >= 0) {
+            // Failed to deserialize; the error handler dead-letters the original bytes
+            throw new BatchListenerFailedException("Failed to handle record " + undecodable,
+                    new IllegalArgumentException("Undecodable record on partition " + partitions.get(undecodable)), undecodable);
+        }
+    }
+
+    // The payments and alerts among the first {@code end} records of a poll
+    private void handlePaymentsAndAlerts(List<Object> events, List<Integer> partitions, List<Map<String, Object>> headers, int end) {
+        for (int i = 0; i < end; i++) {
+            Object event = events.get(i);
+            try {
+                if (event instanceof PaymentEvent paymentEvent) {
+                    handlePaymentEvent(paymentEvent, partitions.get(i), header(headers, i, TraceContext.ORIGIN_TIME_HEADER), header(headers, i, TraceContext.TRACE_ID_HEADER));
+                } else if (event instanceof AlertEvent alertEvent) {
+                    handleAlertEvent(alertEvent, header(headers, i, TraceContext.ORIGIN_TIME_HEADER), header(headers, i, TraceContext.TRACE_ID_HEADER));
+                }
+            } catch (RuntimeException e) {
+                throw new BatchListenerFailedException("Failed to handle " + event, e, i);
+            }
+        }
+    }
+
+    /**
+     * Variant of {@link #handleEvent} for blocking database work ({@code parking.consumer.mode=virtual-threads}):
+     * the records of a poll are handled like in record mode, but the spots of the poll run concurrently on
+     * virtual threads, each spot's records in order (see {@link KeyOrderedDispatcher}). The poll is committed
+     * once all of them are done.
+     */
+    @KafkaListener(topics = {"parking-events", "payment-events", "alert.incident", KafkaRetryConfig.CONTROLLER_REDELIVERY_TOPIC},
+            groupId = "controller-group",
+            containerFactory = "partitionedBatchKafkaListenerContainerFactory",
+            concurrency = "${parking.consumer.concurrency:1}",
+            properties = "partition.assignment.strategy=org.apache.kafka.clients.consumer.RangeAssignor",
+            autoStartup = "#{'${parking.consumer.mode:record}' == 'virtual-threads'}")
+    public void handleRecords(List<ConsumerRecord<String, Object>> records) {
+        dispatcher.dispatch(records, this::handleRecord);
+    }
+
+    private void handleRecord(ConsumerRecord<String, Object> record) {
+        if (record.value() == null) {
+            // Failed to deserialize; the error handler dead-letters the original bytes
+            throw new IllegalArgumentException("Undecodable record " + record.topic() + "-" + record.partition() + "@" + record.offset());
+        }
+        handleEvent(record.value(), record.topic(), record.partition(), header(record, TraceContext.ORIGIN_TIME_HEADER),
+                header(record, TraceContext.TRACE_ID_HEADER));
+    }
+
+    private static byte[] header(ConsumerRecord<String, Object> record, String name) {
+        org.apache.kafka.common.header.Header header = record.headers().lastHeader(name);
+        return header == null ? null : header.value();
+    }
+
+    private static byte[] header(List<Map<String, Object>> headers, int index, String name) {
+        return headers != null && headers.get(index).get(name) instanceof byte[] value ? value : null;
+    }
+
+    public void handleSensorEvent(SensorEvent event, String topic, int partition, byte[] originTime, byte[] traceId) {
+        String sensorId = event.getSensorId();
+        long time = clock.observe(topic, partition, event.getTime());
+        if (time == EventTimeClock.UNKNOWN) {
+            return; // Late: its windows are closed
+        }
+        LocalDateTime seenAt = EventTimeClock.toLocalDateTime(time);
+
+        // Check if there is already an active session (memory first, DB only for a sensor not yet pending)
+        Optional<ParkingSession> existingSession = pendingSessions.contains(partition, sensorId)
+                ? sessionStore.find(sensorId)
+                : sessionStore.findOrLoad(sensorId);
+
+        ParkingSession newSession = processHeartbeat(sensorId, partition, existingSession, seenAt, seenAt);
+        if (newSession != null) {
+            onSessionCreated(sessionStore.create(newSession), partition, TraceContext.from(originTime, traceId, event.getTime()));
         }
     }
 
-    @KafkaListener(topics = "payment-events", groupId = "controller-payment-group")
-    public void handlePaymentEvent(String message) {
+    /**
+     * Heartbeats of a poll are coalesced per sensor (latest wins, keeping the time of the earliest one),
+     * sessions of sensors not yet seen are looked up with a single IN query and new sessions are persisted
+     * with one saveAll.
+     *
+     * Sensors are handled in the order of their first heartbeat. A failure is reported as a
+     * {@link BatchListenerFailedException} at the position of the first heartbeat of the sensor it
+     * belongs to (of the first sensor, for the shared lookup and save), once the sensors before it are
+     * done; an undecodable heartbeat (null) fails at its own position.
+     */
+    public void handleSensorEvents(List<SensorEvent> events, List<String> topics, List<Integer> partitions,
+                                   List<Map<String, Object>> headers) {
+        int undecodable = events.indexOf(null);
+        if (undecodable >= 0) {
+            handleSensorEvents(events.subList(0, undecodable), topics.subList(0, undecodable), partitions.subList(0, undecodable),
+                    headers != null ? headers.subList(0, undecodable) : null);
+            // Failed to deserialize; the error handler dead-letters the original bytes
+            throw new BatchListenerFailedException("Failed to handle heartbeat " + undecodable,
+                    new IllegalArgumentException("Undecodable record on partition " + partitions.get(undecodable)), undecodable);
+        }
+
+        // Position in the poll of the first and of the latest heartbeat per sensor, and the first and last time it was seen
+        Map<String, Integer> first = new LinkedHashMap<>();
+        Map<String, Integer> latest = new HashMap<>();
+        Map<String, long[]> seen = new HashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            SensorEvent event = events.get(i);
+            long time;
+            try {
+                time = clock.observe(topics.get(i), partitions.get(i), event.getTime());
+            } catch (RuntimeException e) {
+                throw new BatchListenerFailedException("Failed to handle " + event, e, i);
+            }
+            if (time != EventTimeClock.UNKNOWN) {
+                first.putIfAbsent(event.getSensorId(), i);
+                latest.put(event.getSensorId(), i);
+                long[] range = seen.computeIfAbsent(event.getSensorId(), id -> new long[]{time, time});
+                range[0] = Math.min(range[0], time);
+                range[1] = Math.max(range[1], time);
+            }
+        }
+        if (first.isEmpty()) {
+            return;
+        }
+
+        List<String> unseen = first.keySet().stream()
+                .filter(sensorId -> !pendingSessions.contains(partitions.get(latest.get(sensorId)), sensorId))
+                .toList();
+        Map<String, ParkingSession> existing;
         try {
-            PaymentEvent event = objectMapper.readValue(message, PaymentEvent.class);
-            String parkingSpot = event.getParkingSpot();
-
-            // Find active session for this spot
-            Optional<ParkingSession> existingSession = sessionRepository.findBySensorIdAndEndTimeIsNull(parkingSpot);
-
-            if (existingSession.isPresent()) {
-                ParkingSession session = existingSession.get();
-                session.setPlate(event.getPlate());
-                session.setAmount(event.getAmount());
-                session.setStatus("PAID");
-                
-                // Calculate paid time: 0.10 EUR = 1 minute (For Demo)
-                // minutes = (amount / 0.10) * 1
-                if (event.getAmount() != null) {
-                    long minutesPaid = event.getAmount().divide(new BigDecimal("0.10"), java.math.MathContext.DECIMAL32)
-                            .multiply(new BigDecimal("1")).longValue();
-                    
-                    // paidUntil = startTime + minutesPaid
-                    session.setPaidUntil(session.getStartTime().plusMinutes(minutesPaid));
-                    
-                    logger.info(">>> Payment: {} EUR -> {} minutes. Paid until: {}", event.getAmount(), minutesPaid, session.getPaidUntil());
+            existing = sessionStore.findOrLoadAll(unseen);
+        } catch (RuntimeException e) {
+            throw new BatchListenerFailedException("Failed to load the sessions of " + unseen, e, first.values().iterator().next());
+        }
+
+        List<ParkingSession> newSessions = new ArrayList<>();
+        List<Integer> newSessionPartitions = new ArrayList<>();
+        List<TraceContext> newSessionTraces = new ArrayList<>();
+        List<Integer> newSessionPositions = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : first.entrySet()) {
+            String sensorId = entry.getKey();
+            int position = latest.get(sensorId);
+            try {
+                Optional<ParkingSession> existingSession = existing.containsKey(sensorId)
+                        ? Optional.of(existing.get(sensorId))
+                        : sessionStore.find(sensorId);
+                long[] range = seen.get(sensorId);
+                ParkingSession newSession = processHeartbeat(sensorId, partitions.get(position), existingSession,
+                        EventTimeClock.toLocalDateTime(range[0]), EventTimeClock.toLocalDateTime(range[1]));
+                if (newSession != null) {
+                    newSessions.add(newSession);
+                    newSessionPartitions.add(partitions.get(position));
+                    newSessionTraces.add(TraceContext.from(headers != null ? headers.get(position) : null,
+                            events.get(position).getTime()));
+                    newSessionPositions.add(entry.getValue());
                 }
-                
-                sessionRepository.save(session);
-                
-                System.out.println(">>> Payment Processed: Session " + session.getId() + " is now PAID.");
-                
-                publishSessionUpdate(session);
-            } else {
-                // Payment received but no car detected? Or maybe race condition.
-                // For now, we can log or create an alert.
-                logger.warn(">>> WARNING: Payment received for {} but no active session found.", parkingSpot);
+            } catch (RuntimeException e) {
+                createSessions(newSessions, newSessionPartitions, newSessionTraces, newSessionPositions);
+                throw new BatchListenerFailedException("Failed to handle the heartbeats of " + sensorId, e, entry.getValue());
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        createSessions(newSessions, newSessionPartitions, newSessionTraces, newSessionPositions);
+    }
+
+    // positions = the first heartbeat of each session's sensor, for the failure report
+    private void createSessions(List<ParkingSession> sessions, List<Integer> partitions, List<TraceContext> traces,
+                                List<Integer> positions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        List<ParkingSession> created;
+        try {
+            // saveAll keeps the order of its input
+            created = sessionStore.createAll(sessions);
+        } catch (RuntimeException e) {
+            throw new BatchListenerFailedException("Failed to create the sessions of " + sessions.size() + " sensors", e, positions.get(0));
+        }
+        for (int i = 0; i < created.size(); i++) {
+            try {
+                onSessionCreated(created.get(i), partitions.get(i), traces.get(i));
+            } catch (RuntimeException e) {
+                throw new BatchListenerFailedException("Failed to handle session " + created.get(i).getId(), e, positions.get(i));
+            }
+        }
+    }
+
+    /**
+     * Applies the heartbeats of a sensor seen from {@code from} to {@code now} (one heartbeat, or a
+     * coalesced batch) to its pending/active state.
+     * Returns a new, not yet persisted session once the 30 s confirmation window has passed.
+     */
+    private ParkingSession processHeartbeat(String sensorId, int partition, Optional<ParkingSession> existingSession,
+                                            LocalDateTime from, LocalDateTime now) {
+        if (existingSession.isPresent()) {
+            Optional<ParkingSession> terminated = sessionStore.terminateIfExpired(existingSession.get(), from);
+            if (terminated.isEmpty()) {
+                // Session already exists, update lastEventTime (flushed to the DB in batches)
+                sessionStore.touch(existingSession.get(), now);
+
+                // Ensure it's not in pending
+                pendingSessions.remove(partition, sensorId);
+                return null;
+            }
+            // Silent for longer than the timeout before this heartbeat: a new car
+            onSessionTerminated(terminated.get());
+        }
+
+        // Logic for 30-second delay
+        LocalDateTime firstSeen = pendingSessions.get(partition, sensorId);
+        if (firstSeen == null) {
+            firstSeen = from;
+            pendingSessions.put(partition, sensorId, from);
+            eventLog.info(sensorId, ">>> Sensor {} active. Waiting 30s to confirm session...", sensorId);
+        }
+
+        if (!now.isAfter(firstSeen.plusSeconds(30))) {
+            return null;
+        }
+
+        // It has been more than 30 seconds: create new session
+        ParkingSession session = new ParkingSession();
+        session.setSensorId(sensorId);
+        session.setStartTime(firstSeen); // Use the time we first saw it
+        session.setLastEventTime(now); // Set initial last event time
+        session.setStatus("UNPAID");
+        return session;
+    }
+
+    // trace = the heartbeat that confirmed the session
+    private void onSessionCreated(ParkingSession session, int partition, TraceContext trace) {
+        heartbeatToSessionCreated.record(trace.elapsedMillis(System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        eventLog.info(session.getSensorId(), ">>> Session Created: {} for sensor {} (trace {})", session.getId(), session.getSensorId(), trace.traceId());
+
+        // Publish update
+        publishSessionUpdate(session, trace);
+
+        // Remove from pending so we don't create it again
+        pendingSessions.remove(partition, session.getSensorId());
+
+        // The driver may have paid before the session was confirmed
+        PaymentJoinBuffer.HeldPayment early = earlyPayments.take(session.getSensorId(), System.currentTimeMillis());
+        if (early != null) {
+            eventLog.info(session.getSensorId(), ">>> Applying payment held for {} to new session {}", session.getSensorId(), session.getId());
+            try {
+                applyPayment(early.payment(), early.trace());
+            } catch (RuntimeException e) {
+                // The heartbeat is done; the payment is handed back to payment-events and retried on its own
+                logger.warn(">>> Held payment for {} failed ({}), republishing it", session.getSensorId(), e.getMessage());
+                kafkaTemplate.send(early.trace().toRecord("payment-events", session.getSensorId(), early.payment()));
+            }
+        }
+    }
+
+    /**
+     * The session store holds every open session of the owned partitions, so a spot without one in
+     * memory has no session yet: the payment is held until the session is created, with no database
+     * round trip.
+     */
+    public void handlePaymentEvent(PaymentEvent event, int partition, byte[] originTime, byte[] traceId) {
+        TraceContext trace = TraceContext.from(originTime, traceId, event.getTimestamp());
+        if (sessionStore.find(event.getParkingSpot()).isEmpty()) {
+            eventLog.info(event.getParkingSpot(), ">>> Payment received for {} before its session. Holding it until the session is created...", event.getParkingSpot());
+            earlyPayments.hold(event, partition, trace, System.currentTimeMillis());
+            return;
+        }
+        applyPayment(event, trace);
+    }
+
+    // trace = the payment record, also when the payment was held
+    private void applyPayment(PaymentEvent event, TraceContext trace) {
+        String parkingSpot = event.getParkingSpot();
+
+        // Calculate paid time: 0.10 EUR = 1 minute (For Demo)
+        // minutes = (amount / 0.10) * 1
+        Long minutesPaid = null;
+        if (event.getAmount() != null) {
+            minutesPaid = event.getAmount().divide(new BigDecimal("0.10"), java.math.MathContext.DECIMAL32)
+                    .multiply(new BigDecimal("1")).longValue();
+        }
+
+        // Mark the active session of this spot PAID (paidUntil = startTime + minutesPaid) in one statement
+        Optional<ParkingSession> updatedSession = sessionStore.markPaid(parkingSpot, event.getPlate(), event.getAmount(), minutesPaid);
+
+        if (updatedSession.isPresent()) {
+            ParkingSession session = updatedSession.get();
+            paymentToSessionPaid.record(trace.elapsedMillis(System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            eventLog.info(parkingSpot, ">>> Payment Processed: Session {} is now PAID until {} ({} EUR)",
+                    session.getId(), session.getPaidUntil(), event.getAmount());
+            
+            publishSessionUpdate(session, trace);
+        } else {
+            // The session was closed in the database between the lookup and the update
+            logger.warn(">>> WARNING: Payment received for {} but no active session found.", parkingSpot);
+        }
+    }
+
+    /**
+     * Publishes the current state of a session that changed outside of the listeners (e.g. rebuilt by a replay),
+     * marked with {@link #STATE_HEADER}: its transitions already went out when they first happened.
+     */
+    public void publishSessionState(ParkingSession session) {
+        publishSessionUpdate(session, TraceContext.start(System.currentTimeMillis()), true);
     }
 
-    private void publishSessionUpdate(ParkingSession session) {
+    private void publishSessionUpdate(ParkingSession session, TraceContext trace) {
+        publishSessionUpdate(session, trace, false);
+    }
+
+    private void publishSessionUpdate(ParkingSession session, TraceContext trace, boolean state) {
         try {
             SessionUpdateEvent update = new SessionUpdateEvent(
                     session.getId().toString(),
@@ -143,67 +488,77 @@ public class ParkingController {
                     session.getPlate(),
                     session.getSensorId(),
                     session.getAmount(),
-                    System.currentTimeMillis()
+                    System.currentTimeMillis(),
+                    toEpochMillis(session.getStartTime()),
+                    toEpochMillis(session.getPaidUntil())
             );
             
-            String json = objectMapper.writeValueAsString(update);
-            kafkaTemplate.send("session.updates", session.getSensorId(), json);
-            
-            // Send to Dashboard
-            dashboardController.sendEvent("sessionUpdate", update);
+            // The dashboards of every replica pick it up from the topic
+            ProducerRecord<String, Object> record = trace.toRecord("session.updates", session.getSensorId(), update);
+            if (state) {
+                record.headers().add(STATE_HEADER, new byte[]{1});
+            }
+            kafkaTemplate.send(record);
             
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
     
-    @KafkaListener(topics = "alert.incident", groupId = "controller-alert-group")
-    public void handleAlertEvent(String message) {
-        try {
-            AlertEvent event = objectMapper.readValue(message, AlertEvent.class);
-            
-            // Handle Expiration Logic: Update Session to UNPAID
-            if ("PAID_EXPIRED".equals(event.getType())) {
-                Optional<ParkingSession> existingSession = sessionRepository.findBySensorIdAndEndTimeIsNull(event.getSpot());
-                if (existingSession.isPresent()) {
-                    ParkingSession session = existingSession.get();
-                    session.setStatus("UNPAID");
-                    sessionRepository.save(session);
-                    
-                    logger.info(">>> Session {} expired. Status reverted to UNPAID.", session.getId());
-                    publishSessionUpdate(session);
-                }
+    private static Long toEpochMillis(LocalDateTime time) {
+        return time == null ? null : time.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    public void handleAlertEvent(AlertEvent event, byte[] originTime, byte[] traceId) {
+        // Handle Expiration Logic: Update Session to UNPAID, unless it was paid again since the alert
+        if ("PAID_EXPIRED".equals(event.getType())) {
+            Optional<ParkingSession> updatedSession = sessionStore.markExpired(event.getSpot(), LocalDateTime.now());
+            if (updatedSession.isPresent()) {
+                ParkingSession session = updatedSession.get();
+                eventLog.info(event.getSpot(), ">>> Session {} expired. Status reverted to UNPAID.", session.getId());
+                publishSessionUpdate(session, TraceContext.from(originTime, traceId, event.getTimestamp()));
             }
-            
-            // Send to Dashboard
-            dashboardController.sendEvent("alert", event);
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
     
 
     
-    // Scheduled task to check for terminated sessions (no sensor data for > 30s)
-    @org.springframework.scheduling.annotation.Scheduled(fixedRate = 10000)
+    // Scheduled task to check for terminated sessions (no sensor data for > 30s).
+    // Runs at the termination precision; only sessions whose deadline elapsed are examined.
+    // In event time the clock is the controller's lowest watermark, and it stands still until every owned partition has one.
+    @org.springframework.scheduling.annotation.Scheduled(fixedRateString = "${parking.termination.precision-ms:1000}")
     public void checkSessionTermination() {
-        LocalDateTime now = LocalDateTime.now();
-        // Find active sessions
-        java.util.List<ParkingSession> activeSessions = sessionRepository.findAll().stream()
-                .filter(s -> s.getEndTime() == null)
-                .toList();
-        
-        for (ParkingSession session : activeSessions) {
-            // If lastEventTime is null (legacy) or older than 30 seconds
-            if (session.getLastEventTime() != null && session.getLastEventTime().isBefore(now.minusSeconds(30))) {
-                
-                session.setEndTime(now);
-                session.setStatus("TERMINATED"); // Or "FINISHED"
-                sessionRepository.save(session);
-                
-                logger.info(">>> Session Terminated (Timeout): {}", session.getId());
-                publishSessionUpdate(session);
+        long now = clock.now();
+        if (now == EventTimeClock.UNKNOWN) {
+            return;
+        }
+        for (ParkingSession session : sessionStore.terminateExpired(EventTimeClock.toLocalDateTime(now))) {
+            onSessionTerminated(session);
+        }
+    }
+
+    private void onSessionTerminated(ParkingSession session) {
+        eventLog.info(session.getSensorId(), ">>> Session Terminated (Timeout): {}", session.getId());
+        publishSessionUpdate(session, TraceContext.start(System.currentTimeMillis()));
+    }
+
+    /**
+     * Moves the listener's consumers to the given offsets, e.g. past the records a replay already applied.
+     * The seeks are performed by the consumer threads on their next poll, also while paused.
+     *
+     * @return false if one of the partitions is not assigned to any of them
+     */
+    public boolean seekTo(Map<TopicPartition, Long> offsets) {
+        boolean assigned = true;
+        for (Map.Entry<TopicPartition, Long> offset : offsets.entrySet()) {
+            TopicPartition partition = offset.getKey();
+            List<ConsumerSeekCallback> callbacks = getSeekCallbacksFor(partition);
+            if (callbacks == null || callbacks.isEmpty()) {
+                assigned = false;
+                continue;
             }
+            callbacks.forEach(callback -> callback.seek(partition.topic(), partition.partition(), offset.getValue()));
         }
+        return assigned;
     }
 }
@@ -0,0 +1,51 @@
+package com.smartparking.backend.controller;
+
+import com.smartparking.backend.replay.ReplayStatus;
+import com.smartparking.backend.replay.SessionReplayer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+
+/**
+ * Rebuilds this replica's sessions from the topic history with the {@link SessionReplayer}, e.g.
+ * {@code POST /api/replay?from=2026-10-18T06:00:00Z}, or {@code POST /api/replay?offset=0} for everything
+ * parking-events still retains. {@code GET /api/replay} reports the progress.
+ */
+@RestController
+@RequestMapping("/api/replay")
+public class ReplayController {
+
+    private final SessionReplayer replayer;
+
+    public ReplayController(SessionReplayer replayer) {
+        this.replayer = replayer;
+    }
+
+    /**
+     * Starts a replay from {@code from} or from the records at {@code offset} (exactly one of them);
+     * 409 with the running replay's status if there is one.
+     */
+    @PostMapping
+    public ResponseEntity<ReplayStatus> start(@RequestParam(required = false) Instant from,
+                                              @RequestParam(required = false) Long offset) {
+        if ((from == null) == (offset == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.accepted().body(from != null ? replayer.start(from) : replayer.startAtOffset(offset));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(replayer.status());
+        }
+    }
+
+    @GetMapping
+    public ReplayStatus status() {
+        return replayer.status();
+    }
+}
@@ -0,0 +1,40 @@
+package com.smartparking.backend.controller;
+
+import com.smartparking.backend.rollup.RollupSeries;
+import com.smartparking.backend.rollup.SessionRollups;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Range queries over the in-memory {@link SessionRollups}, e.g.
+ * {@code /api/rollups/1h?from=2026-10-01T00:00:00Z&to=2026-10-02T00:00:00Z}.
+ */
+@RestController
+@RequestMapping("/api/rollups")
+public class RollupController {
+
+    private final SessionRollups rollups;
+
+    public RollupController(SessionRollups rollups) {
+        this.rollups = rollups;
+    }
+
+    /**
+     * Buckets of {@code window} (1m, 1h or 1d) from {@code from} to {@code to}, oldest first.
+     * Without {@code from}, everything still held; without {@code to}, up to now.
+     */
+    @GetMapping("/{window}")
+    public ResponseEntity<List<RollupSeries.Bucket>> range(@PathVariable String window,
+                                                           @RequestParam(required = false) Instant from,
+                                                           @RequestParam(required = false) Instant to) {
+        long toMillis = to != null ? to.toEpochMilli() : System.currentTimeMillis();
+        return ResponseEntity.of(rollups.range(window, from != null ? from.toEpochMilli() : 0, toMillis));
+    }
+}
@@ -0,0 +1,257 @@
+package com.smartparking.backend.dashboard;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fan-out of dashboard events to SSE subscribers without blocking the publisher.
+ *
+ * An event is serialized once into an SSE frame and offered to a bounded queue per subscriber.
+ * Each queue is drained by a task on a virtual-thread executor, so a slow browser tab only fills
+ * its own queue; when it is full the configured {@link OverflowPolicy} applies. Frames leave through a
+ * {@link Sink}: an {@link SseEmitter} for a browser, or anything else that takes SSE frames.
+ */
+@Component
+public class SseBroadcastHub {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseBroadcastHub.class);
+
+    public enum OverflowPolicy {
+        /** Drop the oldest queued event to make room. */
+        DROP_OLDEST,
+        /** Replace the queued event with the same key (e.g. the same spot); drop the oldest if none. */
+        COALESCE,
+        /** Close the subscriber; the browser's EventSource reconnects and starts from live. */
+        DISCONNECT
+    }
+
+    /**
+     * Where the frames of one subscriber go, called from one sender thread at a time.
+     */
+    public interface Sink {
+
+        /**
+         * Writes one SSE frame; an exception closes the subscriber.
+         */
+        void send(Set<ResponseBodyEmitter.DataWithMediaType> frame) throws IOException;
+
+        /**
+         * Ends the stream of a subscriber closed by the {@link OverflowPolicy#DISCONNECT} policy.
+         */
+        void complete();
+    }
+
+    private record EmitterSink(SseEmitter emitter) implements Sink {
+
+        @Override
+        public void send(Set<ResponseBodyEmitter.DataWithMediaType> frame) throws IOException {
+            emitter.send(frame);
+        }
+
+        @Override
+        public void complete() {
+            emitter.complete();
+        }
+    }
+
+    private record Frame(String key, Set<ResponseBodyEmitter.DataWithMediaType> data) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger queuedFrames = new AtomicInteger();
+
+    private final Counter dropped;
+    private final Counter coalesced;
+    private final Counter disconnected;
+
+    public SseBroadcastHub(ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${dashboard.sse.queue-capacity:256}") int queueCapacity,
+                           @Value("${dashboard.sse.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy) {
+        this.objectMapper = objectMapper;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+
+        this.dropped = Counter.builder("dashboard.sse.dropped")
+                .tag("reason", "overflow")
+                .description("Dashboard events not delivered to a subscriber")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("dashboard.sse.dropped")
+                .tag("reason", "coalesced")
+                .description("Dashboard events not delivered to a subscriber")
+                .register(meterRegistry);
+        this.disconnected = Counter.builder("dashboard.sse.disconnected")
+                .description("Subscribers closed because their queue overflowed")
+                .register(meterRegistry);
+        Gauge.builder("dashboard.sse.queue.depth", queuedFrames, AtomicInteger::get)
+                .description("Events queued for all SSE subscribers")
+                .register(meterRegistry);
+        Gauge.builder("dashboard.sse.subscribers", subscribers, Set::size)
+                .register(meterRegistry);
+    }
+
+    public void subscribe(SseEmitter emitter) {
+        Runnable unsubscribe = subscribe(new EmitterSink(emitter));
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+    }
+
+    /**
+     * Adds a subscriber that receives every event published from now on.
+     *
+     * @return unsubscribes it; queued frames are dropped
+     */
+    public Runnable subscribe(Sink sink) {
+        Subscriber subscriber = new Subscriber(sink);
+        subscribers.add(subscriber);
+        return subscriber::close;
+    }
+
+    /**
+     * Serializes the event once and enqueues it for every subscriber. Never blocks on a client.
+     *
+     * @param key coalescing key of the event (e.g. type + spot), may be null
+     */
+    public void publish(String type, String key, Object data) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            logger.error(">>> Can't serialize dashboard event {}", type, e);
+            return;
+        }
+        Frame frame = new Frame(key, SseEmitter.event().name(type).data(json, MediaType.APPLICATION_JSON).build());
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(frame);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        senders.shutdownNow();
+    }
+
+    private final class Subscriber {
+
+        private final Sink sink;
+        private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+
+        Subscriber(Sink sink) {
+            this.sink = sink;
+        }
+
+        void offer(Frame frame) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (queue.size() >= queueCapacity && !makeRoom(frame)) {
+                    return;
+                }
+                queue.addLast(frame);
+                queuedFrames.incrementAndGet();
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            senders.execute(this::drain);
+        }
+
+        // Called with the lock held and a full queue; false = the frame must not be queued
+        private boolean makeRoom(Frame frame) {
+            switch (overflowPolicy) {
+                case COALESCE:
+                    if (frame.key() != null) {
+                        Iterator<Frame> it = queue.iterator();
+                        while (it.hasNext()) {
+                            if (Objects.equals(it.next().key(), frame.key())) {
+                                it.remove();
+                                queuedFrames.decrementAndGet();
+                                coalesced.increment();
+                                return true;
+                            }
+                        }
+                    }
+                    // No older event for this key: fall back to dropping the oldest
+                case DROP_OLDEST:
+                    queue.pollFirst();
+                    queuedFrames.decrementAndGet();
+                    dropped.increment();
+                    return true;
+                case DISCONNECT:
+                default:
+                    disconnected.increment();
+                    senders.execute(sink::complete);
+                    closeLocked();
+                    return false;
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                Frame frame;
+                synchronized (this) {
+                    frame = queue.pollFirst();
+                    if (frame == null || closed) {
+                        draining = false;
+                        return;
+                    }
+                    queuedFrames.decrementAndGet();
+                }
+                try {
+                    sink.send(frame.data());
+                } catch (Exception e) {
+                    close();
+                    return;
+                }
+            }
+        }
+
+        synchronized void close() {
+            closeLocked();
+        }
+
+        private void closeLocked() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queuedFrames.addAndGet(-queue.size());
+            queue.clear();
+            subscribers.remove(this);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.smartparking.backend.filter;
+
+import com.smartparking.backend.store.SnapshotFile;
+import com.smartparking.backend.store.SnapshotMetrics;
+import com.smartparking.backend.time.EventTimeClock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-sensor detection state of the noise filter, bounded in time and size.
+ *
+ * Each entry packs the detection start time and the "already emitted" flag into one primitive
+ * {@code long} (start time shifted left by one, flag in the low bit) next to the last-seen time.
+ * Entries are kept in access order, so idle entries (the car left) are always at the head and
+ * are evicted after {@code idle-ttl-ms}; when {@code max-entries} is reached the least recently
+ * seen sensor is dropped. A sensor that returns after eviction, or after a gap longer than the TTL
+ * that was not swept yet, starts a fresh detection.
+ *
+ * Times come from the filter's {@link EventTimeClock}: heartbeat times may then be out of order
+ * (within the allowed lateness), and idle entries are evicted against the watermark, so a backlog
+ * is not mistaken for cars that left.
+ *
+ * The state is checkpointed to a {@link SnapshotFile} together with the next offset of every input
+ * partition it reflects. After a restart the snapshot is loaded before consuming starts and the
+ * filter seeks to those offsets, so only the records after the snapshot are replayed and parked
+ * cars keep their confirmation window.
+ */
+@Component
+public class DetectionStateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DetectionStateStore.class);
+
+    // LinkedHashMap entry (~40) + Detection (~32) + String header and array header (~40)
+    private static final long ENTRY_OVERHEAD_BYTES = 112;
+
+    private static final class Detection {
+        long state;    // startTime << 1 | emitted
+        long lastSeen;
+    }
+
+    private final long idleTtlMillis;
+    private final int maxEntries;
+    private final EventTimeClock clock;
+    private long keyBytes;
+
+    private final Path snapshotPath;
+    private final long maxSnapshotAgeMillis;
+    private final SnapshotMetrics snapshotMetrics;
+    // Next input offset per partition reflected in the entries
+    private final Map<Integer, Long> processedOffsets = new HashMap<>();
+    private Map<Integer, Long> restoredOffsets = new HashMap<>();
+
+    private final Counter ttlEvictions;
+    private final Counter sizeEvictions;
+
+    private final LinkedHashMap<String, Detection> entries = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Detection> eldest) {
+            if (size() > maxEntries) {
+                keyBytes -= eldest.getKey().length();
+                sizeEvictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public DetectionStateStore(@Value("${parking.filter.state.idle-ttl-ms:60000}") long idleTtlMillis,
+                               @Value("${parking.filter.state.max-entries:1000000}") int maxEntries,
+                               @Value("${parking.snapshot.dir:${java.io.tmpdir}/parking-controller}") Path snapshotDir,
+                               @Value("${parking.snapshot.max-age-ms:3600000}") long maxSnapshotAgeMillis,
+                               @Qualifier("filterClock") EventTimeClock clock,
+                               MeterRegistry meterRegistry) {
+        this.idleTtlMillis = idleTtlMillis;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.snapshotPath = snapshotDir.resolve("detections.snap");
+        this.maxSnapshotAgeMillis = maxSnapshotAgeMillis;
+        this.snapshotMetrics = new SnapshotMetrics(meterRegistry, "detections");
+
+        this.ttlEvictions = Counter.builder("parking.filter.state.evictions")
+                .tag("cause", "ttl")
+                .description("Detection entries evicted by the noise filter")
+                .register(meterRegistry);
+        this.sizeEvictions = Counter.builder("parking.filter.state.evictions")
+                .tag("cause", "size")
+                .description("Detection entries evicted by the noise filter")
+                .register(meterRegistry);
+        Gauge.builder("parking.filter.state.entries", this, DetectionStateStore::size)
+                .description("Sensors currently tracked by the noise filter")
+                .register(meterRegistry);
+        Gauge.builder("parking.filter.state.bytes", this, DetectionStateStore::approximateBytes)
+                .description("Approximate heap used by the noise filter state")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records a detection of the sensor at {@code now}.
+     *
+     * @return true exactly once per detection: the first time the sensor has been seen
+     *         continuously for more than {@code confirmAfterMillis}
+     */
+    public synchronized boolean observe(String sensorId, long now, long confirmAfterMillis) {
+        Detection detection = entries.get(sensorId);
+        if (detection == null) {
+            detection = new Detection();
+            detection.state = now << 1;
+            detection.lastSeen = now;
+            entries.put(sensorId, detection);
+            keyBytes += sensorId.length();
+        } else if (now - detection.lastSeen > idleTtlMillis) {
+            // The previous car left
+            detection.state = now << 1;
+        } else if (now < detection.state >>> 1) {
+            // Out of order: the detection started earlier
+            detection.state = now << 1 | (detection.state & 1L);
+        }
+        detection.lastSeen = Math.max(detection.lastSeen, now);
+
+        boolean emitted = (detection.state & 1L) != 0;
+        long startTime = detection.state >>> 1;
+        if (!emitted && now - startTime > confirmAfterMillis) {
+            detection.state |= 1L;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records that the listener is done with the record at {@code offset} of an input partition.
+     */
+    public synchronized void markProcessed(int partition, long offset) {
+        processedOffsets.merge(partition, offset + 1, Math::max);
+    }
+
+    /**
+     * Forgets the offsets of partitions this replica no longer consumes.
+     */
+    public synchronized void forgetOffsets(Collection<Integer> partitions) {
+        partitions.forEach(processedOffsets::remove);
+    }
+
+    /**
+     * Offset of a partition in the loaded snapshot, handed out once: only the first assignment of the
+     * partition after startup resumes from the snapshot.
+     */
+    public synchronized Long takeRestoredOffset(int partition) {
+        return restoredOffsets.remove(partition);
+    }
+
+    public void replayed(long records) {
+        snapshotMetrics.replayed(records);
+    }
+
+    @PostConstruct
+    void restore() {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            SnapshotFile.Snapshot snapshot = SnapshotFile.read(snapshotPath);
+            if (System.currentTimeMillis() - snapshot.createdAt() > maxSnapshotAgeMillis) {
+                logger.info(">>> Ignoring detection snapshot older than {} ms", maxSnapshotAgeMillis);
+                return;
+            }
+            synchronized (this) {
+                // Written eldest first, so the access order survives
+                for (SnapshotFile.Entry entry : snapshot.entries()) {
+                    Detection detection = new Detection();
+                    detection.state = entry.first();
+                    detection.lastSeen = entry.second();
+                    entries.put(entry.key(), detection);
+                    keyBytes += entry.key().length();
+                }
+                processedOffsets.putAll(snapshot.offsets());
+                restoredOffsets = new HashMap<>(snapshot.offsets());
+            }
+            snapshotMetrics.restored(start, snapshot.entries().size());
+            logger.info(">>> Restored {} detections from snapshot in {} ms", snapshot.entries().size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.warn(">>> Can't load detection snapshot, starting empty", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${parking.snapshot.interval-ms:10000}", initialDelayString = "${parking.snapshot.interval-ms:10000}")
+    public void snapshot() {
+        long start = System.nanoTime();
+        List<SnapshotFile.Entry> copy;
+        Map<Integer, Long> offsets;
+        synchronized (this) {
+            copy = new ArrayList<>(entries.size());
+            // Plain iteration does not change the access order
+            for (Map.Entry<String, Detection> entry : entries.entrySet()) {
+                copy.add(new SnapshotFile.Entry(entry.getKey(), entry.getValue().state, entry.getValue().lastSeen));
+            }
+            offsets = new HashMap<>(processedOffsets);
+        }
+        try {
+            snapshotMetrics.written(start, SnapshotFile.write(snapshotPath, offsets, copy));
+        } catch (IOException e) {
+            logger.error(">>> Failed to write detection snapshot", e);
+        }
+    }
+
+    // Listener containers are stopped before this runs, so the final snapshot is complete
+    @PreDestroy
+    void snapshotOnShutdown() {
+        snapshot();
+    }
+
+    @Scheduled(fixedDelayString = "${parking.filter.state.sweep-interval-ms:5000}")
+    public void evictIdle() {
+        long now = clock.now();
+        if (now != EventTimeClock.UNKNOWN) {
+            evictIdle(now);
+        }
+    }
+
+    synchronized void evictIdle(long now) {
+        long cutoff = now - idleTtlMillis;
+        Iterator<Map.Entry<String, Detection>> it = entries.entrySet().iterator();
+        // Access order: stop at the first entry that is still fresh
+        while (it.hasNext()) {
+            Map.Entry<String, Detection> entry = it.next();
+            if (entry.getValue().lastSeen >= cutoff) {
+                break;
+            }
+            keyBytes -= entry.getKey().length();
+            it.remove();
+            ttlEvictions.increment();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long approximateBytes() {
+        // Latin-1 compact strings: one byte per char
+        return entries.size() * ENTRY_OVERHEAD_BYTES + keyBytes;
+    }
+}
@@ -1,67 +1,178 @@
 package com.smartparking.backend.filter;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartparking.backend.config.KafkaRetryConfig;
+import com.smartparking.backend.time.EventTimeClock;
+import com.smartparking.logging.HotPathLog;
+import com.smartparking.logging.HotPathLogs;
 import com.smartparking.model.SensorEvent;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeSet;
 
 @Component
-public class SensorEventFilter {
+public class SensorEventFilter implements ConsumerSeekAware {
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
+    private static final String INPUT_TOPIC = "parking-events";
 
-    // Stores the start time of the detection for each sensor
-    private final Map<String, Long> detectionStartTimes = new ConcurrentHashMap<>();
-    // Stores whether the event has already been emitted for the current detection
-    private final Map<String, Boolean> eventEmitted = new ConcurrentHashMap<>();
+    private final KafkaTemplate<String, Object> kafkaTemplate;
 
-    public SensorEventFilter(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper) {
+    // Detection start time + emitted flag per sensor, evicted once the sensor goes quiet
+    private final DetectionStateStore detections;
+
+    // Wall clock, or the heartbeat times and watermarks of filter-group (parking.event-time.enabled)
+    private final EventTimeClock clock;
+
+    // One line per car passing the filter, thinned out per sensor
+    private final HotPathLog passedLog;
+
+    public SensorEventFilter(KafkaTemplate<String, Object> kafkaTemplate, DetectionStateStore detections,
+                             @Qualifier("filterClock") EventTimeClock clock, HotPathLogs hotPathLogs) {
         this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
+        this.detections = detections;
+        this.clock = clock;
+        this.passedLog = hotPathLogs.create("filter", LoggerFactory.getLogger(SensorEventFilter.class));
     }
 
-    @KafkaListener(topics = "parking-events", groupId = "filter-group")
-    public void filterNoise(String message) {
+    /**
+     * Failed heartbeats are retried through the filter's retry chain and come back on its redelivery
+     * topic (see {@link KafkaRetryConfig}); only parking-events offsets are tracked for the snapshot.
+     * The filter never blocks, so it runs this listener in virtual-threads mode too.
+     */
+    @KafkaListener(topics = {"parking-events", KafkaRetryConfig.FILTER_REDELIVERY_TOPIC}, groupId = "filter-group",
+            concurrency = "${parking.filter.concurrency:1}",
+            autoStartup = "#{'${parking.consumer.mode:record}' != 'batch'}")
+    public void filterNoise(SensorEvent event,
+                            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                            @Header(KafkaHeaders.OFFSET) long offset) {
         try {
-            SensorEvent event = objectMapper.readValue(message, SensorEvent.class);
-            String sensorId = event.getSensorId();
-            
-            // Assuming the simulation sends continuous events while occupied.
-            // If we receive an event, it means there is a car.
-            // In a real system, we might check a "status" field, but here we assume presence = event.
-            
-            long currentTime = System.currentTimeMillis(); // Or use event.getTime() if synchronized
-            
-            detectionStartTimes.putIfAbsent(sensorId, currentTime);
-            
-            long startTime = detectionStartTimes.get(sensorId);
-            long duration = currentTime - startTime;
-
-            // 30 seconds = 30000 ms
-            if (duration > 30000 && !eventEmitted.getOrDefault(sensorId, false)) {
-                // Emit to sensor.events
-                String json = objectMapper.writeValueAsString(event);
-                kafkaTemplate.send("sensor.events", sensorId, json);
-                
-                eventEmitted.put(sensorId, true);
-                System.out.println(">>> Filter Passed: Sensor " + sensorId + " active for > 30s. Emitted to sensor.events");
+            long time = clock.observe(topic, partition, event.getTime());
+            if (time != EventTimeClock.UNKNOWN) {
+                process(event, time, time);
+            }
+        } finally {
+            // A failed record is handed to the retry chain, so its offset is done either way
+            if (INPUT_TOPIC.equals(topic)) {
+                detections.markProcessed(partition, offset);
             }
+        }
+    }
 
-            // Note: We need a way to clear the map when the car leaves.
-            // Since the simulation just stops sending events, we might need a timeout mechanism.
-            // For now, we assume the simulation logic. 
-            // Ideally, the sensor would send a "FREE" event.
-            
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Batch variant of {@link #filterNoise}, enabled with {@code parking.consumer.mode=batch}.
+     * Only the latest heartbeat per sensor in a poll is evaluated, together with the time of its
+     * earliest one, so a detection starts when it would have in record mode.
+     */
+    @KafkaListener(topics = {"parking-events", KafkaRetryConfig.FILTER_REDELIVERY_TOPIC}, groupId = "filter-group",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            concurrency = "${parking.filter.concurrency:1}",
+            autoStartup = "#{'${parking.consumer.mode:record}' == 'batch'}")
+    public void filterNoiseBatch(List<SensorEvent> events,
+                                 @Header(KafkaHeaders.RECEIVED_TOPIC) List<String> topics,
+                                 @Header(KafkaHeaders.RECEIVED_PARTITION) List<Integer> partitions,
+                                 @Header(KafkaHeaders.OFFSET) List<Long> offsets) {
+        // Position in the poll of the latest heartbeat per sensor, and the first and last time it was seen
+        Map<String, Integer> latest = new LinkedHashMap<>();
+        Map<String, long[]> seen = new HashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            SensorEvent event = events.get(i);
+            // Records that failed to deserialize arrive as null
+            if (event == null) {
+                continue;
+            }
+            long time = clock.observe(topics.get(i), partitions.get(i), event.getTime());
+            if (time != EventTimeClock.UNKNOWN) {
+                latest.put(event.getSensorId(), i);
+                long[] range = seen.computeIfAbsent(event.getSensorId(), id -> new long[]{time, time});
+                range[0] = Math.min(range[0], time);
+                range[1] = Math.max(range[1], time);
+            }
+        }
+
+        // In poll order, so that on a failure everything before it has been filtered
+        for (int position : new TreeSet<>(latest.values())) {
+            SensorEvent event = events.get(position);
+            long[] range = seen.get(event.getSensorId());
+            try {
+                process(event, range[0], range[1]);
+            } catch (RuntimeException e) {
+                // Only this heartbeat is retried; the ones before it are done
+                markProcessed(topics, partitions, offsets, position);
+                throw new BatchListenerFailedException("Failed to filter " + events.get(position), e, position);
+            }
+        }
+        markProcessed(topics, partitions, offsets, events.size());
+    }
+
+    private void markProcessed(List<String> topics, List<Integer> partitions, List<Long> offsets, int count) {
+        for (int i = 0; i < count; i++) {
+            if (INPUT_TOPIC.equals(topics.get(i))) {
+                detections.markProcessed(partitions.get(i), offsets.get(i));
+            }
         }
     }
-    
-    // Optional: Cleanup task to remove stale entries if no events received for X time
-    // But for this specific requirement, we focus on the "active > 30s" logic.
+
+    // Resume from the detection snapshot: replay only what was consumed after it was taken
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        assignments.forEach((partition, position) -> {
+            if (!INPUT_TOPIC.equals(partition.topic())) {
+                return;
+            }
+            clock.assigned(List.of(partition.partition()));
+            Long snapshotOffset = detections.takeRestoredOffset(partition.partition());
+            if (snapshotOffset != null) {
+                callback.seek(partition.topic(), partition.partition(), snapshotOffset);
+                detections.replayed(Math.max(0, position - snapshotOffset));
+            }
+        });
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        List<Integer> revoked = partitions.stream()
+                .filter(partition -> INPUT_TOPIC.equals(partition.topic()))
+                .map(TopicPartition::partition)
+                .toList();
+        detections.forgetOffsets(revoked);
+        clock.revoked(revoked);
+    }
+
+    // firstSeen..lastSeen: the heartbeats of the sensor being evaluated (one, or a coalesced batch)
+    private void process(SensorEvent event, long firstSeen, long lastSeen) {
+        String sensorId = event.getSensorId();
+
+        // Assuming the simulation sends continuous events while occupied.
+        // If we receive an event, it means there is a car.
+        // In a real system, we might check a "status" field, but here we assume presence = event.
+
+        // 30 seconds = 30000 ms
+        boolean confirmed = detections.observe(sensorId, firstSeen, 30000);
+        if (lastSeen != firstSeen) {
+            confirmed |= detections.observe(sensorId, lastSeen, 30000);
+        }
+        if (confirmed) {
+            // Emit to sensor.events
+            kafkaTemplate.send("sensor.events", sensorId, event);
+
+            passedLog.info(sensorId, ">>> Filter Passed: Sensor {} active for > 30s. Emitted to sensor.events", sensorId);
+        }
+
+        // The simulation just stops sending events when the car leaves; the state store evicts
+        // the detection once the sensor has been quiet for the idle TTL, so a returning car is emitted again.
+    }
 }
@@ -47,6 +47,10 @@ public class ParkingSession {
     @Column(name = "last_event_time")
     private LocalDateTime lastEventTime;
 
+    // SensorPartitioner.hash(sensorId), set when the session is created
+    @Column(name = "sensor_hash")
+    private Integer sensorHash;
+
     public UUID getId() { return id; }
     public void setId(UUID id) { this.id = id; }
 
@@ -76,4 +80,7 @@ public class ParkingSession {
 
     public LocalDateTime getLastEventTime() { return lastEventTime; }
     public void setLastEventTime(LocalDateTime lastEventTime) { this.lastEventTime = lastEventTime; }
+
+    public Integer getSensorHash() { return sensorHash; }
+    public void setSensorHash(Integer sensorHash) { this.sensorHash = sensorHash; }
 }
@@ -0,0 +1,330 @@
+package com.smartparking.backend.occupancy;
+
+import com.smartparking.backend.model.ParkingSession;
+import com.smartparking.backend.repository.ParkingSessionRepository;
+import com.smartparking.model.SessionUpdateEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Which spots are occupied, per zone, answered from memory.
+ *
+ * Spot ids are dictionary-encoded to ints on first sight; each id maps to its zone and a slot in
+ * that zone, and a zone keeps one {@link BitSet} with a bit per slot (set = occupied) plus the
+ * occupied count. Counting free spots is O(1) and listing them is a scan of the zone's bitmap,
+ * about 16 KB for 128k spots.
+ *
+ * The zone of a spot is its id without the trailing number ({@code A17} is in zone {@code A},
+ * {@code S-4711} in zone {@code S}). Spots listed in {@code parking.occupancy.spots} are known from
+ * the start; any other spot is added the first time a session is seen on it.
+ *
+ * Kept up to date from {@code session.updates}, which every replica reads in full (see
+ * {@code DashboardController}), so each replica answers for all spots, not only its partitions.
+ * Seeded from the open sessions in the database at startup, and again each time the dashboard
+ * listener is assigned session.updates: its group starts at the head of the topic, so the updates
+ * published between the first seed and the assignment would otherwise be missed.
+ */
+@Component
+public class OccupancyIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(OccupancyIndex.class);
+
+    /**
+     * Occupancy of one zone at the time of the query.
+     */
+    public record ZoneOccupancy(String zone, int spots, int occupied, int free) {
+    }
+
+    private static final class Zone {
+        final String name;
+        final int index;
+        final List<String> spots = new ArrayList<>();
+        final BitSet occupied = new BitSet();
+        int occupiedCount;
+
+        Zone(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        ZoneOccupancy snapshot() {
+            return new ZoneOccupancy(name, spots.size(), occupiedCount, spots.size() - occupiedCount);
+        }
+    }
+
+    private final ParkingSessionRepository sessionRepository;
+    private final String[] inventory;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Spot id -> int id; the int id indexes zoneOf/slotOf
+    private final Map<String, Integer> spotIds = new HashMap<>();
+    private int[] zoneOf = new int[1024];
+    private int[] slotOf = new int[1024];
+    private final Map<String, Zone> zonesByName = new HashMap<>();
+    private final List<Zone> zones = new ArrayList<>();
+    private int occupiedTotal;
+
+    public OccupancyIndex(ParkingSessionRepository sessionRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${parking.occupancy.spots:}") String[] inventory) {
+        this.sessionRepository = sessionRepository;
+        this.inventory = inventory;
+
+        Gauge.builder("parking.occupancy.spots", this, OccupancyIndex::spotCount)
+                .description("Spots known to the occupancy index")
+                .register(meterRegistry);
+        Gauge.builder("parking.occupancy.occupied", this, OccupancyIndex::occupiedCount)
+                .description("Spots with an open session")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        for (String range : inventory) {
+            if (!range.isBlank()) {
+                registerRange(range.trim());
+            }
+        }
+        seed();
+    }
+
+    /**
+     * Replaces the occupied spots with the spots of the open sessions in the database. Updates
+     * consumed afterwards apply on top, also those the database already reflects: each one carries
+     * the spot's whole state.
+     */
+    public void seed() {
+        List<ParkingSession> open = sessionRepository.findByEndTimeIsNull();
+        lock.writeLock().lock();
+        try {
+            for (Zone zone : zones) {
+                zone.occupied.clear();
+                zone.occupiedCount = 0;
+            }
+            occupiedTotal = 0;
+            for (ParkingSession session : open) {
+                int id = idOf(session.getSensorId());
+                Zone zone = zones.get(zoneOf[id]);
+                if (!zone.occupied.get(slotOf[id])) {
+                    zone.occupied.set(slotOf[id]);
+                    zone.occupiedCount++;
+                    occupiedTotal++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info(">>> Occupancy index seeded: {} spots in {} zones, {} occupied", spotCount(), zones.size(), occupiedCount());
+    }
+
+    /**
+     * Applies a session update: a TERMINATED session frees its spot, any other status occupies it.
+     *
+     * @return whether the spot changed state (a car arrived or left)
+     */
+    public boolean apply(SessionUpdateEvent update) {
+        if (update.getParkingSpot() == null) {
+            return false;
+        }
+        if ("TERMINATED".equals(update.getStatus())) {
+            return release(update.getParkingSpot());
+        }
+        return occupy(update.getParkingSpot());
+    }
+
+    public boolean occupy(String spotId) {
+        return set(spotId, true);
+    }
+
+    public boolean release(String spotId) {
+        return set(spotId, false);
+    }
+
+    /**
+     * Registers the spots of a range such as {@code A1..A200}: the common prefix, then the first
+     * and last number.
+     */
+    public void registerRange(String range) {
+        int separator = range.indexOf("..");
+        if (separator < 0) {
+            register(range);
+            return;
+        }
+        String first = range.substring(0, separator);
+        String last = range.substring(separator + 2);
+        int digits = numberStart(first);
+        if (digits == first.length() || !last.startsWith(first.substring(0, digits))) {
+            throw new IllegalArgumentException("Not a spot range: " + range);
+        }
+        String prefix = first.substring(0, digits);
+        long from = Long.parseLong(first.substring(digits));
+        long to = Long.parseLong(last.substring(digits));
+        lock.writeLock().lock();
+        try {
+            for (long number = from; number <= to; number++) {
+                idOf(prefix + number);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void register(String spotId) {
+        lock.writeLock().lock();
+        try {
+            idOf(spotId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<ZoneOccupancy> zones() {
+        lock.readLock().lock();
+        try {
+            List<ZoneOccupancy> result = new ArrayList<>(zones.size());
+            for (Zone zone : zones) {
+                result.add(zone.snapshot());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<ZoneOccupancy> zone(String name) {
+        lock.readLock().lock();
+        try {
+            Zone zone = zonesByName.get(name);
+            return zone == null ? Optional.empty() : Optional.of(zone.snapshot());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code limit} free spots of a zone, in registration order, starting after the spot
+     * {@code after} (null = from the start). Empty if the zone is unknown.
+     */
+    public Optional<List<String>> freeSpots(String name, String after, int limit) {
+        lock.readLock().lock();
+        try {
+            Zone zone = zonesByName.get(name);
+            if (zone == null) {
+                return Optional.empty();
+            }
+            int from = 0;
+            if (after != null) {
+                Integer id = spotIds.get(after);
+                if (id == null || zones.get(zoneOf[id]) != zone) {
+                    throw new IllegalArgumentException("Spot " + after + " is not in zone " + name);
+                }
+                from = slotOf[id] + 1;
+            }
+            List<String> free = new ArrayList<>(Math.min(limit, zone.spots.size() - zone.occupiedCount));
+            int size = zone.spots.size();
+            for (int slot = zone.occupied.nextClearBit(from); slot < size && free.size() < limit;
+                 slot = zone.occupied.nextClearBit(slot + 1)) {
+                free.add(zone.spots.get(slot));
+            }
+            return Optional.of(free);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int spotCount() {
+        lock.readLock().lock();
+        try {
+            return spotIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int occupiedCount() {
+        lock.readLock().lock();
+        try {
+            return occupiedTotal;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The zone of a spot: its id without the trailing number and separator.
+     */
+    public static String zoneOf(String spotId) {
+        int end = numberStart(spotId);
+        while (end > 0 && (spotId.charAt(end - 1) == '-' || spotId.charAt(end - 1) == '_')) {
+            end--;
+        }
+        return end == 0 ? "default" : spotId.substring(0, end);
+    }
+
+    private boolean set(String spotId, boolean occupied) {
+        lock.writeLock().lock();
+        try {
+            int id = idOf(spotId);
+            Zone zone = zones.get(zoneOf[id]);
+            int slot = slotOf[id];
+            if (zone.occupied.get(slot) != occupied) {
+                zone.occupied.set(slot, occupied);
+                int delta = occupied ? 1 : -1;
+                zone.occupiedCount += delta;
+                occupiedTotal += delta;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private int idOf(String spotId) {
+        Integer existing = spotIds.get(spotId);
+        if (existing != null) {
+            return existing;
+        }
+        String zoneName = zoneOf(spotId);
+        Zone zone = zonesByName.get(zoneName);
+        if (zone == null) {
+            zone = new Zone(zoneName, zones.size());
+            zonesByName.put(zoneName, zone);
+            zones.add(zone);
+        }
+        int id = spotIds.size();
+        if (id == zoneOf.length) {
+            zoneOf = Arrays.copyOf(zoneOf, id * 2);
+            slotOf = Arrays.copyOf(slotOf, id * 2);
+        }
+        zoneOf[id] = zone.index;
+        slotOf[id] = zone.spots.size();
+        zone.spots.add(spotId);
+        spotIds.put(spotId, id);
+        return id;
+    }
+
+    private static int numberStart(String spotId) {
+        int start = spotId.length();
+        while (start > 0 && Character.isDigit(spotId.charAt(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+}
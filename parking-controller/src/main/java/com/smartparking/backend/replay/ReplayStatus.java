@@ -0,0 +1,47 @@
+package com.smartparking.backend.replay;
+
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Progress of the latest replay of this replica ({@code GET /api/replay}).
+ *
+ * @param recordsTotal records between the start offsets and the head, growing while the head moves
+ * @param recordsPerSecond average since the replay started
+ */
+public record ReplayStatus(State state, Instant from, Set<Integer> partitions, long recordsRead, long recordsTotal,
+                           long sessionsWritten, double recordsPerSecond, Instant startedAt, Instant finishedAt,
+                           String error) {
+
+    public enum State {
+        IDLE, RUNNING, COMPLETED, FAILED
+    }
+
+    static final ReplayStatus IDLE = new ReplayStatus(State.IDLE, null, Set.of(), 0, 0, 0, 0, null, null, null);
+
+    static ReplayStatus starting(Instant startedAt) {
+        return new ReplayStatus(State.RUNNING, null, Set.of(), 0, 0, 0, 0, startedAt, null, null);
+    }
+
+    ReplayStatus running(Instant from, Set<Integer> partitions, long recordsRead, long recordsTotal, long sessionsWritten) {
+        return new ReplayStatus(State.RUNNING, from, partitions, recordsRead, recordsTotal, sessionsWritten,
+                rate(recordsRead, Instant.now()), startedAt, null, null);
+    }
+
+    ReplayStatus completed() {
+        Instant now = Instant.now();
+        return new ReplayStatus(State.COMPLETED, from, partitions, recordsRead, recordsTotal, sessionsWritten,
+                rate(recordsRead, now), startedAt, now, null);
+    }
+
+    ReplayStatus failed(String error) {
+        Instant now = Instant.now();
+        return new ReplayStatus(State.FAILED, from, partitions, recordsRead, recordsTotal, sessionsWritten,
+                rate(recordsRead, now), startedAt, now, error);
+    }
+
+    private double rate(long records, Instant now) {
+        long millis = now.toEpochMilli() - startedAt.toEpochMilli();
+        return millis <= 0 ? 0 : records * 1000.0 / millis;
+    }
+}
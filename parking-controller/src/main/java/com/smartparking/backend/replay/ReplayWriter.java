@@ -0,0 +1,167 @@
+package com.smartparking.backend.replay;
+
+import com.smartparking.backend.model.ParkingSession;
+import com.smartparking.backend.store.SensorPartitioner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The bulk statements of a replay against {@code parking_sessions}, restricted to the sensors of the
+ * replayed partitions. Rows are written in JDBC batches of {@code parking.replay.batch-size} with
+ * an upsert on the primary key, so a session is written once, in its final state, whenever it
+ * is closed or the replay ends. The {@code alerted} flag belongs to the alert generator and is only
+ * set (false) on rows the replay creates.
+ */
+class ReplayWriter {
+
+    private static final String COLUMNS = "id, sensor_id, plate, start_time, end_time, status, amount, alerted, paid_until, last_event_time";
+    // Rows still open come from the partial index on open sessions of every month partition. Rows
+    // closed since are bounded below by the longest session, so only the months of that range are
+    // scanned (start_time is the partition key), as with STARTED_SINCE_SQL
+    private static final String OPEN_AT_SQL = "SELECT " + COLUMNS + " FROM parking_sessions"
+            + " WHERE end_time IS NULL AND start_time < ?"
+            + " UNION ALL SELECT " + COLUMNS + " FROM parking_sessions"
+            + " WHERE start_time >= ? AND start_time < ? AND end_time >= ?";
+    private static final String STARTED_SINCE_SQL = "SELECT id, sensor_id, start_time FROM parking_sessions WHERE start_time >= ?";
+    private static final String DELETE_SQL = "DELETE FROM parking_sessions WHERE id = ? AND start_time = ?";
+    private static final String UPSERT_SQL = "INSERT INTO parking_sessions (" + COLUMNS + ", sensor_hash)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, false, ?, ?, ?)"
+            + " ON CONFLICT (id, start_time) DO UPDATE SET plate = EXCLUDED.plate, end_time = EXCLUDED.end_time,"
+            + " status = EXCLUDED.status, amount = EXCLUDED.amount, paid_until = EXCLUDED.paid_until,"
+            + " last_event_time = EXCLUDED.last_event_time, sensor_hash = EXCLUDED.sensor_hash";
+
+    private static final RowMapper<ParkingSession> SESSION_ROW_MAPPER = (rs, rowNum) -> {
+        ParkingSession session = new ParkingSession();
+        session.setId(rs.getObject("id", UUID.class));
+        session.setSensorId(rs.getString("sensor_id"));
+        session.setPlate(rs.getString("plate"));
+        session.setStartTime(rs.getObject("start_time", LocalDateTime.class));
+        session.setEndTime(rs.getObject("end_time", LocalDateTime.class));
+        session.setStatus(rs.getString("status"));
+        session.setAmount(rs.getBigDecimal("amount"));
+        session.setAlerted(rs.getBoolean("alerted"));
+        session.setPaidUntil(rs.getObject("paid_until", LocalDateTime.class));
+        session.setLastEventTime(rs.getObject("last_event_time", LocalDateTime.class));
+        return session;
+    };
+
+    /**
+     * Id and partition-key value of a row that existed before the replay.
+     */
+    record ExistingRow(UUID id, LocalDateTime startTime) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Set<Integer> partitions;
+    private final int partitionCount;
+    private final int batchSize;
+    private final Duration maxSessionAge;
+
+    ReplayWriter(JdbcTemplate jdbcTemplate, Set<Integer> partitions, int partitionCount, int batchSize, Duration maxSessionAge) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitions = partitions;
+        this.partitionCount = partitionCount;
+        this.batchSize = batchSize;
+        this.maxSessionAge = maxSessionAge;
+    }
+
+    /**
+     * The sessions that were open at {@code from}, reopened as they were at that moment: a session
+     * closed since then goes back to PAID or UNPAID, and its last heartbeat is capped at {@code from}
+     * (the replay brings it forward again). A session closed since then is only found if it started
+     * within {@code parking.replay.max-session-days} before {@code from}.
+     */
+    List<ParkingSession> openAt(LocalDateTime from) {
+        Timestamp at = Timestamp.valueOf(from);
+        Timestamp oldestStart = Timestamp.valueOf(from.minus(maxSessionAge));
+        List<ParkingSession> open = new ArrayList<>();
+        for (ParkingSession session : jdbcTemplate.query(OPEN_AT_SQL, SESSION_ROW_MAPPER, at, oldestStart, at, at)) {
+            if (!owned(session.getSensorId())) {
+                continue;
+            }
+            if (session.getEndTime() != null) {
+                session.setEndTime(null);
+                session.setStatus(session.getAmount() != null ? "PAID" : "UNPAID");
+            }
+            if (session.getLastEventTime() == null || session.getLastEventTime().isAfter(from)) {
+                session.setLastEventTime(from);
+            }
+            open.add(session);
+        }
+        return open;
+    }
+
+    /**
+     * The rows of sessions that started at or after {@code from}, keyed by
+     * {@link SessionRebuild#sessionKey}: the replay recreates them.
+     */
+    Map<String, ExistingRow> startedSince(LocalDateTime from) {
+        Map<String, ExistingRow> rows = new HashMap<>();
+        jdbcTemplate.query(STARTED_SINCE_SQL, rs -> {
+            String sensorId = rs.getString("sensor_id");
+            if (owned(sensorId)) {
+                LocalDateTime startTime = rs.getObject("start_time", LocalDateTime.class);
+                rows.put(SessionRebuild.sessionKey(sensorId, startTime), new ExistingRow(rs.getObject("id", UUID.class), startTime));
+            }
+        }, Timestamp.valueOf(from));
+        return rows;
+    }
+
+    /**
+     * Inserts or updates the sessions in batches.
+     *
+     * @return the number of sessions written
+     */
+    int upsert(List<ParkingSession> sessions) {
+        List<Object[]> rows = new ArrayList<>(Math.min(sessions.size(), batchSize));
+        for (ParkingSession session : sessions) {
+            rows.add(new Object[]{session.getId(), session.getSensorId(), session.getPlate(), Timestamp.valueOf(session.getStartTime()),
+                    timestamp(session.getEndTime()), session.getStatus(), session.getAmount(), timestamp(session.getPaidUntil()),
+                    timestamp(session.getLastEventTime()), SensorPartitioner.hash(session.getSensorId())});
+            if (rows.size() == batchSize) {
+                jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+                rows.clear();
+            }
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        }
+        return sessions.size();
+    }
+
+    /**
+     * Deletes rows that existed before the replay and were not recreated by it.
+     */
+    void delete(Collection<ExistingRow> rows) {
+        List<Object[]> batch = new ArrayList<>(Math.min(rows.size(), batchSize));
+        for (ExistingRow row : rows) {
+            batch.add(new Object[]{row.id(), Timestamp.valueOf(row.startTime())});
+            if (batch.size() == batchSize) {
+                jdbcTemplate.batchUpdate(DELETE_SQL, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, batch);
+        }
+    }
+
+    private boolean owned(String sensorId) {
+        return partitions.contains(SensorPartitioner.partitionFor(sensorId, partitionCount));
+    }
+
+    private static Timestamp timestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+}
@@ -0,0 +1,235 @@
+package com.smartparking.backend.replay;
+
+import com.smartparking.backend.model.ParkingSession;
+import com.smartparking.backend.store.TimingWheel;
+import com.smartparking.backend.time.EventTimeClock;
+import com.smartparking.model.PaymentEvent;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * The controller's session rules (30 s confirmation, payments held until their session exists,
+ * inactivity timeout) applied to replayed records, in memory and in event time.
+ *
+ * Heartbeats are dated by {@code SensorEvent.time} and payments by their record timestamp, whatever
+ * {@code parking.event-time.enabled} says: a replay runs far faster than the wall clock. Timeouts fire
+ * on the lowest per-partition watermark, as in event-time mode, and heartbeats older than their
+ * partition's watermark are dropped as late. Nothing is written here: closed sessions are collected
+ * for the next bulk write ({@link #drainClosed}), the open ones are written when the replay ends.
+ *
+ * A session that already existed for the same sensor and start time keeps its id, so replaying the
+ * same history again rewrites the same rows.
+ */
+class SessionRebuild {
+
+    private static final long CONFIRMATION_MILLIS = 30_000;
+
+    record HeldPayment(PaymentEvent payment, int partition, long heldAt) {
+    }
+
+    private final long timeoutMillis;
+    private final long allowedLatenessMillis;
+    private final long joinTtlMillis;
+
+    private final Map<String, ParkingSession> open = new HashMap<>();
+    // First-seen time of the sensors inside the confirmation window, per partition
+    private final Map<Integer, Map<String, Long>> pending = new HashMap<>();
+    // In arrival order, like the PaymentJoinBuffer
+    private final LinkedHashMap<String, HeldPayment> held = new LinkedHashMap<>();
+    // Latest heartbeat time per partition
+    private final Map<Integer, Long> latest = new HashMap<>();
+    // Session key ("sensorId@startMillis") -> id of the row that already existed for it, or null
+    private final Function<String, UUID> existingId;
+    private final TimingWheel timeouts;
+    private final List<ParkingSession> closed = new ArrayList<>();
+    private long late;
+
+    SessionRebuild(long fromMillis, long timeoutMillis, long precisionMillis, long allowedLatenessMillis, long joinTtlMillis,
+                   Function<String, UUID> existingId) {
+        this.timeoutMillis = timeoutMillis;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+        this.joinTtlMillis = joinTtlMillis;
+        this.existingId = existingId;
+        this.timeouts = new TimingWheel(precisionMillis, 512, fromMillis);
+    }
+
+    static String sessionKey(String sensorId, LocalDateTime startTime) {
+        return sensorId + "@" + toEpochMillis(startTime);
+    }
+
+    /**
+     * Adds a session that was open when the replayed range begins.
+     */
+    void seed(ParkingSession session) {
+        open.put(session.getSensorId(), session);
+        arm(session);
+    }
+
+    void heartbeat(int partition, String sensorId, long time) {
+        Long max = latest.get(partition);
+        if (max != null && time < max - allowedLatenessMillis) {
+            late++;
+            return;
+        }
+        latest.merge(partition, time, Math::max);
+
+        ParkingSession session = open.get(sensorId);
+        if (session != null) {
+            long last = toEpochMillis(session.getLastEventTime());
+            if (time <= last + timeoutMillis) {
+                if (time > last) {
+                    session.setLastEventTime(EventTimeClock.toLocalDateTime(time));
+                }
+                pendingOf(partition).remove(sensorId);
+                return;
+            }
+            // Silent for longer than the timeout before this heartbeat: a new car
+            close(session);
+        }
+
+        Map<String, Long> waiting = pendingOf(partition);
+        Long firstSeen = waiting.putIfAbsent(sensorId, time);
+        if (firstSeen == null || time <= firstSeen + CONFIRMATION_MILLIS) {
+            return;
+        }
+        waiting.remove(sensorId);
+
+        session = new ParkingSession();
+        session.setSensorId(sensorId);
+        session.setStartTime(EventTimeClock.toLocalDateTime(firstSeen));
+        session.setLastEventTime(EventTimeClock.toLocalDateTime(time));
+        session.setStatus("UNPAID");
+        UUID id = existingId.apply(sessionKey(sensorId, session.getStartTime()));
+        session.setId(id != null ? id : UUID.randomUUID());
+        open.put(sensorId, session);
+        arm(session);
+
+        HeldPayment payment = held.remove(sensorId);
+        if (payment != null && time - payment.heldAt() <= joinTtlMillis) {
+            pay(session, payment.payment());
+        }
+    }
+
+    void payment(int partition, PaymentEvent payment, long time) {
+        ParkingSession session = open.get(payment.getParkingSpot());
+        if (session == null) {
+            held.remove(payment.getParkingSpot());
+            held.put(payment.getParkingSpot(), new HeldPayment(payment, partition, time));
+            return;
+        }
+        pay(session, payment);
+    }
+
+    // Same as ActiveSessionStore.markPaid: 0.10 EUR = 1 minute from the start of the session
+    private static void pay(ParkingSession session, PaymentEvent payment) {
+        session.setStatus("PAID");
+        session.setPlate(payment.getPlate());
+        session.setAmount(payment.getAmount());
+        if (payment.getAmount() != null) {
+            long minutesPaid = payment.getAmount().divide(new BigDecimal("0.10"), MathContext.DECIMAL32).longValue();
+            session.setPaidUntil(session.getStartTime().plusMinutes(minutesPaid));
+        }
+    }
+
+    /**
+     * The lowest latest-heartbeat time of the partitions minus the allowed lateness, or
+     * {@link EventTimeClock#UNKNOWN} while one of them has no heartbeat yet (or there are none).
+     */
+    long watermark(Collection<Integer> partitions) {
+        if (partitions.isEmpty()) {
+            return EventTimeClock.UNKNOWN;
+        }
+        long lowest = Long.MAX_VALUE;
+        for (int partition : partitions) {
+            Long max = latest.get(partition);
+            if (max == null) {
+                return EventTimeClock.UNKNOWN;
+            }
+            lowest = Math.min(lowest, max);
+        }
+        return lowest - allowedLatenessMillis;
+    }
+
+    /**
+     * Closes the sessions whose deadline the watermark passed and forgets payments held for longer
+     * than the join TTL.
+     */
+    void advance(long watermark) {
+        if (watermark == EventTimeClock.UNKNOWN) {
+            return;
+        }
+        for (String sensorId : timeouts.advance(watermark, this::deadline)) {
+            ParkingSession session = open.get(sensorId);
+            if (session != null) {
+                close(session);
+            }
+        }
+        Iterator<HeldPayment> it = held.values().iterator();
+        while (it.hasNext() && watermark - it.next().heldAt() > joinTtlMillis) {
+            it.remove();
+        }
+    }
+
+    /**
+     * Sessions closed since the last call, in the order they were closed.
+     */
+    List<ParkingSession> drainClosed() {
+        List<ParkingSession> drained = new ArrayList<>(closed);
+        closed.clear();
+        return drained;
+    }
+
+    Collection<ParkingSession> openSessions() {
+        return open.values();
+    }
+
+    Map<String, Long> pending(int partition) {
+        return pending.getOrDefault(partition, Map.of());
+    }
+
+    Collection<HeldPayment> heldPayments() {
+        return held.values();
+    }
+
+    long late() {
+        return late;
+    }
+
+    // A session ends at its deadline (last heartbeat + timeout), like in the ActiveSessionStore
+    private void close(ParkingSession session) {
+        open.remove(session.getSensorId());
+        session.setEndTime(session.getLastEventTime().plus(timeoutMillis, ChronoUnit.MILLIS));
+        session.setStatus("TERMINATED");
+        closed.add(session);
+    }
+
+    private void arm(ParkingSession session) {
+        timeouts.schedule(session.getSensorId(), toEpochMillis(session.getLastEventTime()) + timeoutMillis);
+    }
+
+    private long deadline(String sensorId) {
+        ParkingSession session = open.get(sensorId);
+        return session == null ? -1 : toEpochMillis(session.getLastEventTime()) + timeoutMillis;
+    }
+
+    private Map<String, Long> pendingOf(int partition) {
+        return pending.computeIfAbsent(partition, p -> new HashMap<>());
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,566 @@
+package com.smartparking.backend.replay;
+
+import com.smartparking.backend.controller.ParkingController;
+import com.smartparking.backend.model.ParkingSession;
+import com.smartparking.backend.store.ActiveSessionStore;
+import com.smartparking.backend.store.PartitionedStateRebalanceListener;
+import com.smartparking.backend.store.PaymentJoinBuffer;
+import com.smartparking.backend.store.PendingSessionStore;
+import com.smartparking.backend.store.SensorPartitioner;
+import com.smartparking.backend.time.EventTimeClock;
+import com.smartparking.model.PaymentEvent;
+import com.smartparking.model.SensorEvent;
+import com.smartparking.tracing.TraceContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Catch-up replay ({@code POST /api/replay}): rebuilds the sessions of this replica's partitions from
+ * the history of parking-events and payment-events, then hands over to the live listeners.
+ *
+ * The controller-group listeners are paused for the duration (they keep their assignment) and the
+ * replica's in-memory sessions of those partitions are dropped. A separate consumer reads both topics
+ * from the requested point as fast as it can fetch; the records of each partition are merged by
+ * timestamp and applied to a {@link SessionRebuild} in memory, and sessions reach Postgres in bulk
+ * upserts as they close ({@link ReplayWriter}) instead of one round trip per record. The replayed
+ * transitions are not published one by one.
+ *
+ * Once fewer than {@code parking.replay.switch-lag} records are left to the head, the open sessions
+ * are written, rows of the range the replay did not recreate are deleted, the pending sensors replace
+ * those of the changelog, held payments move to the {@link PaymentJoinBuffer}, the store reloads the
+ * partitions and one session.updates record is published per session whose state changed (opened,
+ * changed or closed by the replay). These records carry {@link ParkingController#STATE_HEADER}: the
+ * occupancy index, the dashboards and the alert generator apply the state, the rollups don't count it
+ * again. The live consumers are then moved to where the replay stopped and resumed.
+ *
+ * A replay covers the partitions the replica owns when it starts; with several replicas it runs on
+ * each. alert.incident is not replayed: expiries of the rebuilt sessions come from the alert generator.
+ * If the assignment changes meanwhile the replay fails and the sessions are reloaded from the database.
+ */
+@Component
+public class SessionReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionReplayer.class);
+
+    private static final String HEARTBEATS = "parking-events";
+    private static final String PAYMENTS = "payment-events";
+    private static final String GROUP_ID = "controller-group";
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final long WAIT_TIMEOUT_MILLIS = 30_000;
+
+    private final ConsumerFactory<String, Object> replayConsumerFactory;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final PartitionedStateRebalanceListener rebalanceListener;
+    private final ActiveSessionStore sessionStore;
+    private final PendingSessionStore pendingSessions;
+    private final PaymentJoinBuffer earlyPayments;
+    private final ParkingController controller;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final long timeoutMillis;
+    private final long precisionMillis;
+    private final long allowedLatenessMillis;
+    private final long joinTtlMillis;
+    private final int batchSize;
+    private final Duration maxSessionAge;
+    private final int maxQueuedRecords;
+    private final long progressIntervalMillis;
+    private final long switchLag;
+
+    private final Counter records;
+    private final Counter sessionsWritten;
+    // Records left to the head in the running replay
+    private final AtomicLong lag = new AtomicLong();
+
+    private volatile ReplayStatus status = ReplayStatus.IDLE;
+
+    public SessionReplayer(@Qualifier("replayConsumerFactory") ConsumerFactory<String, Object> replayConsumerFactory,
+                           KafkaListenerEndpointRegistry listenerRegistry,
+                           PartitionedStateRebalanceListener rebalanceListener,
+                           ActiveSessionStore sessionStore,
+                           PendingSessionStore pendingSessions,
+                           PaymentJoinBuffer earlyPayments,
+                           ParkingController controller,
+                           JdbcTemplate jdbcTemplate,
+                           MeterRegistry meterRegistry,
+                           @Value("${parking.termination.timeout-ms:30000}") long timeoutMillis,
+                           @Value("${parking.termination.precision-ms:1000}") long precisionMillis,
+                           @Value("${parking.event-time.allowed-lateness-ms:5000}") long allowedLatenessMillis,
+                           @Value("${parking.join.ttl-ms:120000}") long joinTtlMillis,
+                           @Value("${parking.replay.batch-size:5000}") int batchSize,
+                           @Value("${parking.replay.max-session-days:7}") int maxSessionDays,
+                           @Value("${parking.replay.max-poll-records:5000}") int maxPollRecords,
+                           @Value("${parking.replay.progress-interval-ms:5000}") long progressIntervalMillis,
+                           @Value("${parking.replay.switch-lag:1000}") long switchLag) {
+        this.replayConsumerFactory = replayConsumerFactory;
+        this.listenerRegistry = listenerRegistry;
+        this.rebalanceListener = rebalanceListener;
+        this.sessionStore = sessionStore;
+        this.pendingSessions = pendingSessions;
+        this.earlyPayments = earlyPayments;
+        this.controller = controller;
+        this.jdbcTemplate = jdbcTemplate;
+        this.timeoutMillis = timeoutMillis;
+        this.precisionMillis = precisionMillis;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+        this.joinTtlMillis = joinTtlMillis;
+        this.batchSize = batchSize;
+        this.maxSessionAge = Duration.ofDays(maxSessionDays);
+        this.maxQueuedRecords = maxPollRecords;
+        this.progressIntervalMillis = progressIntervalMillis;
+        this.switchLag = switchLag;
+
+        this.records = Counter.builder("parking.replay.records")
+                .description("Records read by catch-up replays")
+                .register(meterRegistry);
+        this.sessionsWritten = Counter.builder("parking.replay.sessions.written")
+                .description("Sessions upserted by catch-up replays")
+                .register(meterRegistry);
+        Gauge.builder("parking.replay.lag", lag, AtomicLong::get)
+                .description("Records left to the head of the input topics in the running replay")
+                .register(meterRegistry);
+    }
+
+    public ReplayStatus status() {
+        return status;
+    }
+
+    /**
+     * Starts replaying the history from {@code from} in the background.
+     *
+     * @throws IllegalStateException if a replay is already running
+     */
+    public ReplayStatus start(Instant from) {
+        return launch(from, null);
+    }
+
+    /**
+     * Starts replaying from the time of the records at {@code offset} of the parking-events partitions
+     * (the earliest of them, so that every partition is replayed from the same point in time).
+     *
+     * @throws IllegalStateException if a replay is already running
+     */
+    public ReplayStatus startAtOffset(long offset) {
+        return launch(null, offset);
+    }
+
+    private synchronized ReplayStatus launch(Instant from, Long offset) {
+        if (status.state() == ReplayStatus.State.RUNNING) {
+            throw new IllegalStateException("A replay is already running");
+        }
+        status = ReplayStatus.starting(Instant.now());
+        Thread.ofPlatform().name("session-replay").daemon().start(() -> run(from, offset));
+        return status;
+    }
+
+    private void run(Instant requestedFrom, Long offset) {
+        List<MessageListenerContainer> paused = listenerContainers();
+        Set<Integer> dropped = Set.of();
+        try (Consumer<String, Object> consumer = replayConsumerFactory.createConsumer()) {
+            paused.forEach(MessageListenerContainer::pause);
+            awaitPaused(paused);
+
+            PartitionedStateRebalanceListener.Ownership ownership = rebalanceListener.ownership();
+            Set<Integer> partitions = ownership.partitions();
+            if (partitions.isEmpty()) {
+                throw new IllegalStateException("This replica owns no partitions");
+            }
+            long fromMillis = requestedFrom != null ? requestedFrom.toEpochMilli() : timeAtOffset(consumer, partitions, offset);
+
+            // From here on the live state of the partitions is the replay's
+            Map<UUID, ParkingSession> openBefore = new HashMap<>();
+            for (ParkingSession session : sessionStore.all()) {
+                if (partitions.contains(SensorPartitioner.partitionFor(session.getSensorId(), ownership.partitionCount()))) {
+                    openBefore.put(session.getId(), session);
+                }
+            }
+            sessionStore.flush();
+            sessionStore.dropPartitions(partitions, ownership.partitionCount());
+            // The replay rebuilds the held payments too; those held now must not come back from the changelog
+            earlyPayments.clear(partitions);
+            dropped = partitions;
+
+            Run replay = new Run(Instant.ofEpochMilli(fromMillis), partitions,
+                    new ReplayWriter(jdbcTemplate, partitions, ownership.partitionCount(), batchSize, maxSessionAge));
+            Map<TopicPartition, Long> end = replay.readToHead(consumer);
+            if (rebalanceListener.ownership().generation() != ownership.generation()) {
+                throw new IllegalStateException("The partition assignment changed during the replay");
+            }
+            replay.switchOver(openBefore, ownership.partitionCount());
+            dropped = Set.of();
+            if (!controller.seekTo(end)) {
+                logger.warn(">>> Replay: some partitions of {} are not assigned to a listener any more", partitions);
+            }
+        } catch (Exception e) {
+            logger.error(">>> Replay failed", e);
+            status = status.failed(String.valueOf(e.getMessage()));
+            reload(dropped);
+        } finally {
+            lag.set(0);
+            paused.forEach(MessageListenerContainer::resume);
+        }
+    }
+
+    // The running listener containers of the controller (one per parking.consumer.mode, only one runs)
+    private List<MessageListenerContainer> listenerContainers() {
+        return listenerRegistry.getListenerContainers().stream()
+                .filter(container -> GROUP_ID.equals(container.getGroupId()) && container.isRunning())
+                .toList();
+    }
+
+    private static void awaitPaused(List<MessageListenerContainer> containers) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT_MILLIS;
+        for (MessageListenerContainer container : containers) {
+            while (!container.isContainerPaused()) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Listener " + container.getListenerId() + " did not pause");
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    // After a failure: the store reloads the dropped partitions that are still owned from the database
+    private void reload(Set<Integer> dropped) {
+        if (dropped.isEmpty()) {
+            return;
+        }
+        try {
+            PartitionedStateRebalanceListener.Ownership ownership = rebalanceListener.ownership();
+            Set<Integer> owned = new HashSet<>(dropped);
+            owned.retainAll(ownership.partitions());
+            sessionStore.dropPartitions(owned, ownership.partitionCount());
+            sessionStore.loadPartitions(owned, ownership.partitionCount());
+        } catch (RuntimeException e) {
+            logger.error(">>> Failed to reload the sessions of partitions {} after the replay", dropped, e);
+        }
+    }
+
+    // Time of the earliest record at the offset on the parking-events partitions
+    private static long timeAtOffset(Consumer<String, Object> consumer, Set<Integer> partitions, long offset) {
+        List<TopicPartition> heartbeats = partitions.stream().map(p -> new TopicPartition(HEARTBEATS, p)).toList();
+        consumer.assign(heartbeats);
+        Map<TopicPartition, Long> beginning = consumer.beginningOffsets(heartbeats);
+        Map<TopicPartition, Long> end = consumer.endOffsets(heartbeats);
+        Set<TopicPartition> waiting = new HashSet<>();
+        for (TopicPartition partition : heartbeats) {
+            long position = Math.max(offset, beginning.get(partition));
+            if (position < end.get(partition)) {
+                consumer.seek(partition, position);
+                waiting.add(partition);
+            } else {
+                consumer.pause(List.of(partition));
+            }
+        }
+
+        long earliest = Long.MAX_VALUE;
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT_MILLIS;
+        while (!waiting.isEmpty() && System.currentTimeMillis() < deadline) {
+            for (ConsumerRecord<String, Object> record : consumer.poll(POLL_TIMEOUT)) {
+                TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                if (waiting.remove(partition)) {
+                    earliest = Math.min(earliest, record.timestamp());
+                    consumer.pause(List.of(partition));
+                }
+            }
+        }
+        consumer.resume(consumer.paused());
+        if (earliest == Long.MAX_VALUE) {
+            throw new IllegalArgumentException("No records at or after offset " + offset + " of " + HEARTBEATS);
+        }
+        return earliest;
+    }
+
+    /**
+     * One replay: reading, bulk writes and the switch-over. Runs on the replay thread only.
+     */
+    private final class Run {
+
+        private final Instant from;
+        private final Set<Integer> partitions;
+        private final ReplayWriter writer;
+        // Rows of the range that existed before the replay and have not been rewritten by it yet
+        private final Map<String, ReplayWriter.ExistingRow> replaced;
+        private final SessionRebuild rebuild;
+        // Per partition number, the records of both topics fetched but not yet applied
+        private final Map<Integer, Merge> merges = new HashMap<>();
+        private final List<ParkingSession> unwritten = new ArrayList<>();
+
+        private long read;
+        private long total;
+        private long written;
+
+        Run(Instant from, Set<Integer> partitions, ReplayWriter writer) {
+            this.from = from;
+            this.partitions = partitions;
+            this.writer = writer;
+            LocalDateTime fromTime = EventTimeClock.toLocalDateTime(from.toEpochMilli());
+            this.replaced = writer.startedSince(fromTime);
+            this.rebuild = new SessionRebuild(from.toEpochMilli(), timeoutMillis, precisionMillis, allowedLatenessMillis, joinTtlMillis,
+                    key -> {
+                        ReplayWriter.ExistingRow row = replaced.get(key);
+                        return row == null ? null : row.id();
+                    });
+            writer.openAt(fromTime).forEach(rebuild::seed);
+            partitions.forEach(partition -> merges.put(partition, new Merge()));
+            status = status.running(from, partitions, 0, 0, 0);
+        }
+
+        /**
+         * Reads both topics from {@code from} until fewer than {@code switch-lag} records are left to
+         * the head, and returns the offsets the live consumers continue from.
+         */
+        Map<TopicPartition, Long> readToHead(Consumer<String, Object> consumer) {
+            List<TopicPartition> inputs = new ArrayList<>();
+            for (int partition : partitions) {
+                inputs.add(new TopicPartition(HEARTBEATS, partition));
+                inputs.add(new TopicPartition(PAYMENTS, partition));
+            }
+            consumer.assign(inputs);
+            Map<TopicPartition, Long> target = consumer.endOffsets(inputs);
+            Map<TopicPartition, OffsetAndTimestamp> found = consumer.offsetsForTimes(
+                    inputs.stream().collect(HashMap::new, (m, tp) -> m.put(tp, from.toEpochMilli()), Map::putAll));
+            for (TopicPartition partition : inputs) {
+                OffsetAndTimestamp start = found.get(partition);
+                consumer.seek(partition, start != null ? start.offset() : target.get(partition));
+            }
+            Map<TopicPartition, Long> positions = positions(consumer, inputs);
+            total = behind(positions, target);
+            logger.info(">>> Replay of partitions {} from {}: {} records to the head", partitions, from, total);
+
+            Set<TopicPartition> throttled = new HashSet<>();
+            long nextProgress = System.currentTimeMillis() + progressIntervalMillis;
+            while (true) {
+                ConsumerRecords<String, Object> polled = consumer.poll(POLL_TIMEOUT);
+                for (ConsumerRecord<String, Object> record : polled) {
+                    merges.get(record.partition()).add(record);
+                }
+                read += polled.count();
+                records.increment(polled.count());
+
+                positions = positions(consumer, inputs);
+                Set<Integer> active = new HashSet<>();
+                boolean caughtUp = true;
+                for (Map.Entry<Integer, Merge> merge : merges.entrySet()) {
+                    int partition = merge.getKey();
+                    boolean heartbeatsDone = caughtUp(positions, target, new TopicPartition(HEARTBEATS, partition));
+                    boolean paymentsDone = caughtUp(positions, target, new TopicPartition(PAYMENTS, partition));
+                    merge.getValue().drain(rebuild, heartbeatsDone, paymentsDone);
+                    if (!heartbeatsDone) {
+                        active.add(partition);
+                    }
+                    caughtUp &= heartbeatsDone && paymentsDone;
+                }
+                // Partitions read to the head don't hold back the timeouts of the others
+                rebuild.advance(rebuild.watermark(active));
+                unwritten.addAll(rebuild.drainClosed());
+                if (unwritten.size() >= batchSize) {
+                    writeUnwritten();
+                }
+                throttle(consumer, throttled);
+
+                lag.set(behind(positions, target));
+                status = status.running(from, partitions, read, total, written);
+                if (System.currentTimeMillis() >= nextProgress) {
+                    nextProgress = System.currentTimeMillis() + progressIntervalMillis;
+                    logger.info(">>> Replay of partitions {}: {}/{} records, {} records/s, {} sessions written",
+                            partitions, read, total, Math.round(status.recordsPerSecond()), written);
+                }
+
+                if (caughtUp) {
+                    // The head moved on meanwhile: follow it until the rest is small enough for the live listeners
+                    Map<TopicPartition, Long> head = consumer.endOffsets(inputs);
+                    if (behind(positions, head) <= switchLag) {
+                        writeUnwritten();
+                        return positions;
+                    }
+                    total += behind(target, head);
+                    target = head;
+                }
+            }
+        }
+
+        // A topic that gets ahead of the other one on a partition waits for it instead of piling up in memory
+        private void throttle(Consumer<String, Object> consumer, Set<TopicPartition> throttled) {
+            for (Map.Entry<Integer, Merge> merge : merges.entrySet()) {
+                throttle(consumer, throttled, new TopicPartition(HEARTBEATS, merge.getKey()), merge.getValue().heartbeats.size());
+                throttle(consumer, throttled, new TopicPartition(PAYMENTS, merge.getKey()), merge.getValue().payments.size());
+            }
+        }
+
+        private void throttle(Consumer<String, Object> consumer, Set<TopicPartition> throttled, TopicPartition partition, int queued) {
+            if (queued > maxQueuedRecords && throttled.add(partition)) {
+                consumer.pause(List.of(partition));
+            } else if (queued <= maxQueuedRecords / 2 && throttled.remove(partition)) {
+                consumer.resume(List.of(partition));
+            }
+        }
+
+        private void writeUnwritten() {
+            write(unwritten);
+            unwritten.clear();
+        }
+
+        private void write(List<ParkingSession> sessions) {
+            if (sessions.isEmpty()) {
+                return;
+            }
+            writer.upsert(sessions);
+            for (ParkingSession session : sessions) {
+                String key = SessionRebuild.sessionKey(session.getSensorId(), session.getStartTime());
+                ReplayWriter.ExistingRow row = replaced.get(key);
+                if (row != null && row.id().equals(session.getId())) {
+                    replaced.remove(key);
+                }
+            }
+            written += sessions.size();
+            sessionsWritten.increment(sessions.size());
+        }
+
+        /**
+         * Hands the rebuilt state over to the live stores.
+         */
+        void switchOver(Map<UUID, ParkingSession> openBefore, int partitionCount) {
+            List<ParkingSession> open = new ArrayList<>(rebuild.openSessions());
+            write(open);
+            int removed = replaced.size();
+            writer.delete(replaced.values());
+
+            for (int partition : partitions) {
+                Map<String, LocalDateTime> pending = new HashMap<>();
+                rebuild.pending(partition).forEach((sensorId, firstSeen) -> pending.put(sensorId, EventTimeClock.toLocalDateTime(firstSeen)));
+                pendingSessions.replace(partition, pending);
+            }
+            for (SessionRebuild.HeldPayment held : rebuild.heldPayments()) {
+                earlyPayments.hold(held.payment(), held.partition(), TraceContext.start(held.heldAt()), held.heldAt());
+            }
+            sessionStore.loadPartitions(partitions, partitionCount);
+            int published = publishChanges(openBefore, open);
+
+            status = status.running(from, partitions, read, total, written).completed();
+            logger.info(">>> Replay of partitions {} from {} done: {} records in {} s ({} records/s), {} sessions written,"
+                            + " {} stale rows deleted, {} late heartbeats dropped, {} session updates published",
+                    partitions, from, read, Duration.between(status.startedAt(), status.finishedAt()).toSeconds(),
+                    Math.round(status.recordsPerSecond()), written, removed, rebuild.late(), published);
+        }
+
+        // One session.updates record per session the replay opened, changed or closed, none for the rest; marked as
+        // restated state, so rollups don't count their payments and stays a second time
+        private int publishChanges(Map<UUID, ParkingSession> openBefore, List<ParkingSession> open) {
+            int published = 0;
+            Set<UUID> stillOpen = new HashSet<>();
+            for (ParkingSession session : open) {
+                stillOpen.add(session.getId());
+                ParkingSession before = openBefore.get(session.getId());
+                if (before == null || !sameState(before, session)) {
+                    controller.publishSessionState(session);
+                    published++;
+                }
+            }
+            for (ParkingSession before : openBefore.values()) {
+                if (!stillOpen.contains(before.getId())) {
+                    before.setStatus("TERMINATED");
+                    controller.publishSessionState(before);
+                    published++;
+                }
+            }
+            return published;
+        }
+    }
+
+    /**
+     * The records of one partition number of both topics, applied in timestamp order.
+     */
+    private static final class Merge {
+
+        private final ArrayDeque<ConsumerRecord<String, Object>> heartbeats = new ArrayDeque<>();
+        private final ArrayDeque<ConsumerRecord<String, Object>> payments = new ArrayDeque<>();
+
+        void add(ConsumerRecord<String, Object> record) {
+            (HEARTBEATS.equals(record.topic()) ? heartbeats : payments).add(record);
+        }
+
+        /**
+         * Applies records as long as the next one of each topic is known, or that topic has been read to the head.
+         */
+        void drain(SessionRebuild rebuild, boolean heartbeatsDone, boolean paymentsDone) {
+            while (true) {
+                ConsumerRecord<String, Object> heartbeat = heartbeats.peek();
+                ConsumerRecord<String, Object> payment = payments.peek();
+                ConsumerRecord<String, Object> next;
+                if (heartbeat != null && payment != null) {
+                    next = payment.timestamp() < heartbeat.timestamp() ? payments.poll() : heartbeats.poll();
+                } else if (heartbeat != null && paymentsDone) {
+                    next = heartbeats.poll();
+                } else if (payment != null && heartbeatsDone) {
+                    next = payments.poll();
+                } else {
+                    return;
+                }
+                // Undecodable records (null) were dead-lettered when they first arrived
+                if (next.value() instanceof SensorEvent event) {
+                    rebuild.heartbeat(next.partition(), event.getSensorId(), event.getTime());
+                } else if (next.value() instanceof PaymentEvent paymentEvent) {
+                    rebuild.payment(next.partition(), paymentEvent, next.timestamp());
+                }
+            }
+        }
+    }
+
+    private static Map<TopicPartition, Long> positions(Consumer<String, Object> consumer, List<TopicPartition> partitions) {
+        Map<TopicPartition, Long> positions = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            positions.put(partition, consumer.position(partition));
+        }
+        return positions;
+    }
+
+    private static boolean caughtUp(Map<TopicPartition, Long> positions, Map<TopicPartition, Long> target, TopicPartition partition) {
+        return positions.get(partition) >= target.get(partition);
+    }
+
+    private static long behind(Map<TopicPartition, Long> positions, Map<TopicPartition, Long> target) {
+        long behind = 0;
+        for (Map.Entry<TopicPartition, Long> end : target.entrySet()) {
+            behind += Math.max(0, end.getValue() - positions.get(end.getKey()));
+        }
+        return behind;
+    }
+
+    private static boolean sameState(ParkingSession before, ParkingSession after) {
+        return Objects.equals(before.getStatus(), after.getStatus())
+                && Objects.equals(before.getPlate(), after.getPlate())
+                && Objects.equals(before.getPaidUntil(), after.getPaidUntil())
+                && (before.getAmount() == null ? after.getAmount() == null
+                : after.getAmount() != null && before.getAmount().compareTo(after.getAmount()) == 0);
+    }
+}
@@ -4,6 +4,7 @@ import com.smartparking.backend.model.ParkingSession;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -13,6 +14,12 @@ public interface ParkingSessionRepository extends JpaRepository<ParkingSession,
     
     // Find active session for a sensor (where endTime is null)
     Optional<ParkingSession> findBySensorIdAndEndTimeIsNull(String sensorId);
+
+    // Open sessions for a set of sensors, used by the batch listener to resolve a whole poll at once
+    List<ParkingSession> findBySensorIdInAndEndTimeIsNull(Collection<String> sensorIds);
+
+    // All open sessions, used to warm the in-memory active session store
+    List<ParkingSession> findByEndTimeIsNull();
     
     List<ParkingSession> findByStatus(String status);
 }
@@ -0,0 +1,170 @@
+package com.smartparking.backend.rollup;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed-size ring of time buckets of one width (a minute, an hour, a day), one column per measure.
+ *
+ * The bucket of a time is {@code time / width}, stored at slot {@code bucket % capacity}; a slot
+ * still holding an older bucket is cleared when the first event of its new bucket arrives. Events
+ * for a bucket that already fell out of the ring are ignored. Memory is fixed at construction:
+ * {@code capacity} slots of nine longs.
+ */
+public class RollupSeries {
+
+    /**
+     * One bucket; {@code averageStaySeconds} is null when no session ended in it.
+     */
+    public record Bucket(Instant start, long arrivals, long departures, long payments, BigDecimal revenue,
+                         Double averageStaySeconds, long occupiedMax, long occupiedLast) {
+    }
+
+    private final String name;
+    private final long widthMillis;
+    private final int capacity;
+
+    // Start of the bucket held by each slot; -1 = never used
+    private final long[] starts;
+    private final long[] arrivals;
+    private final long[] departures;
+    private final long[] payments;
+    private final long[] revenueCents;
+    private final long[] stayMillis;
+    private final long[] stays;
+    private final long[] occupiedMax;
+    private final long[] occupiedLast;
+    private long latestStart = -1;
+
+    public RollupSeries(String name, long widthMillis, int capacity) {
+        this.name = name;
+        this.widthMillis = widthMillis;
+        this.capacity = capacity;
+        this.starts = new long[capacity];
+        Arrays.fill(starts, -1);
+        this.arrivals = new long[capacity];
+        this.departures = new long[capacity];
+        this.payments = new long[capacity];
+        this.revenueCents = new long[capacity];
+        this.stayMillis = new long[capacity];
+        this.stays = new long[capacity];
+        this.occupiedMax = new long[capacity];
+        this.occupiedLast = new long[capacity];
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long widthMillis() {
+        return widthMillis;
+    }
+
+    public synchronized void arrival(long time, int occupied) {
+        int slot = slot(time);
+        if (slot >= 0) {
+            arrivals[slot]++;
+            occupancy(slot, occupied);
+        }
+    }
+
+    public synchronized void departure(long time, Long startTime, int occupied) {
+        int slot = slot(time);
+        if (slot >= 0) {
+            departures[slot]++;
+            // Stays are averaged over the departures that know their start
+            if (startTime != null) {
+                stayMillis[slot] += time - startTime;
+                stays[slot]++;
+            }
+            occupancy(slot, occupied);
+        }
+    }
+
+    public synchronized void payment(long time, long cents, int occupied) {
+        int slot = slot(time);
+        if (slot >= 0) {
+            payments[slot]++;
+            revenueCents[slot] += cents;
+            occupancy(slot, occupied);
+        }
+    }
+
+    /**
+     * The bucket containing {@code time}, empty if nothing was recorded in it (or it fell out of the ring).
+     */
+    public synchronized Bucket bucketAt(long time) {
+        long start = Math.floorDiv(time, widthMillis) * widthMillis;
+        int slot = (int) Math.floorMod(start / widthMillis, capacity);
+        return starts[slot] == start ? bucket(slot) : empty(start, 0);
+    }
+
+    /**
+     * The buckets from the one containing {@code from} to the one containing {@code to}, oldest first,
+     * limited to what the ring still holds. Buckets without events carry the occupancy of the
+     * previous bucket forward.
+     */
+    public synchronized List<Bucket> range(long from, long to) {
+        long first = Math.floorDiv(from, widthMillis) * widthMillis;
+        long last = Math.floorDiv(to, widthMillis) * widthMillis;
+        if (latestStart >= 0) {
+            first = Math.max(first, latestStart - (capacity - 1) * widthMillis);
+            last = Math.min(last, latestStart);
+        }
+        List<Bucket> result = new ArrayList<>();
+        long occupied = 0;
+        for (long start = first; start <= last && latestStart >= 0; start += widthMillis) {
+            int slot = (int) Math.floorMod(start / widthMillis, capacity);
+            if (starts[slot] == start) {
+                Bucket bucket = bucket(slot);
+                occupied = bucket.occupiedLast();
+                result.add(bucket);
+            } else {
+                result.add(empty(start, occupied));
+            }
+        }
+        return result;
+    }
+
+    private int slot(long time) {
+        long start = Math.floorDiv(time, widthMillis) * widthMillis;
+        if (latestStart >= 0 && start <= latestStart - capacity * widthMillis) {
+            return -1;
+        }
+        int slot = (int) Math.floorMod(start / widthMillis, capacity);
+        if (starts[slot] != start) {
+            if (starts[slot] > start) {
+                return -1;
+            }
+            starts[slot] = start;
+            arrivals[slot] = 0;
+            departures[slot] = 0;
+            payments[slot] = 0;
+            revenueCents[slot] = 0;
+            stayMillis[slot] = 0;
+            stays[slot] = 0;
+            occupiedMax[slot] = 0;
+            occupiedLast[slot] = 0;
+        }
+        latestStart = Math.max(latestStart, start);
+        return slot;
+    }
+
+    private void occupancy(int slot, int occupied) {
+        occupiedLast[slot] = occupied;
+        occupiedMax[slot] = Math.max(occupiedMax[slot], occupied);
+    }
+
+    private Bucket bucket(int slot) {
+        Double averageStay = stays[slot] == 0 ? null : stayMillis[slot] / 1000.0 / stays[slot];
+        return new Bucket(Instant.ofEpochMilli(starts[slot]), arrivals[slot], departures[slot], payments[slot],
+                BigDecimal.valueOf(revenueCents[slot], 2), averageStay, occupiedMax[slot], occupiedLast[slot]);
+    }
+
+    private static Bucket empty(long start, long occupied) {
+        return new Bucket(Instant.ofEpochMilli(start), 0, 0, 0, BigDecimal.ZERO.setScale(2), null, occupied, occupied);
+    }
+}
@@ -0,0 +1,95 @@
+package com.smartparking.backend.rollup;
+
+import com.smartparking.model.SessionUpdateEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Incremental business rollups (arrivals, departures, payments, revenue, average stay, occupancy)
+ * in minute, hour and day buckets, so dashboards never aggregate {@code parking_sessions}.
+ *
+ * Fed from the same {@code session.updates} stream as the occupancy index, so every replica holds
+ * the rollups of all spots. Each resolution is a fixed-size {@link RollupSeries}; the history starts
+ * when the replica starts. Buckets are aligned to UTC. Updates that only restate a session
+ * ({@code ParkingController#STATE_HEADER}, e.g. published after a replay) are not recorded.
+ *
+ * The last completed bucket of each resolution is also exposed as gauges
+ * ({@code parking.rollup.*{window=1m|1h|1d}}); current occupancy is {@code parking.occupancy.occupied}.
+ */
+@Component
+public class SessionRollups {
+
+    private final Map<String, RollupSeries> series;
+
+    public SessionRollups(MeterRegistry meterRegistry,
+                          @Value("${parking.rollups.minute-buckets:1440}") int minuteBuckets,
+                          @Value("${parking.rollups.hour-buckets:168}") int hourBuckets,
+                          @Value("${parking.rollups.day-buckets:90}") int dayBuckets) {
+        this.series = Map.of(
+                "1m", new RollupSeries("1m", 60_000L, minuteBuckets),
+                "1h", new RollupSeries("1h", 3_600_000L, hourBuckets),
+                "1d", new RollupSeries("1d", 86_400_000L, dayBuckets));
+
+        for (RollupSeries rollup : series.values()) {
+            gauge(meterRegistry, rollup, "parking.rollup.arrivals", "Sessions started in the last completed window",
+                    RollupSeries.Bucket::arrivals);
+            gauge(meterRegistry, rollup, "parking.rollup.departures", "Sessions ended in the last completed window",
+                    RollupSeries.Bucket::departures);
+            gauge(meterRegistry, rollup, "parking.rollup.payments", "Payments applied in the last completed window",
+                    RollupSeries.Bucket::payments);
+            gauge(meterRegistry, rollup, "parking.rollup.revenue", "Revenue (EUR) of the last completed window",
+                    bucket -> bucket.revenue().doubleValue());
+            gauge(meterRegistry, rollup, "parking.rollup.stay.average", "Average stay (s) of the sessions ended in the last completed window",
+                    bucket -> bucket.averageStaySeconds() != null ? bucket.averageStaySeconds() : Double.NaN);
+        }
+    }
+
+    private static void gauge(MeterRegistry meterRegistry, RollupSeries rollup, String name, String description,
+                              ToDoubleFunction<RollupSeries.Bucket> value) {
+        Gauge.builder(name, rollup, r -> value.applyAsDouble(r.bucketAt(System.currentTimeMillis() - r.widthMillis())))
+                .tag("window", rollup.name())
+                .description(description)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records a session update.
+     *
+     * @param spotChanged whether the update occupied or freed its spot (see {@code OccupancyIndex#apply})
+     * @param occupied    occupied spots after the update
+     */
+    public void apply(SessionUpdateEvent update, boolean spotChanged, int occupied) {
+        long time = update.getTimestamp();
+        boolean terminated = "TERMINATED".equals(update.getStatus());
+        // Each PAID update is one applied payment, carrying that payment's amount
+        boolean paid = "PAID".equals(update.getStatus()) && update.getAmount() != null;
+        long cents = paid ? update.getAmount().movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact() : 0;
+        for (RollupSeries rollup : series.values()) {
+            if (spotChanged && terminated) {
+                rollup.departure(time, update.getStartTime(), occupied);
+            } else if (spotChanged) {
+                rollup.arrival(time, occupied);
+            }
+            if (paid) {
+                rollup.payment(time, cents, occupied);
+            }
+        }
+    }
+
+    /**
+     * The buckets of a window ({@code 1m}, {@code 1h} or {@code 1d}) between two epoch-millis times;
+     * empty if the window is unknown.
+     */
+    public Optional<List<RollupSeries.Bucket>> range(String window, long from, long to) {
+        RollupSeries rollup = series.get(window);
+        return rollup == null ? Optional.empty() : Optional.of(rollup.range(from, to));
+    }
+}
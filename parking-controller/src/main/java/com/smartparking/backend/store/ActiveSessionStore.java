@@ -0,0 +1,418 @@
+package com.smartparking.backend.store;
+
+import com.smartparking.backend.model.ParkingSession;
+import com.smartparking.backend.repository.ParkingSessionRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resident copy of every open parking session, keyed by sensorId.
+ *
+ * Heartbeats only bump {@code lastEventTime} in memory and mark the session dirty;
+ * dirty timestamps are written back to Postgres in periodic JDBC batches. All other
+ * transitions (creation, payment, expiry, termination) are written through immediately;
+ * payment and expiry are single guarded {@code UPDATE ... RETURNING} statements, so they never
+ * load the row first and can't lose a concurrent write of another column.
+ *
+ * Inactivity timeouts are tracked on a {@link TimingWheel}, so finding the sessions to terminate
+ * costs in proportion to the sessions that are about to expire, not to the size of the table.
+ *
+ * Each replica only holds the sessions of the sensors on its assigned partitions of the input topics
+ * ({@link #loadPartitions}, {@link #dropPartitions}); dropped sessions simply fall off the wheel.
+ */
+@Component
+public class ActiveSessionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActiveSessionStore.class);
+
+    // start_time is the partition key of parking_sessions: it lets Postgres go straight to the session's partition
+    private static final String FLUSH_SQL = "UPDATE parking_sessions SET last_event_time = ? WHERE id = ? AND start_time = ? AND end_time IS NULL";
+    private static final String TERMINATE_SQL = "UPDATE parking_sessions SET end_time = ?, status = 'TERMINATED', last_event_time = ? WHERE id = ? AND start_time = ? AND end_time IS NULL";
+
+    // Guarded single-statement transitions; the open-session partial index serves the sensor_id lookup
+    private static final String RETURNING = " RETURNING id, sensor_id, plate, start_time, end_time, status, amount, alerted, paid_until, last_event_time";
+    private static final String PAY_SQL = "UPDATE parking_sessions SET status = 'PAID', plate = ?, amount = ?,"
+            + " paid_until = start_time + make_interval(mins => CAST(? AS integer)) WHERE sensor_id = ? AND end_time IS NULL" + RETURNING;
+    private static final String PAY_UNTIMED_SQL = "UPDATE parking_sessions SET status = 'PAID', plate = ?, amount = ?"
+            + " WHERE sensor_id = ? AND end_time IS NULL" + RETURNING;
+    private static final String EXPIRE_SQL = "UPDATE parking_sessions SET status = 'UNPAID'"
+            + " WHERE sensor_id = ? AND end_time IS NULL AND status = 'PAID' AND paid_until <= ?" + RETURNING;
+
+    // Open sessions of some input partitions; rows without a sensor_hash (written before it existed) are sorted out by sensor_id
+    private static final String OPEN_IN_PARTITIONS_SQL = "SELECT id, sensor_id, plate, start_time, end_time, status, amount, alerted,"
+            + " paid_until, last_event_time FROM parking_sessions"
+            + " WHERE end_time IS NULL AND (sensor_hash % ? = ANY(?) OR sensor_hash IS NULL)";
+
+    private static final RowMapper<ParkingSession> SESSION_ROW_MAPPER = (rs, rowNum) -> {
+        ParkingSession session = new ParkingSession();
+        session.setId(rs.getObject("id", UUID.class));
+        session.setSensorId(rs.getString("sensor_id"));
+        session.setPlate(rs.getString("plate"));
+        session.setStartTime(rs.getObject("start_time", LocalDateTime.class));
+        session.setEndTime(rs.getObject("end_time", LocalDateTime.class));
+        session.setStatus(rs.getString("status"));
+        session.setAmount(rs.getBigDecimal("amount"));
+        session.setAlerted(rs.getBoolean("alerted"));
+        session.setPaidUntil(rs.getObject("paid_until", LocalDateTime.class));
+        session.setLastEventTime(rs.getObject("last_event_time", LocalDateTime.class));
+        return session;
+    };
+
+    private final ParkingSessionRepository sessionRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, ParkingSession> sessions = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // Wall-clock time of the oldest heartbeat not yet flushed (0 = nothing dirty)
+    private final AtomicLong oldestDirtyAt = new AtomicLong();
+
+    private final long inactivityTimeoutMillis;
+    private final TimingWheel timeouts;
+
+    private final Timer flushLag;
+    private final DistributionSummary flushBatchSize;
+
+    public ActiveSessionStore(ParkingSessionRepository sessionRepository,
+                              JdbcTemplate jdbcTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${parking.termination.timeout-ms:30000}") long inactivityTimeoutMillis,
+                              @Value("${parking.termination.precision-ms:1000}") long precisionMillis) {
+        this.sessionRepository = sessionRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.inactivityTimeoutMillis = inactivityTimeoutMillis;
+        this.timeouts = new TimingWheel(precisionMillis, 512, System.currentTimeMillis());
+
+        this.flushLag = Timer.builder("parking.store.flush.lag")
+                .description("Age of the oldest unflushed heartbeat when a flush runs")
+                .register(meterRegistry);
+        this.flushBatchSize = DistributionSummary.builder("parking.store.flush.batch.size")
+                .description("Number of lastEventTime updates written per flush")
+                .register(meterRegistry);
+        Gauge.builder("parking.store.active.sessions", sessions, Map::size)
+                .description("Open sessions held in memory")
+                .register(meterRegistry);
+        Gauge.builder("parking.store.dirty.sessions", dirty, Set::size)
+                .description("Sessions with an unflushed lastEventTime")
+                .register(meterRegistry);
+        Gauge.builder("parking.store.armed.timeouts", timeouts, TimingWheel::size)
+                .description("Sessions with an inactivity deadline on the timing wheel")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Loads the open sessions of sensors on newly assigned input partitions; only those rows are read.
+     */
+    public void loadPartitions(Set<Integer> assigned, int partitionCount) {
+        if (assigned.isEmpty()) {
+            return;
+        }
+        List<ParkingSession> open = jdbcTemplate.query(OPEN_IN_PARTITIONS_SQL, ps -> {
+            ps.setInt(1, partitionCount);
+            ps.setArray(2, ps.getConnection().createArrayOf("integer", assigned.toArray()));
+        }, SESSION_ROW_MAPPER);
+        int loaded = 0;
+        for (ParkingSession session : open) {
+            if (assigned.contains(SensorPartitioner.partitionFor(session.getSensorId(), partitionCount))) {
+                cache(session);
+                loaded++;
+            }
+        }
+        logger.info(">>> Active session store loaded {} open sessions of partitions {}", loaded, assigned);
+    }
+
+    /**
+     * Writes back pending heartbeats and forgets the sessions of partitions this replica no longer owns.
+     */
+    public void dropPartitions(Set<Integer> revoked, int partitionCount) {
+        if (revoked.isEmpty()) {
+            return;
+        }
+        flush();
+        sessions.keySet().removeIf(sensorId -> revoked.contains(SensorPartitioner.partitionFor(sensorId, partitionCount)));
+        dirty.retainAll(sessions.keySet());
+    }
+
+    public Optional<ParkingSession> find(String sensorId) {
+        return Optional.ofNullable(sessions.get(sensorId));
+    }
+
+    /**
+     * Looks up the open session for a sensor, falling back to the database once on a miss.
+     * Only needed the first time a sensor is seen; afterwards the store is authoritative.
+     */
+    public Optional<ParkingSession> findOrLoad(String sensorId) {
+        ParkingSession session = sessions.get(sensorId);
+        if (session != null) {
+            return Optional.of(session);
+        }
+        Optional<ParkingSession> loaded = sessionRepository.findBySensorIdAndEndTimeIsNull(sensorId);
+        loaded.ifPresent(this::cache);
+        return loaded.map(s -> sessions.get(sensorId));
+    }
+
+    /**
+     * Batch form of {@link #findOrLoad(String)}: memory hits are served directly and all misses
+     * are resolved with one {@code sensor_id IN (...)} query. Sensors without an open session
+     * are absent from the result.
+     */
+    public Map<String, ParkingSession> findOrLoadAll(Collection<String> sensorIds) {
+        Map<String, ParkingSession> result = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String sensorId : sensorIds) {
+            ParkingSession session = sessions.get(sensorId);
+            if (session != null) {
+                result.put(sensorId, session);
+            } else {
+                misses.add(sensorId);
+            }
+        }
+        if (!misses.isEmpty()) {
+            for (ParkingSession loaded : sessionRepository.findBySensorIdInAndEndTimeIsNull(misses)) {
+                cache(loaded);
+                result.put(loaded.getSensorId(), sessions.get(loaded.getSensorId()));
+            }
+        }
+        return result;
+    }
+
+    public Collection<ParkingSession> all() {
+        return sessions.values();
+    }
+
+    /**
+     * Records a heartbeat. Memory only; persisted by the next flush. An older heartbeat (event time,
+     * out of order) does not move lastEventTime back.
+     */
+    public void touch(ParkingSession session, LocalDateTime eventTime) {
+        if (session.getLastEventTime() != null && eventTime.isBefore(session.getLastEventTime())) {
+            return;
+        }
+        session.setLastEventTime(eventTime);
+        dirty.add(session.getSensorId());
+        oldestDirtyAt.compareAndSet(0, System.currentTimeMillis());
+    }
+
+    public ParkingSession create(ParkingSession session) {
+        session.setSensorHash(SensorPartitioner.hash(session.getSensorId()));
+        ParkingSession saved = sessionRepository.save(session);
+        sessions.put(saved.getSensorId(), saved);
+        armTimeout(saved);
+        return saved;
+    }
+
+    public List<ParkingSession> createAll(List<ParkingSession> newSessions) {
+        newSessions.forEach(session -> session.setSensorHash(SensorPartitioner.hash(session.getSensorId())));
+        List<ParkingSession> saved = sessionRepository.saveAll(newSessions);
+        saved.forEach(session -> {
+            sessions.put(session.getSensorId(), session);
+            armTimeout(session);
+        });
+        return saved;
+    }
+
+    /**
+     * Marks the open session of a sensor PAID with one guarded UPDATE ... RETURNING.
+     * {@code paidUntil} becomes {@code startTime + minutesPaid} (unchanged when {@code minutesPaid} is null).
+     */
+    public Optional<ParkingSession> markPaid(String sensorId, String plate, BigDecimal amount, Long minutesPaid) {
+        return minutesPaid != null
+                ? transition(sensorId, PAY_SQL, plate, amount, Math.toIntExact(minutesPaid), sensorId)
+                : transition(sensorId, PAY_UNTIMED_SQL, plate, amount, sensorId);
+    }
+
+    /**
+     * Reverts the open session of a sensor to UNPAID if it is PAID and its paid time ran out by {@code now}.
+     */
+    public Optional<ParkingSession> markExpired(String sensorId, LocalDateTime now) {
+        return transition(sensorId, EXPIRE_SQL, sensorId, Timestamp.valueOf(now));
+    }
+
+    /**
+     * Runs a transition statement and caches the row it returns. The row is the database's current
+     * version, so columns owned by other services (e.g. {@code alerted}) are never overwritten or
+     * stale; only the in-memory lastEventTime (not flushed yet) is carried over.
+     * Empty when the guard did not match (no open session, or not in the expected state).
+     */
+    private Optional<ParkingSession> transition(String sensorId, String sql, Object... args) {
+        List<ParkingSession> updated = jdbcTemplate.query(sql, SESSION_ROW_MAPPER, args);
+        if (updated.isEmpty()) {
+            return Optional.empty();
+        }
+
+        ParkingSession session = updated.get(0);
+        ParkingSession cached = sessions.get(sensorId);
+        if (cached != null && cached.getLastEventTime() != null) {
+            session.setLastEventTime(cached.getLastEventTime());
+        }
+        sessions.put(sensorId, session);
+        armTimeout(session);
+        return Optional.of(session);
+    }
+
+    /**
+     * Closes every session whose last heartbeat is older than the inactivity timeout, using one
+     * batched UPDATE. Only sessions on the elapsed ticks of the timing wheel are examined.
+     * A session ends at its deadline (last heartbeat + timeout), however late the expiry is noticed.
+     *
+     * @return the sessions that were terminated (already evicted from the store)
+     */
+    public List<ParkingSession> terminateExpired(LocalDateTime now) {
+        List<String> expiredSensors = timeouts.advance(toEpochMillis(now), this::currentDeadline);
+        if (expiredSensors.isEmpty()) {
+            return List.of();
+        }
+        List<ParkingSession> candidates = new ArrayList<>(expiredSensors.size());
+        for (String sensorId : expiredSensors) {
+            ParkingSession session = sessions.get(sensorId);
+            if (session != null) {
+                candidates.add(session);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+        try {
+            return terminate(candidates);
+        } catch (RuntimeException e) {
+            // Keep the sessions and retry on the next tick
+            candidates.forEach(this::armTimeout);
+            logger.error(">>> Failed to terminate {} expired sessions", candidates.size(), e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Closes the session if a heartbeat at {@code heartbeatTime} comes after its inactivity deadline:
+     * that car left and the heartbeat is the next one's. The timeout tick would have closed it in
+     * time when live; this covers a backlog processed faster than the tick.
+     *
+     * @return the session if it was terminated
+     * @throws org.springframework.dao.DataAccessException if it could not be written; the session stays open
+     */
+    public Optional<ParkingSession> terminateIfExpired(ParkingSession session, LocalDateTime heartbeatTime) {
+        if (session.getLastEventTime() == null
+                || toEpochMillis(heartbeatTime) <= toEpochMillis(session.getLastEventTime()) + inactivityTimeoutMillis) {
+            return Optional.empty();
+        }
+        return terminate(List.of(session)).stream().findFirst();
+    }
+
+    private List<ParkingSession> terminate(List<ParkingSession> candidates) {
+        List<LocalDateTime> endTimes = new ArrayList<>(candidates.size());
+        List<Object[]> batch = new ArrayList<>(candidates.size());
+        for (ParkingSession session : candidates) {
+            LocalDateTime endTime = session.getLastEventTime().plus(inactivityTimeoutMillis, ChronoUnit.MILLIS);
+            endTimes.add(endTime);
+            batch.add(new Object[]{Timestamp.valueOf(endTime), Timestamp.valueOf(session.getLastEventTime()), session.getId(),
+                    Timestamp.valueOf(session.getStartTime())});
+        }
+
+        int[] updated = jdbcTemplate.batchUpdate(TERMINATE_SQL, batch);
+
+        List<ParkingSession> terminated = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            ParkingSession session = candidates.get(i);
+            sessions.remove(session.getSensorId(), session);
+            dirty.remove(session.getSensorId());
+            // 0 rows = already closed elsewhere; drop it from memory without announcing it again
+            if (updated[i] != 0) {
+                session.setEndTime(endTimes.get(i));
+                session.setStatus("TERMINATED");
+                terminated.add(session);
+            }
+        }
+        return terminated;
+    }
+
+    private void cache(ParkingSession session) {
+        ParkingSession previous = sessions.putIfAbsent(session.getSensorId(), session);
+        if (previous == null) {
+            armTimeout(session);
+        }
+    }
+
+    private void armTimeout(ParkingSession session) {
+        if (session.getLastEventTime() != null) {
+            timeouts.schedule(session.getSensorId(), toEpochMillis(session.getLastEventTime()) + inactivityTimeoutMillis);
+        }
+    }
+
+    // Deadline as of the latest heartbeat; negative once the session left the store
+    private long currentDeadline(String sensorId) {
+        ParkingSession session = sessions.get(sensorId);
+        if (session == null || session.getLastEventTime() == null) {
+            return -1;
+        }
+        return toEpochMillis(session.getLastEventTime()) + inactivityTimeoutMillis;
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Scheduled(fixedDelayString = "${parking.store.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        long dirtySince = oldestDirtyAt.getAndSet(0);
+
+        List<String> flushed = new ArrayList<>(dirty.size());
+        List<Object[]> batch = new ArrayList<>(dirty.size());
+        Iterator<String> it = dirty.iterator();
+        while (it.hasNext()) {
+            String sensorId = it.next();
+            it.remove();
+            ParkingSession session = sessions.get(sensorId);
+            if (session != null && session.getLastEventTime() != null) {
+                flushed.add(sensorId);
+                batch.add(new Object[]{Timestamp.valueOf(session.getLastEventTime()), session.getId(), Timestamp.valueOf(session.getStartTime())});
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, batch);
+        } catch (Exception e) {
+            // Re-mark so the next flush retries; heartbeats keep flowing in memory meanwhile
+            dirty.addAll(flushed);
+            oldestDirtyAt.compareAndSet(0, dirtySince);
+            logger.error(">>> Failed to flush {} heartbeat updates", batch.size(), e);
+            return;
+        }
+
+        flushBatchSize.record(batch.size());
+        if (dirtySince > 0) {
+            flushLag.record(System.currentTimeMillis() - dirtySince, TimeUnit.MILLISECONDS);
+        }
+    }
+}
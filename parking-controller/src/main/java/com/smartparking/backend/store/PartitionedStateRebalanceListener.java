@@ -0,0 +1,145 @@
+package com.smartparking.backend.store;
+
+import com.smartparking.backend.time.EventTimeClock;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the controller's per-partition state in line with the partitions its consumers own.
+ *
+ * On revocation dirty heartbeats and changelog writes are flushed, so the next owner starts from
+ * current data. The state itself is only dropped once the new assignment is known: eager rebalances
+ * revoke everything and usually hand most partitions straight back, and those keep their state.
+ * Partitions that are new to this replica are rebuilt from the changelogs and the database, and
+ * hold the controller's event-time clock until their first heartbeat gives them a watermark.
+ *
+ * A replica may run several consumers ({@code parking.consumer.concurrency}); the stores are shared,
+ * so a partition is only dropped when no consumer of the replica owns it any more and only loaded
+ * when none owned it before. Consumers report their assignments one at a time, in any order; a
+ * partition moving between two consumers of the same replica keeps its state either way.
+ */
+@Component
+public class PartitionedStateRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedStateRebalanceListener.class);
+
+    // All input topics have this topic's partition count
+    private static final String REFERENCE_TOPIC = "parking-events";
+
+    /**
+     * The partitions owned by this replica and the partition count of the input topics. The
+     * generation changes with every assignment or loss seen by one of its consumers.
+     */
+    public record Ownership(Set<Integer> partitions, int partitionCount, long generation) {
+    }
+
+    private final ActiveSessionStore sessionStore;
+    private final PendingSessionStore pendingSessions;
+    private final PaymentJoinBuffer earlyPayments;
+    private final EventTimeClock clock;
+
+    // Partition numbers owned by each consumer of this replica
+    private final Map<Consumer<?, ?>, Set<Integer>> owned = new HashMap<>();
+    private int partitionCount;
+    private long generation;
+
+    public PartitionedStateRebalanceListener(ActiveSessionStore sessionStore, PendingSessionStore pendingSessions,
+                                             PaymentJoinBuffer earlyPayments, @Qualifier("controllerClock") EventTimeClock clock) {
+        this.sessionStore = sessionStore;
+        this.pendingSessions = pendingSessions;
+        this.earlyPayments = earlyPayments;
+        this.clock = clock;
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!partitions.isEmpty()) {
+            sessionStore.flush();
+            pendingSessions.flushChangelog();
+            earlyPayments.flushChangelog();
+        }
+    }
+
+    @Override
+    public synchronized void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        // Already owned by someone else: nothing to hand over, just forget them
+        generation++;
+        Set<Integer> lost = partitionNumbers(partitions);
+        Set<Integer> remaining = new HashSet<>(owned.getOrDefault(consumer, Set.of()));
+        remaining.removeAll(lost);
+        owned.put(consumer, remaining);
+        lost.removeAll(ownedByReplica());
+        drop(lost);
+    }
+
+    @Override
+    public synchronized void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        // The full assignment, whether the protocol is eager (all partitions) or cooperative (only the added ones)
+        generation++;
+        Set<Integer> current = partitionNumbers(consumer.assignment());
+        int count = consumer.partitionsFor(REFERENCE_TOPIC).size();
+
+        Set<Integer> revoked;
+        Set<Integer> added = new HashSet<>(current);
+        if (count == partitionCount) {
+            Set<Integer> before = ownedByReplica();
+            revoked = new HashSet<>(owned.getOrDefault(consumer, Set.of()));
+            owned.put(consumer, current);
+            revoked.removeAll(ownedByReplica());
+            added.removeAll(before);
+        } else {
+            // Partitions were added to the topics, every key may have moved: rebuild everything.
+            // The replica's other consumers then find their partitions unowned and load them too
+            revoked = ownedByReplica();
+            owned.clear();
+            owned.put(consumer, current);
+        }
+
+        drop(revoked);
+        partitionCount = count;
+        pendingSessions.restore(added);
+        earlyPayments.restore(added);
+        sessionStore.loadPartitions(added, count);
+        clock.assigned(added);
+        logger.info(">>> Owning partitions {} of {} (dropped {}, loaded {})", current, count, revoked, added);
+    }
+
+    public synchronized Ownership ownership() {
+        return new Ownership(Set.copyOf(ownedByReplica()), partitionCount, generation);
+    }
+
+    private Set<Integer> ownedByReplica() {
+        Set<Integer> all = new HashSet<>();
+        owned.values().forEach(all::addAll);
+        return all;
+    }
+
+    private void drop(Set<Integer> partitions) {
+        clock.revoked(partitions);
+        if (partitions.isEmpty() || partitionCount == 0) {
+            return;
+        }
+        pendingSessions.drop(partitions);
+        earlyPayments.drop(partitions);
+        sessionStore.dropPartitions(partitions, partitionCount);
+    }
+
+    private static Set<Integer> partitionNumbers(Collection<TopicPartition> partitions) {
+        Set<Integer> numbers = new HashSet<>();
+        for (TopicPartition partition : partitions) {
+            numbers.add(partition.partition());
+        }
+        return numbers;
+    }
+}
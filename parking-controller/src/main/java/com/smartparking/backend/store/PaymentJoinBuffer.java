@@ -0,0 +1,270 @@
+package com.smartparking.backend.store;
+
+import com.smartparking.codec.EventDeserializer;
+import com.smartparking.model.PaymentEvent;
+import com.smartparking.tracing.TraceContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Payments that arrived before the session of their spot existed, waiting to be joined with it.
+ *
+ * Drivers pay right after parking, usually inside the 30 s confirmation window, so the payment is
+ * often consumed before the session it belongs to is created. Such a payment is held here, keyed by
+ * spot (a newer payment of the same spot replaces the held one), and applied as soon as the session
+ * is created. Entries are kept in arrival order: those older than {@code parking.join.ttl-ms} are
+ * expired from the head, and once {@code parking.join.max-entries} is reached the oldest is dropped.
+ *
+ * Like the other per-partition state the buffer only holds payments of partitions this replica
+ * owns, and every hold and removal is mirrored to a changelog topic (key = spot, value = the payment
+ * with its trace headers, timestamp = the time it was held, tombstone = taken or dropped) on the same
+ * partition number as the payment. The payment's offset is committed once it is held, so the changelog
+ * is what brings it back: when a partition is assigned (after a restart or from another replica) the
+ * payments it held are rebuilt from the changelog records of the last {@code parking.join.ttl-ms},
+ * since anything older has expired anyway. Revoked partitions are only dropped locally, without
+ * tombstones, so their next owner picks the payments up.
+ */
+@Component
+public class PaymentJoinBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentJoinBuffer.class);
+
+    private static final Duration RESTORE_POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final byte[] PAYMENT_TOPIC = "payment-events".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * A held payment with the trace of its record and the wall-clock time it was held at.
+     */
+    public record HeldPayment(PaymentEvent payment, int partition, TraceContext trace, long heldAt) {
+    }
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ConsumerFactory<String, Object> changelogConsumerFactory;
+    private final String changelogTopic;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final Counter held;
+    private final Counter hits;
+    private final Counter ttlExpirations;
+    private final Counter sizeExpirations;
+    private final Counter revokedExpirations;
+
+    private final LinkedHashMap<String, HeldPayment> entries = new LinkedHashMap<>(256) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HeldPayment> eldest) {
+            if (size() > maxEntries) {
+                logger.warn(">>> Payment for {} dropped: join buffer full", eldest.getKey());
+                sizeExpirations.increment();
+                log(eldest.getValue().partition(), eldest.getKey(), null);
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public PaymentJoinBuffer(KafkaTemplate<String, Object> kafkaTemplate,
+                             @Qualifier("joinChangelogConsumerFactory") ConsumerFactory<String, Object> changelogConsumerFactory,
+                             MeterRegistry meterRegistry,
+                             @Value("${parking.join.changelog-topic:parking-controller.join-changelog}") String changelogTopic,
+                             @Value("${parking.join.ttl-ms:120000}") long ttlMillis,
+                             @Value("${parking.join.max-entries:100000}") int maxEntries) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.changelogConsumerFactory = changelogConsumerFactory;
+        this.changelogTopic = changelogTopic;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+
+        this.held = Counter.builder("parking.join.held")
+                .description("Payments held because their spot had no open session yet")
+                .register(meterRegistry);
+        this.hits = Counter.builder("parking.join.hits")
+                .description("Held payments applied to the session created for their spot")
+                .register(meterRegistry);
+        this.ttlExpirations = Counter.builder("parking.join.expirations")
+                .tag("cause", "ttl")
+                .description("Held payments dropped without a session to apply them to")
+                .register(meterRegistry);
+        this.sizeExpirations = Counter.builder("parking.join.expirations")
+                .tag("cause", "size")
+                .description("Held payments dropped without a session to apply them to")
+                .register(meterRegistry);
+        this.revokedExpirations = Counter.builder("parking.join.expirations")
+                .tag("cause", "revoked")
+                .description("Held payments dropped without a session to apply them to")
+                .register(meterRegistry);
+        Gauge.builder("parking.join.buffered", this, PaymentJoinBuffer::size)
+                .description("Payments currently waiting for their session")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Holds a payment of a spot without an open session, replacing any payment held for it.
+     */
+    public synchronized void hold(PaymentEvent payment, int partition, TraceContext trace, long now) {
+        // Removed first, so the replacement moves to the tail of the arrival order
+        entries.remove(payment.getParkingSpot());
+        HeldPayment heldPayment = new HeldPayment(payment, partition, trace, now);
+        entries.put(payment.getParkingSpot(), heldPayment);
+        held.increment();
+        log(partition, payment.getParkingSpot(), heldPayment);
+    }
+
+    /**
+     * Removes and returns the payment held for a spot, or null if there is none that is still live.
+     */
+    public synchronized HeldPayment take(String parkingSpot, long now) {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        HeldPayment payment = entries.remove(parkingSpot);
+        if (payment == null) {
+            return null;
+        }
+        log(payment.partition(), parkingSpot, null);
+        if (now - payment.heldAt() > ttlMillis) {
+            ttlExpirations.increment();
+            return null;
+        }
+        hits.increment();
+        return payment;
+    }
+
+    /**
+     * Drops the payments of partitions this replica no longer owns; they stay in the changelog for the next owner.
+     */
+    public synchronized void drop(Collection<Integer> revoked) {
+        int before = entries.size();
+        entries.values().removeIf(payment -> revoked.contains(payment.partition()));
+        revokedExpirations.increment(before - entries.size());
+    }
+
+    /**
+     * Discards the payments held for some partitions, also from the changelog (e.g. before a replay
+     * holds the payments it rebuilt instead).
+     */
+    public synchronized void clear(Collection<Integer> partitions) {
+        Iterator<Map.Entry<String, HeldPayment>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, HeldPayment> entry = it.next();
+            if (partitions.contains(entry.getValue().partition())) {
+                it.remove();
+                log(entry.getValue().partition(), entry.getKey(), null);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the payments held for newly assigned partitions from their changelog records of the last TTL.
+     */
+    public void restore(Collection<Integer> assigned) {
+        if (assigned.isEmpty()) {
+            return;
+        }
+        long since = System.currentTimeMillis() - ttlMillis;
+        List<ConsumerRecord<String, Object>> records = new ArrayList<>();
+        try (Consumer<String, Object> consumer = changelogConsumerFactory.createConsumer()) {
+            Map<TopicPartition, Long> timestamps = new HashMap<>();
+            assigned.forEach(partition -> timestamps.put(new TopicPartition(changelogTopic, partition), since));
+            consumer.assign(timestamps.keySet());
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(timestamps.keySet());
+            consumer.offsetsForTimes(timestamps).forEach((changelogPartition, offset) ->
+                    consumer.seek(changelogPartition, offset != null ? offset.offset() : endOffsets.get(changelogPartition)));
+
+            while (!caughtUp(consumer, endOffsets)) {
+                consumer.poll(RESTORE_POLL_TIMEOUT).forEach(records::add);
+            }
+        }
+        // Merged by hold time, so the arrival order (and the TTL sweep) spans the partitions
+        records.sort(Comparator.comparingLong(ConsumerRecord::timestamp));
+        synchronized (this) {
+            for (ConsumerRecord<String, Object> record : records) {
+                entries.remove(record.key());
+                if (record.value() instanceof PaymentEvent payment) {
+                    TraceContext trace = TraceContext.from(header(record, TraceContext.ORIGIN_TIME_HEADER),
+                            header(record, TraceContext.TRACE_ID_HEADER), record.timestamp());
+                    entries.put(record.key(), new HeldPayment(payment, record.partition(), trace, record.timestamp()));
+                }
+            }
+        }
+        logger.info(">>> Restored held payments of partitions {} from {} changelog records", assigned, records.size());
+    }
+
+    /**
+     * Waits until every changelog write so far is acknowledged, so the next owner of a partition sees it.
+     */
+    public void flushChangelog() {
+        kafkaTemplate.flush();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Scheduled(fixedDelayString = "${parking.join.sweep-interval-ms:5000}")
+    public synchronized void evictExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, HeldPayment>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, HeldPayment> entry = it.next();
+            if (now - entry.getValue().heldAt() <= ttlMillis) {
+                break;
+            }
+            it.remove();
+            ttlExpirations.increment();
+            logger.warn(">>> Payment for {} expired: no session was created within {} ms", entry.getKey(), ttlMillis);
+        }
+    }
+
+    // Expirations need no tombstone: a restore doesn't read back further than the TTL
+    private void log(int partition, String parkingSpot, HeldPayment payment) {
+        ProducerRecord<String, Object> record = new ProducerRecord<>(changelogTopic, partition,
+                payment != null ? payment.heldAt() : System.currentTimeMillis(), parkingSpot,
+                payment != null ? payment.payment() : null);
+        if (payment != null) {
+            payment.trace().writeTo(record.headers());
+            // Decoded as a payment-events record
+            record.headers().add(EventDeserializer.SOURCE_TOPIC_HEADER, PAYMENT_TOPIC);
+        }
+        kafkaTemplate.send(record);
+    }
+
+    private static byte[] header(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : header.value();
+    }
+
+    private static boolean caughtUp(Consumer<String, Object> consumer, Map<TopicPartition, Long> endOffsets) {
+        for (Map.Entry<TopicPartition, Long> end : endOffsets.entrySet()) {
+            if (consumer.position(end.getKey()) < end.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,280 @@
+package com.smartparking.backend.store;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sensors seen but not yet confirmed as a session (the 30 s window), kept per input partition.
+ *
+ * Every change is mirrored to a compacted changelog topic (key = sensorId, value = first-seen epoch
+ * millis, tombstone = removed) on the same partition number as the input record. When a partition
+ * is assigned to this replica its pending sensors are rebuilt from the changelog; when it is revoked
+ * they are dropped, since another replica now owns them.
+ *
+ * To keep restarts fast the store is also checkpointed to a local {@link SnapshotFile} together with
+ * the changelog offset each partition's entries reflect; a partition found in the snapshot is loaded
+ * from it and only the changelog records written after the snapshot are replayed.
+ */
+@Component
+public class PendingSessionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PendingSessionStore.class);
+
+    private static final Duration RESTORE_POLL_TIMEOUT = Duration.ofMillis(500);
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ConsumerFactory<String, String> changelogConsumerFactory;
+    private final String changelogTopic;
+
+    private final Map<Integer, Map<String, LocalDateTime>> partitions = new ConcurrentHashMap<>();
+    // Next changelog offset per partition covered by the entries (acknowledged writes and restores)
+    private final Map<Integer, Long> changelogOffsets = new ConcurrentHashMap<>();
+
+    private final Path snapshotPath;
+    private final long maxSnapshotAgeMillis;
+    private final SnapshotMetrics snapshotMetrics;
+    // Loaded at startup, consumed partition by partition by the first restore of each
+    private final Map<Integer, Map<String, LocalDateTime>> snapshotEntries = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> snapshotOffsets = new ConcurrentHashMap<>();
+
+    public PendingSessionStore(KafkaTemplate<String, Object> kafkaTemplate,
+                               ConsumerFactory<String, String> changelogConsumerFactory,
+                               MeterRegistry meterRegistry,
+                               @Value("${parking.pending.changelog-topic:parking-controller.pending-changelog}") String changelogTopic,
+                               @Value("${parking.snapshot.dir:${java.io.tmpdir}/parking-controller}") Path snapshotDir,
+                               @Value("${parking.snapshot.max-age-ms:3600000}") long maxSnapshotAgeMillis) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.changelogConsumerFactory = changelogConsumerFactory;
+        this.changelogTopic = changelogTopic;
+        this.snapshotPath = snapshotDir.resolve("pending.snap");
+        this.maxSnapshotAgeMillis = maxSnapshotAgeMillis;
+        this.snapshotMetrics = new SnapshotMetrics(meterRegistry, "pending");
+
+        Gauge.builder("parking.pending.sessions", this, PendingSessionStore::size)
+                .description("Sensors waiting for session confirmation on the partitions owned by this replica")
+                .register(meterRegistry);
+    }
+
+    public LocalDateTime get(int partition, String sensorId) {
+        Map<String, LocalDateTime> pending = partitions.get(partition);
+        return pending == null ? null : pending.get(sensorId);
+    }
+
+    public boolean contains(int partition, String sensorId) {
+        return get(partition, sensorId) != null;
+    }
+
+    // Writers and snapshot() synchronize, so a snapshot never misses a change of the offsets it records
+    public synchronized void put(int partition, String sensorId, LocalDateTime firstSeen) {
+        partitions.computeIfAbsent(partition, p -> new ConcurrentHashMap<>()).put(sensorId, firstSeen);
+        log(partition, sensorId, Long.toString(toEpochMillis(firstSeen)));
+    }
+
+    public synchronized void remove(int partition, String sensorId) {
+        Map<String, LocalDateTime> pending = partitions.get(partition);
+        // Only sensors that were pending need a tombstone; this is called for every heartbeat
+        if (pending != null && pending.remove(sensorId) != null) {
+            log(partition, sensorId, null);
+        }
+    }
+
+    /**
+     * Replaces the pending sensors of a partition (e.g. with those a replay ended with); sensors that
+     * are no longer pending get a tombstone in the changelog.
+     */
+    public synchronized void replace(int partition, Map<String, LocalDateTime> entries) {
+        Map<String, LocalDateTime> pending = partitions.computeIfAbsent(partition, p -> new ConcurrentHashMap<>());
+        for (String sensorId : List.copyOf(pending.keySet())) {
+            if (!entries.containsKey(sensorId)) {
+                pending.remove(sensorId);
+                log(partition, sensorId, null);
+            }
+        }
+        entries.forEach((sensorId, firstSeen) -> {
+            if (!firstSeen.equals(pending.put(sensorId, firstSeen))) {
+                log(partition, sensorId, Long.toString(toEpochMillis(firstSeen)));
+            }
+        });
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<String, LocalDateTime> pending : partitions.values()) {
+            size += pending.size();
+        }
+        return size;
+    }
+
+    /**
+     * Rebuilds the pending sensors of newly assigned partitions: from the snapshot plus the changelog
+     * records after it when the snapshot has the partition, otherwise from the whole changelog partition.
+     */
+    public void restore(Collection<Integer> assigned) {
+        if (assigned.isEmpty()) {
+            return;
+        }
+        List<TopicPartition> changelogPartitions = assigned.stream()
+                .map(p -> new TopicPartition(changelogTopic, p))
+                .toList();
+        try (Consumer<String, String> consumer = changelogConsumerFactory.createConsumer()) {
+            consumer.assign(changelogPartitions);
+            int fromSnapshot = 0;
+            for (TopicPartition changelogPartition : changelogPartitions) {
+                int partition = changelogPartition.partition();
+                Map<String, LocalDateTime> snapshotted = snapshotEntries.remove(partition);
+                Long snapshotOffset = snapshotOffsets.remove(partition);
+                if (snapshotted != null && snapshotOffset != null) {
+                    partitions.put(partition, new ConcurrentHashMap<>(snapshotted));
+                    consumer.seek(changelogPartition, snapshotOffset);
+                    fromSnapshot += snapshotted.size();
+                } else {
+                    consumer.seekToBeginning(List.of(changelogPartition));
+                }
+            }
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(changelogPartitions);
+
+            int restored = 0;
+            while (!caughtUp(consumer, endOffsets)) {
+                for (ConsumerRecord<String, String> record : consumer.poll(RESTORE_POLL_TIMEOUT)) {
+                    Map<String, LocalDateTime> pending = partitions.computeIfAbsent(record.partition(), p -> new ConcurrentHashMap<>());
+                    if (record.value() == null) {
+                        pending.remove(record.key());
+                    } else {
+                        pending.put(record.key(), toLocalDateTime(Long.parseLong(record.value())));
+                    }
+                    restored++;
+                }
+            }
+            for (TopicPartition changelogPartition : changelogPartitions) {
+                changelogOffsets.put(changelogPartition.partition(), consumer.position(changelogPartition));
+            }
+            snapshotMetrics.replayed(restored);
+            logger.info(">>> Restored pending sessions of partitions {} from {} snapshot entries and {} changelog records",
+                    assigned, fromSnapshot, restored);
+        }
+    }
+
+    /**
+     * Forgets the pending sensors of partitions this replica no longer owns.
+     */
+    public synchronized void drop(Collection<Integer> revoked) {
+        revoked.forEach(partition -> {
+            partitions.remove(partition);
+            changelogOffsets.remove(partition);
+        });
+    }
+
+    @PostConstruct
+    void loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            SnapshotFile.Snapshot snapshot = SnapshotFile.read(snapshotPath);
+            if (System.currentTimeMillis() - snapshot.createdAt() > maxSnapshotAgeMillis) {
+                // The changelog may have compacted away tombstones the snapshot would need
+                logger.info(">>> Ignoring pending-session snapshot older than {} ms", maxSnapshotAgeMillis);
+                return;
+            }
+            for (SnapshotFile.Entry entry : snapshot.entries()) {
+                snapshotEntries.computeIfAbsent((int) entry.second(), p -> new HashMap<>())
+                        .put(entry.key(), toLocalDateTime(entry.first()));
+            }
+            snapshotOffsets.putAll(snapshot.offsets());
+            snapshotMetrics.restored(start, snapshot.entries().size());
+            logger.info(">>> Loaded {} pending sessions of partitions {} from snapshot in {} ms", snapshot.entries().size(),
+                    snapshot.offsets().keySet(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.warn(">>> Can't load pending-session snapshot, restoring from the changelog only", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${parking.snapshot.interval-ms:10000}", initialDelayString = "${parking.snapshot.interval-ms:10000}")
+    public void snapshot() {
+        long start = System.nanoTime();
+        List<SnapshotFile.Entry> entries = new ArrayList<>();
+        Map<Integer, Long> offsets = new HashMap<>();
+        synchronized (this) {
+            // All writes so far acknowledged: changelogOffsets covers every entry
+            flushChangelog();
+            partitions.forEach((partition, pending) -> {
+                Long offset = changelogOffsets.get(partition);
+                if (offset != null) {
+                    offsets.put(partition, offset);
+                    pending.forEach((sensorId, firstSeen) ->
+                            entries.add(new SnapshotFile.Entry(sensorId, toEpochMillis(firstSeen), partition)));
+                }
+            });
+        }
+        try {
+            snapshotMetrics.written(start, SnapshotFile.write(snapshotPath, offsets, entries));
+        } catch (IOException e) {
+            logger.error(">>> Failed to write pending-session snapshot", e);
+        }
+    }
+
+    @PreDestroy
+    void snapshotOnShutdown() {
+        snapshot();
+    }
+
+    /**
+     * Waits until every changelog write so far is acknowledged, so the next owner of a partition sees it.
+     */
+    public void flushChangelog() {
+        kafkaTemplate.flush();
+    }
+
+    private void log(int partition, String sensorId, String value) {
+        kafkaTemplate.send(new ProducerRecord<>(changelogTopic, partition, sensorId, value)).whenComplete((result, ex) -> {
+            if (ex == null && result != null) {
+                changelogOffsets.merge(partition, result.getRecordMetadata().offset() + 1, Math::max);
+            }
+        });
+    }
+
+    private static boolean caughtUp(Consumer<String, String> consumer, Map<TopicPartition, Long> endOffsets) {
+        for (Map.Entry<TopicPartition, Long> end : endOffsets.entrySet()) {
+            if (consumer.position(end.getKey()) < end.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
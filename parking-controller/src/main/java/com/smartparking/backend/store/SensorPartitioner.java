@@ -0,0 +1,28 @@
+package com.smartparking.backend.store;
+
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Maps a record key (sensorId / spot) to its partition the same way the Kafka producer's default
+ * partitioner does for keyed records, so state loaded from the database can be assigned to the
+ * partition its events arrive on.
+ */
+public final class SensorPartitioner {
+
+    private SensorPartitioner() {
+    }
+
+    public static int partitionFor(String key, int numPartitions) {
+        return hash(key) % numPartitions;
+    }
+
+    /**
+     * The hash the partition is derived from, stored with each session ({@code parking_sessions.sensor_hash})
+     * so the sessions of a set of partitions can be selected in SQL.
+     */
+    public static int hash(String key) {
+        return Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8)));
+    }
+}
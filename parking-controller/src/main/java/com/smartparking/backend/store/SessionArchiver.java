@@ -0,0 +1,162 @@
+package com.smartparking.backend.store;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Housekeeping of the month-partitioned {@code parking_sessions} table (see the V1 and V2 migrations).
+ *
+ * Each run makes sure the partitions of the coming months exist, moves terminated sessions that
+ * ended more than {@code parking.archive.retention-days} ago to {@code parking_sessions_archive} in
+ * bulk (one DELETE ... RETURNING / INSERT per batch), and drops month partitions left empty.
+ * Every step runs under a Postgres advisory lock, so with several controller replicas only one
+ * of them does the work.
+ */
+@Component
+public class SessionArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionArchiver.class);
+
+    // "SPAR"
+    private static final long LOCK_KEY = 0x53504152L;
+    private static final int MONTHS_AHEAD = 6;
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private static final String COLUMNS = "id, sensor_id, plate, start_time, end_time, status, amount, alerted, paid_until, last_event_time";
+    private static final String MOVE_SQL = "WITH moved AS ("
+            + " DELETE FROM parking_sessions WHERE (id, start_time) IN ("
+            + "  SELECT id, start_time FROM parking_sessions WHERE end_time IS NOT NULL AND end_time < ? LIMIT ?)"
+            + " RETURNING " + COLUMNS + ")"
+            + " INSERT INTO parking_sessions_archive (" + COLUMNS + ") SELECT " + COLUMNS + " FROM moved"
+            + " ON CONFLICT (id) DO NOTHING";
+    private static final String PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i"
+            + " JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent"
+            + " WHERE p.relname = 'parking_sessions' AND c.relname ~ '^parking_sessions_[0-9]{4}_[0-9]{2}$'";
+    private static final String DEFAULT_MONTHS_SQL = "SELECT DISTINCT date_trunc('month', start_time)::date FROM parking_sessions_default";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int retentionDays;
+    private final int batchSize;
+
+    private final Counter archivedSessions;
+    private final Counter droppedPartitions;
+    private final Timer runTime;
+
+    public SessionArchiver(JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           MeterRegistry meterRegistry,
+                           @Value("${parking.archive.retention-days:30}") int retentionDays,
+                           @Value("${parking.archive.batch-size:5000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+
+        this.archivedSessions = Counter.builder("parking.archive.sessions")
+                .description("Terminated sessions moved to parking_sessions_archive")
+                .register(meterRegistry);
+        this.droppedPartitions = Counter.builder("parking.archive.dropped.partitions")
+                .description("Empty month partitions of parking_sessions dropped")
+                .register(meterRegistry);
+        this.runTime = Timer.builder("parking.archive.run.time")
+                .register(meterRegistry);
+    }
+
+    // Also runs right after startup, so the partitions ahead exist whenever the controller is up
+    @Scheduled(fixedDelayString = "${parking.archive.interval-ms:3600000}")
+    public void run() {
+        runTime.record(() -> {
+            try {
+                LocalDate today = LocalDate.now();
+                if (withLock(() -> createPartitions(today)) == null) {
+                    return; // Another replica is at it
+                }
+                LocalDateTime cutoff = today.atStartOfDay().minusDays(retentionDays);
+                long archived = archive(cutoff);
+                withLock(() -> dropEmptyPartitions(cutoff));
+                if (archived > 0) {
+                    logger.info(">>> Archived {} sessions terminated before {}", archived, cutoff);
+                }
+            } catch (Exception e) {
+                logger.error(">>> Session archival failed", e);
+            }
+        });
+    }
+
+    /**
+     * Moves terminated sessions that ended before the cutoff, one transaction per batch.
+     */
+    public long archive(LocalDateTime cutoff) {
+        long total = 0;
+        while (true) {
+            Integer moved = withLock(() -> jdbcTemplate.update(MOVE_SQL, Timestamp.valueOf(cutoff), batchSize));
+            if (moved == null) {
+                return total;
+            }
+            total += moved;
+            archivedSessions.increment(moved);
+            if (moved < batchSize) {
+                return total;
+            }
+        }
+    }
+
+    // The months ahead, and the months whose rows ended up in the default partition (moved into their own, see V2)
+    private Integer createPartitions(LocalDate today) {
+        List<Date> months = new ArrayList<>(jdbcTemplate.queryForList(DEFAULT_MONTHS_SQL, Date.class));
+        for (int i = 0; i <= MONTHS_AHEAD; i++) {
+            months.add(Date.valueOf(today.plusMonths(i)));
+        }
+        for (Date month : months) {
+            jdbcTemplate.queryForList("SELECT create_parking_sessions_partition(?)", month);
+        }
+        return months.size();
+    }
+
+    // A month whose whole range is before the cutoff holds only open sessions once archived; drop it when it is empty
+    private Integer dropEmptyPartitions(LocalDateTime cutoff) {
+        List<String> partitions = jdbcTemplate.queryForList(PARTITIONS_SQL, String.class);
+        int dropped = 0;
+        for (String partition : partitions) {
+            YearMonth month = YearMonth.parse(partition.substring("parking_sessions_".length()), PARTITION_SUFFIX);
+            if (month.plusMonths(1).atDay(1).atStartOfDay().isAfter(cutoff)) {
+                continue;
+            }
+            Boolean empty = jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM " + partition + ")", Boolean.class);
+            if (Boolean.TRUE.equals(empty)) {
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                droppedPartitions.increment();
+                dropped++;
+                logger.info(">>> Dropped empty session partition {}", partition);
+            }
+        }
+        return dropped;
+    }
+
+    // Runs the work in a transaction holding the archival lock; null if another replica holds it
+    private <T> T withLock(Supplier<T> work) {
+        return transactionTemplate.execute(status -> {
+            Boolean acquired = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY);
+            return Boolean.TRUE.equals(acquired) ? work.get() : null;
+        });
+    }
+}
@@ -0,0 +1,130 @@
+package com.smartparking.backend.store;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped checkpoint of keyed in-memory state, plus the Kafka offsets the state reflects.
+ *
+ * <pre>
+ * int      magic 'SPSN'
+ * short    version (1)
+ * long     created at (epoch millis)
+ * int      offset count, then per partition: int partition, long next offset
+ * int      entry count, then per entry: short key length, UTF-8 key, long first, long second
+ * long     CRC32 of everything before it
+ * </pre>
+ *
+ * Files are written to a temporary sibling and atomically renamed, so a reader sees either the
+ * previous or the new snapshot, never a torn one.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x5350534E; // "SPSN"
+    private static final short VERSION = 1;
+
+    public record Entry(String key, long first, long second) {
+    }
+
+    public record Snapshot(long createdAt, Map<Integer, Long> offsets, List<Entry> entries) {
+    }
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public static long write(Path path, Map<Integer, Long> offsets, List<Entry> entries) throws IOException {
+        List<byte[]> keys = new ArrayList<>(entries.size());
+        long size = 4 + 2 + 8 + 4 + offsets.size() * 12L + 4 + 8;
+        for (Entry entry : entries) {
+            byte[] key = entry.key().getBytes(StandardCharsets.UTF_8);
+            keys.add(key);
+            size += 2 + key.length + 16;
+        }
+
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putInt(offsets.size());
+            offsets.forEach((partition, offset) -> {
+                buffer.putInt(partition);
+                buffer.putLong(offset);
+            });
+            buffer.putInt(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                byte[] key = keys.get(i);
+                buffer.putShort((short) key.length);
+                buffer.put(key);
+                buffer.putLong(entry.first());
+                buffer.putLong(entry.second());
+            }
+            buffer.putLong(crc(buffer, buffer.position()));
+            buffer.force();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * @throws IOException if the file is missing, of another version or corrupt
+     */
+    public static Snapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 + 4 + 2 || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " snapshot: " + path);
+            }
+            int bodyLength = buffer.limit() - 8;
+            if (buffer.getLong(bodyLength) != crc(buffer, bodyLength)) {
+                throw new IOException("Snapshot checksum mismatch: " + path);
+            }
+
+            long createdAt = buffer.getLong();
+            int offsetCount = buffer.getInt();
+            Map<Integer, Long> offsets = new HashMap<>();
+            for (int i = 0; i < offsetCount; i++) {
+                offsets.put(buffer.getInt(), buffer.getLong());
+            }
+            int entryCount = buffer.getInt();
+            List<Entry> entries = new ArrayList<>(entryCount);
+            byte[] key = new byte[256];
+            for (int i = 0; i < entryCount; i++) {
+                int length = buffer.getShort() & 0xFFFF;
+                if (length > key.length) {
+                    key = new byte[length];
+                }
+                buffer.get(key, 0, length);
+                entries.add(new Entry(new String(key, 0, length, StandardCharsets.UTF_8), buffer.getLong(), buffer.getLong()));
+            }
+            return new Snapshot(createdAt, offsets, entries);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException and friends: truncated file
+            throw new IOException("Corrupt snapshot: " + path, e);
+        }
+    }
+
+    private static long crc(MappedByteBuffer buffer, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, length));
+        return crc.getValue();
+    }
+}
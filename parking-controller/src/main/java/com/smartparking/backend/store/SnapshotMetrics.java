@@ -0,0 +1,54 @@
+package com.smartparking.backend.store;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters of one {@link SnapshotFile}-backed store, tagged with the store name.
+ */
+public class SnapshotMetrics {
+
+    private final Timer restoreTime;
+    private final Counter recoveredEntries;
+    private final Counter replayedRecords;
+    private final Timer writeTime;
+    private final AtomicLong bytes = new AtomicLong();
+
+    public SnapshotMetrics(MeterRegistry meterRegistry, String store) {
+        this.restoreTime = Timer.builder("parking.snapshot.restore.time")
+                .tag("store", store)
+                .description("Time to load the snapshot at startup")
+                .register(meterRegistry);
+        this.recoveredEntries = Counter.builder("parking.snapshot.recovered.entries")
+                .tag("store", store)
+                .description("Entries recovered from the snapshot")
+                .register(meterRegistry);
+        this.replayedRecords = Counter.builder("parking.snapshot.replayed.records")
+                .tag("store", store)
+                .description("Kafka records replayed on top of the snapshot")
+                .register(meterRegistry);
+        this.writeTime = Timer.builder("parking.snapshot.write.time")
+                .tag("store", store)
+                .register(meterRegistry);
+        meterRegistry.gauge("parking.snapshot.bytes", Tags.of("store", store), bytes);
+    }
+
+    public void restored(long startNanos, int entries) {
+        restoreTime.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        recoveredEntries.increment(entries);
+    }
+
+    public void replayed(long records) {
+        replayedRecords.increment(records);
+    }
+
+    public void written(long startNanos, long size) {
+        writeTime.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        bytes.set(size);
+    }
+}
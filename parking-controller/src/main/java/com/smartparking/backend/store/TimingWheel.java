@@ -0,0 +1,136 @@
+package com.smartparking.backend.store;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * Hashed timing wheel of per-key deadlines with a fixed tick (the termination precision).
+ *
+ * Each key sits in the bucket of its deadline tick. Deadlines are re-armed lazily: when a bucket
+ * comes due, the current deadline of every entry is asked for again and entries that moved
+ * forward (e.g. because of a newer heartbeat) are re-bucketed instead of expiring. Heartbeats
+ * therefore cost nothing here, and {@link #advance} only touches the entries of the elapsed ticks.
+ *
+ * The clock may also move back (an event-time watermark behind the wall clock the wheel started at,
+ * or lowered by a newly assigned partition); the wheel is then rebuilt at the earlier position.
+ */
+public class TimingWheel {
+
+    private static final class Entry {
+        final String key;
+        long tick;
+
+        Entry(String key, long tick) {
+            this.key = key;
+            this.tick = tick;
+        }
+    }
+
+    private final long tickMillis;
+    private final List<Entry>[] buckets;
+    private final int mask;
+    private final Set<String> scheduled = new HashSet<>();
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int wheelSize, long nowMillis) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of two: " + wheelSize);
+        }
+        this.tickMillis = tickMillis;
+        this.buckets = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.mask = wheelSize - 1;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Arms a deadline for the key. A key that is already armed keeps its bucket and is re-checked
+     * against its current deadline when that bucket comes due.
+     */
+    public synchronized void schedule(String key, long deadlineMillis) {
+        if (scheduled.add(key)) {
+            insert(new Entry(key, tickOf(deadlineMillis)));
+        }
+    }
+
+    public synchronized int size() {
+        return scheduled.size();
+    }
+
+    /**
+     * Moves the wheel to {@code nowMillis} and returns the keys whose deadline has passed.
+     *
+     * @param currentDeadline current deadline of a key in epoch millis, or a negative value if the
+     *                        key no longer needs a timer
+     */
+    public synchronized List<String> advance(long nowMillis, ToLongFunction<String> currentDeadline) {
+        List<String> expired = new ArrayList<>();
+        List<Entry> rearmed = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+        if (targetTick < currentTick) {
+            rewind(targetTick, currentDeadline);
+        }
+        // After a long pause every bucket only needs to be visited once
+        long steps = Math.min(targetTick - currentTick, buckets.length);
+        for (long i = 1; i <= steps; i++) {
+            Iterator<Entry> it = buckets[(int) ((currentTick + i) & mask)].iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.tick > targetTick) {
+                    continue; // Due in a later lap of the wheel
+                }
+                it.remove();
+                long deadline = currentDeadline.applyAsLong(entry.key);
+                if (deadline < 0) {
+                    scheduled.remove(entry.key);
+                } else if (deadline > nowMillis) {
+                    entry.tick = tickOf(deadline);
+                    rearmed.add(entry);
+                } else {
+                    scheduled.remove(entry.key);
+                    expired.add(entry.key);
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+        rearmed.forEach(this::insert);
+        return expired;
+    }
+
+    private void rewind(long targetTick, ToLongFunction<String> currentDeadline) {
+        List<Entry> entries = new ArrayList<>(scheduled.size());
+        for (List<Entry> bucket : buckets) {
+            entries.addAll(bucket);
+            bucket.clear();
+        }
+        currentTick = targetTick;
+        // Buckets were clamped to the old position: put every key back at its own deadline
+        for (Entry entry : entries) {
+            long deadline = currentDeadline.applyAsLong(entry.key);
+            if (deadline < 0) {
+                scheduled.remove(entry.key);
+            } else {
+                entry.tick = tickOf(deadline);
+                insert(entry);
+            }
+        }
+    }
+
+    private long tickOf(long deadlineMillis) {
+        // Round up so a key never fires before its deadline
+        return (deadlineMillis + tickMillis - 1) / tickMillis;
+    }
+
+    private void insert(Entry entry) {
+        // Deadlines in the past go to the next tick
+        entry.tick = Math.max(entry.tick, currentTick + 1);
+        buckets[(int) (entry.tick & mask)].add(entry);
+    }
+}
@@ -0,0 +1,169 @@
+package com.smartparking.backend.time;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerPartitionIdleEvent;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock of the time windows (30 s confirmation, inactivity timeout) of one consumer group of parking-events.
+ *
+ * In processing time (the default) it is the wall clock. In event time ({@code parking.event-time.enabled})
+ * a heartbeat is dated by its {@code SensorEvent.time} and the clock is driven by watermarks: each
+ * partition's watermark trails the latest heartbeat time seen on it by {@code allowed-lateness-ms}, and
+ * {@link #now()} is the lowest watermark of the assigned partitions, so a window closes only once every
+ * partition has moved past it. A backlog replayed in a burst then closes the same windows, at the
+ * same times, as the live stream did. Heartbeats older than their partition's watermark are late and
+ * dropped ({@code parking.eventtime.late}). Heartbeats redelivered by the retry chain come back seconds to
+ * minutes after their first attempt, so they are exempt: they keep their event time, leave the watermarks
+ * alone and are counted in {@code parking.eventtime.redelivered}.
+ *
+ * A partition whose sensors all went quiet has no records to move its watermark. When its consumer
+ * reports it idle ({@code spring.kafka.listener.idle-partition-event-interval}) with nothing left to
+ * fetch, the watermark advances to the wall clock minus the lateness. A partition that is assigned but
+ * has no watermark yet stops the clock: {@link #now()} is {@link #UNKNOWN} until it has one.
+ */
+public class EventTimeClock {
+
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final String groupId;
+    private final String topic;
+    private final boolean eventTime;
+    private final long allowedLatenessMillis;
+    // Latest heartbeat time per assigned partition, UNKNOWN until the first one
+    private final Map<Integer, AtomicLong> latest = new ConcurrentHashMap<>();
+
+    private final Counter late;
+    private final Counter redelivered;
+    private final Counter idleAdvances;
+
+    public EventTimeClock(String name, String groupId, String topic, boolean eventTime, long allowedLatenessMillis,
+                          MeterRegistry meterRegistry) {
+        this.groupId = groupId;
+        this.topic = topic;
+        this.eventTime = eventTime;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+
+        this.late = Counter.builder("parking.eventtime.late")
+                .tag("consumer", name)
+                .description("Heartbeats dropped for being older than their partition's watermark")
+                .register(meterRegistry);
+        this.redelivered = Counter.builder("parking.eventtime.redelivered")
+                .tag("consumer", name)
+                .description("Retried heartbeats taken at their event time without the lateness check")
+                .register(meterRegistry);
+        this.idleAdvances = Counter.builder("parking.eventtime.idle.advances")
+                .tag("consumer", name)
+                .description("Watermarks of idle, caught-up partitions moved to the wall clock")
+                .register(meterRegistry);
+        if (eventTime) {
+            Gauge.builder("parking.eventtime.watermark.lag", this, EventTimeClock::watermarkLag)
+                    .tag("consumer", name)
+                    .description("Wall clock minus the lowest watermark of the assigned partitions")
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEventTime() {
+        return eventTime;
+    }
+
+    /**
+     * Time of a heartbeat of the partition for the windows: its event time, or the wall clock in
+     * processing time. A heartbeat of the input topic moves the partition's watermark; {@link #UNKNOWN}
+     * if it is late. One of any other topic (the listener's redelivery topic) is taken as it is.
+     */
+    public long observe(String recordTopic, int partition, long heartbeatTime) {
+        if (!eventTime) {
+            return System.currentTimeMillis();
+        }
+        if (!topic.equals(recordTopic)) {
+            redelivered.increment();
+            return heartbeatTime;
+        }
+        AtomicLong max = latest.get(partition);
+        if (max == null) {
+            // Not an assigned partition (e.g. a record polled just before a rebalance): nothing to compare with
+            return heartbeatTime;
+        }
+        long current = max.get();
+        if (current != UNKNOWN && heartbeatTime < current - allowedLatenessMillis) {
+            late.increment();
+            return UNKNOWN;
+        }
+        max.accumulateAndGet(heartbeatTime, Math::max);
+        return heartbeatTime;
+    }
+
+    /**
+     * The wall clock, or the lowest watermark of the assigned partitions in event time.
+     */
+    public long now() {
+        if (!eventTime) {
+            return System.currentTimeMillis();
+        }
+        if (latest.isEmpty()) {
+            return UNKNOWN;
+        }
+        long lowest = Long.MAX_VALUE;
+        for (AtomicLong max : latest.values()) {
+            long value = max.get();
+            if (value == UNKNOWN) {
+                return UNKNOWN;
+            }
+            lowest = Math.min(lowest, value);
+        }
+        return lowest - allowedLatenessMillis;
+    }
+
+    public void assigned(Collection<Integer> partitions) {
+        partitions.forEach(partition -> latest.putIfAbsent(partition, new AtomicLong(UNKNOWN)));
+    }
+
+    public void revoked(Collection<Integer> partitions) {
+        partitions.forEach(latest::remove);
+    }
+
+    // Published on the consumer thread, so the consumer can be asked for its lag
+    @EventListener
+    public void onPartitionIdle(ListenerContainerPartitionIdleEvent event) {
+        TopicPartition partition = event.getTopicPartition();
+        if (!eventTime || event.isPaused() || !topic.equals(partition.topic())
+                || !groupId.equals(event.getContainer(MessageListenerContainer.class).getGroupId())) {
+            return;
+        }
+        // Idle because the sensors are quiet, not because the consumer is behind
+        OptionalLong lag = event.getConsumer().currentLag(partition);
+        AtomicLong max = latest.get(partition.partition());
+        if (max == null || lag.isEmpty() || lag.getAsLong() > 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (max.getAndAccumulate(now, Math::max) < now) {
+            idleAdvances.increment();
+        }
+    }
+
+    private double watermarkLag() {
+        long now = now();
+        return now == UNKNOWN ? Double.NaN : System.currentTimeMillis() - now;
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
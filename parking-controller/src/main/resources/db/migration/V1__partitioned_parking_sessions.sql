@@ -0,0 +1,83 @@
+-- parking_sessions, range-partitioned by start_time with one partition per month.
+--
+-- Until now the table was generated by Hibernate (ddl-auto: update). An existing unpartitioned
+-- table is renamed, its rows are copied into the partitioned table and it is dropped.
+
+-- Creates the partition of the month containing the given day if it does not exist yet
+CREATE OR REPLACE FUNCTION create_parking_sessions_partition(day date) RETURNS void AS $$
+DECLARE
+    month_start date := date_trunc('month', day);
+    partition_name text := 'parking_sessions_' || to_char(month_start, 'YYYY_MM');
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF parking_sessions FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, month_start, month_start + interval '1 month');
+END;
+$$ LANGUAGE plpgsql;
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class WHERE relname = 'parking_sessions' AND relkind = 'r') THEN
+        ALTER TABLE parking_sessions RENAME TO parking_sessions_unpartitioned;
+    END IF;
+END $$;
+
+CREATE TABLE parking_sessions (
+    id              uuid          NOT NULL,
+    sensor_id       varchar(255)  NOT NULL,
+    plate           varchar(255),
+    start_time      timestamp(6)  NOT NULL,
+    end_time        timestamp(6),
+    status          varchar(255)  NOT NULL,
+    amount          numeric(38, 2),
+    alerted         boolean       NOT NULL DEFAULT false,
+    paid_until      timestamp(6),
+    last_event_time timestamp(6),
+    -- The partition key has to be part of every unique constraint
+    PRIMARY KEY (id, start_time)
+) PARTITION BY RANGE (start_time);
+
+-- Safety net for rows outside the pre-created months; SessionArchiver keeps months ahead created
+CREATE TABLE parking_sessions_default PARTITION OF parking_sessions DEFAULT;
+
+-- Open sessions by sensor (findBySensorIdAndEndTimeIsNull). Only open rows are indexed, so the
+-- index stays as small as the set of parked cars however much history accumulates.
+CREATE INDEX parking_sessions_open_sensor_idx ON parking_sessions (sensor_id) WHERE end_time IS NULL;
+
+-- Archival scans terminated sessions by end time
+CREATE INDEX parking_sessions_end_time_idx ON parking_sessions (end_time) WHERE end_time IS NOT NULL;
+
+-- Terminated sessions moved out of parking_sessions by SessionArchiver
+CREATE TABLE parking_sessions_archive (
+    id              uuid          NOT NULL PRIMARY KEY,
+    sensor_id       varchar(255)  NOT NULL,
+    plate           varchar(255),
+    start_time      timestamp(6)  NOT NULL,
+    end_time        timestamp(6),
+    status          varchar(255)  NOT NULL,
+    amount          numeric(38, 2),
+    alerted         boolean       NOT NULL DEFAULT false,
+    paid_until      timestamp(6),
+    last_event_time timestamp(6)
+);
+
+CREATE INDEX parking_sessions_archive_sensor_idx ON parking_sessions_archive (sensor_id, start_time);
+
+DO $$
+DECLARE
+    month date;
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class WHERE relname = 'parking_sessions_unpartitioned') THEN
+        FOR month IN SELECT DISTINCT date_trunc('month', start_time)::date FROM parking_sessions_unpartitioned LOOP
+            PERFORM create_parking_sessions_partition(month);
+        END LOOP;
+        INSERT INTO parking_sessions (id, sensor_id, plate, start_time, end_time, status, amount, alerted, paid_until, last_event_time)
+        SELECT id, sensor_id, plate, start_time, end_time, status, amount, coalesce(alerted, false), paid_until, last_event_time
+        FROM parking_sessions_unpartitioned;
+        DROP TABLE parking_sessions_unpartitioned;
+    END IF;
+END $$;
+
+-- The current month and the next two
+SELECT create_parking_sessions_partition(current_date);
+SELECT create_parking_sessions_partition((current_date + interval '1 month')::date);
+SELECT create_parking_sessions_partition((current_date + interval '2 months')::date);
@@ -0,0 +1,44 @@
+-- A month partition can't be created while the default partition holds rows of that month
+-- (CREATE TABLE ... PARTITION OF fails its check of the default). Rows land there when a month
+-- was not created in time or when a replay rewrites history older than the oldest partition.
+--
+-- The partition is now created as a plain table, the month's rows are moved into it from the
+-- default partition and it is attached. The default partition stays locked from the move to the
+-- attach, so no row of that month can be inserted into it in between.
+CREATE OR REPLACE FUNCTION create_parking_sessions_partition(day date) RETURNS void AS $$
+DECLARE
+    month_start date := date_trunc('month', day);
+    month_end date := month_start + interval '1 month';
+    partition_name text := 'parking_sessions_' || to_char(month_start, 'YYYY_MM');
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN;
+    END IF;
+    -- Parent first, then the default partition: the order in which an INSERT locks them
+    LOCK TABLE ONLY parking_sessions IN SHARE UPDATE EXCLUSIVE MODE;
+    LOCK TABLE parking_sessions_default IN ACCESS EXCLUSIVE MODE;
+    -- Another replica may have created it while we waited
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN;
+    END IF;
+    EXECUTE format('CREATE TABLE %I (LIKE parking_sessions INCLUDING DEFAULTS)', partition_name);
+    EXECUTE format('WITH moved AS (DELETE FROM parking_sessions_default WHERE start_time >= %L AND start_time < %L RETURNING *)'
+                   ' INSERT INTO %I SELECT * FROM moved', month_start, month_end, partition_name);
+    EXECUTE format('ALTER TABLE parking_sessions ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, month_start, month_end);
+END;
+$$ LANGUAGE plpgsql;
+
+-- Months that already have rows in the default partition
+DO $$
+DECLARE
+    month date;
+BEGIN
+    FOR month IN SELECT DISTINCT date_trunc('month', start_time)::date FROM parking_sessions_default LOOP
+        PERFORM create_parking_sessions_partition(month);
+    END LOOP;
+END $$;
+
+-- The current month and the next six, as SessionArchiver keeps them
+SELECT create_parking_sessions_partition((current_date + make_interval(months => i))::date)
+FROM generate_series(0, 6) AS i;
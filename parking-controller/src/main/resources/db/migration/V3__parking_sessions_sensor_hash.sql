@@ -0,0 +1,5 @@
+-- Kafka partitioner hash of sensor_id (positive murmur2, see SensorPartitioner), written by the
+-- controller with every session, so a replica selects the open sessions of its input partitions in
+-- the query (sensor_hash % <partition count>) instead of loading all of them. The hash does not
+-- depend on the partition count. Rows written before have none; the controller matches them on sensor_id.
+ALTER TABLE parking_sessions ADD COLUMN sensor_hash integer;
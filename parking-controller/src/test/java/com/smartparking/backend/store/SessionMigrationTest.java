@@ -0,0 +1,130 @@
+package com.smartparking.backend.store;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the Flyway migrations of {@code db/migration} against Postgres, configured as in application.yml.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class SessionMigrationTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private Flyway flyway;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void cleanDatabase() {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+        flyway = Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .cleanDisabled(false)
+                .load();
+        flyway.clean();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    void createsTheCurrentMonthAndTheNextSix() {
+        flyway.migrate();
+
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i <= 6; i++) {
+            assertThat(partitions()).contains(monthPartition(today.plusMonths(i)));
+        }
+    }
+
+    @Test
+    void convertsAHibernateGeneratedTable() {
+        jdbcTemplate.execute("CREATE TABLE parking_sessions (id uuid PRIMARY KEY, sensor_id varchar(255) NOT NULL,"
+                + " plate varchar(255), start_time timestamp(6) NOT NULL, end_time timestamp(6), status varchar(255) NOT NULL,"
+                + " amount numeric(38, 2), alerted boolean, paid_until timestamp(6), last_event_time timestamp(6))");
+        LocalDateTime lastYear = LocalDateTime.now().minusYears(1);
+        UUID id = insertSession(lastYear);
+
+        flyway.migrate();
+
+        assertThat(partitionOf(id)).isEqualTo(monthPartition(lastYear.toLocalDate()));
+        assertThat(jdbcTemplate.queryForObject("SELECT alerted FROM parking_sessions WHERE id = ?", Boolean.class, id)).isFalse();
+    }
+
+    @Test
+    void movesTheRowsOfANewMonthOutOfTheDefaultPartition() {
+        flyway.migrate();
+        LocalDateTime nextYear = LocalDateTime.now().plusYears(1);
+        UUID id = insertSession(nextYear);
+        assertThat(partitionOf(id)).isEqualTo("parking_sessions_default");
+
+        jdbcTemplate.queryForList("SELECT create_parking_sessions_partition(?)", Date.valueOf(nextYear.toLocalDate()));
+
+        String month = monthPartition(nextYear.toLocalDate());
+        assertThat(partitionOf(id)).isEqualTo(month);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM parking_sessions_default", Long.class)).isZero();
+        // Primary key and both partial indexes
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM pg_indexes WHERE tablename = ?", Long.class, month))
+                .isEqualTo(3);
+    }
+
+    @Test
+    void createsTheMonthsOfRowsAlreadyInTheDefaultPartition() {
+        Flyway.configure().configuration(flyway.getConfiguration()).target("1").load().migrate();
+        LocalDateTime nextYear = LocalDateTime.now().plusYears(1);
+        UUID id = insertSession(nextYear);
+
+        flyway.migrate();
+
+        assertThat(partitionOf(id)).isEqualTo(monthPartition(nextYear.toLocalDate()));
+    }
+
+    @Test
+    void creatingAnExistingPartitionKeepsItsRows() {
+        flyway.migrate();
+        LocalDateTime now = LocalDateTime.now();
+        UUID id = insertSession(now);
+
+        jdbcTemplate.queryForList("SELECT create_parking_sessions_partition(?)", Date.valueOf(now.toLocalDate()));
+
+        assertThat(partitionOf(id)).isEqualTo(monthPartition(now.toLocalDate()));
+    }
+
+    private UUID insertSession(LocalDateTime startTime) {
+        UUID id = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO parking_sessions (id, sensor_id, start_time, status, last_event_time)"
+                + " VALUES (?, 'A1', ?, 'UNPAID', ?)", id, Timestamp.valueOf(startTime), Timestamp.valueOf(startTime));
+        return id;
+    }
+
+    private String partitionOf(UUID id) {
+        return jdbcTemplate.queryForObject("SELECT tableoid::regclass::text FROM parking_sessions WHERE id = ?", String.class, id);
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid"
+                + " JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = 'parking_sessions'", String.class);
+    }
+
+    private static String monthPartition(LocalDate day) {
+        return "parking_sessions_" + day.format(DateTimeFormatter.ofPattern("yyyy_MM"));
+    }
+}